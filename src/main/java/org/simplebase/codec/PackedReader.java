@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+import org.simplebase.codec.PackedSchema.FieldType;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link PackedReader} reads the fields of a cell packed by {@link PackedRecord}, in place.
+ *
+ * <p>
+ * Each field is found through the offset table at the start of the cell, so reading one field does not unpack the
+ * others. A reader is meant to be reused, by calling {@link #reset} for each cell.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PackedReader {
+    /** The buffer. */
+    private byte[] buffer;
+
+    /** The number of fields in the cell. */
+    private int count;
+
+    /** The offset of the cell. */
+    private int offset;
+
+    /** The schema. */
+    private PackedSchema schema;
+
+    /**
+     * Create a new PackedReader instance.
+     *
+     * @param schema The schema.
+     */
+    public PackedReader (PackedSchema schema) {
+        assert schema != null
+             : "schema == null";
+
+        this.schema = schema;
+    }
+
+    /**
+     * Retrieve the end offset of a field value within the buffer.
+     *
+     * @param index The field index, which is less than the field count.
+     */
+    private int end (int index) {
+        return offset + (entry(index) & (PackedRecord.SET - 1));
+    }
+
+    /**
+     * Retrieve the offset table entry of a field, which is its end offset and whether it is set.
+     *
+     * @param index The field index, which is less than the field count.
+     */
+    private int entry (int index) {
+        return Bytes.toShort(buffer, offset + Bytes.SIZEOF_SHORT * (index + 1)) & 0xFFFF;
+    }
+
+    /**
+     * Retrieve a binary boolean field.
+     *
+     * @param field        The field name.
+     * @param defaultValue The value of an unset field.
+     */
+    public boolean getBoolean (String field, boolean defaultValue) {
+        int index = index(field, FieldType.BOOLEAN);
+
+        return isSet(index) ? buffer[start(index)] != 0 : defaultValue;
+    }
+
+    /**
+     * Retrieve the buffer, which is shared with the cell.
+     */
+    public byte[] getBuffer () {
+        return buffer;
+    }
+
+    /**
+     * Retrieve a copy of a byte array field.
+     *
+     * @param field The field name.
+     *
+     * @return The value, or null if the field is unset.
+     */
+    public byte[] getBytes (String field) {
+        int index = index(field, FieldType.BYTES);
+
+        return isSet(index) ? Arrays.copyOfRange(buffer, start(index), end(index)) : null;
+    }
+
+    /**
+     * Retrieve a binary double field.
+     *
+     * @param field        The field name.
+     * @param defaultValue The value of an unset field.
+     */
+    public double getDouble (String field, double defaultValue) {
+        int index = index(field, FieldType.DOUBLE);
+
+        return isSet(index) ? Bytes.toDouble(buffer, start(index)) : defaultValue;
+    }
+
+    /**
+     * Retrieve a binary int field.
+     *
+     * @param field        The field name.
+     * @param defaultValue The value of an unset field.
+     */
+    public int getInt (String field, int defaultValue) {
+        int index = index(field, FieldType.INT);
+
+        return isSet(index) ? Bytes.toInt(buffer, start(index)) : defaultValue;
+    }
+
+    /**
+     * Retrieve the length of a field value.
+     *
+     * @param index The field index.
+     *
+     * @return The length, which is 0 if the field is unset or empty.
+     */
+    public int getLength (int index) {
+        return index < count ? end(index) - start(index) : 0;
+    }
+
+    /**
+     * Retrieve a binary long field.
+     *
+     * @param field        The field name.
+     * @param defaultValue The value of an unset field.
+     */
+    public long getLong (String field, long defaultValue) {
+        int index = index(field, FieldType.LONG);
+
+        return isSet(index) ? Bytes.toLong(buffer, start(index)) : defaultValue;
+    }
+
+    /**
+     * Retrieve the offset of a field value within the buffer.
+     *
+     * @param index The field index.
+     */
+    public int getOffset (int index) {
+        return start(index);
+    }
+
+    /**
+     * Retrieve the schema.
+     */
+    public PackedSchema getSchema () {
+        return schema;
+    }
+
+    /**
+     * Retrieve a string field.
+     *
+     * @param field The field name.
+     *
+     * @return The value, or null if the field is unset.
+     */
+    public String getString (String field) {
+        int index = index(field, FieldType.STRING);
+
+        return isSet(index) ? Bytes.toString(buffer, start(index), getLength(index)) : null;
+    }
+
+    /**
+     * Indicates that a field is set.
+     *
+     * @param field The field name.
+     */
+    public boolean has (String field) {
+        return isSet(schema.getIndex(field));
+    }
+
+    /**
+     * Retrieve the index of a field, and check its type.
+     *
+     * @param field The field name.
+     * @param type  The expected type.
+     */
+    private int index (String field, FieldType type) {
+        assert buffer != null
+             : "buffer == null";
+
+        int index = schema.getIndex(field);
+
+        if (schema.getType(index) != type) {
+            throw new IllegalArgumentException("Field " + field + " is not of type " + type);
+        }
+
+        return index;
+    }
+
+    /**
+     * Indicates that a field is set, which it may be with an empty value.
+     *
+     * @param index The field index.
+     */
+    private boolean isSet (int index) {
+        return index < count && (entry(index) & PackedRecord.SET) != 0;
+    }
+
+    /**
+     * Read a packed cell.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the cell.
+     * @param length The length of the cell.
+     */
+    public PackedReader reset (byte[] buffer, int offset, int length) {
+        assert buffer != null && length >= Bytes.SIZEOF_SHORT
+             : "buffer == null || length < Bytes.SIZEOF_SHORT";
+
+        this.buffer = buffer;
+        this.count  = Bytes.toShort(buffer, offset) & 0xFFFF;
+        this.offset = offset;
+
+        return this;
+    }
+
+    /**
+     * Retrieve the start offset of a field value within the buffer.
+     *
+     * @param index The field index.
+     */
+    private int start (int index) {
+        int previous = Math.min(index, count) - 1;
+
+        return previous >= 0 ? end(previous) : offset + Bytes.SIZEOF_SHORT * (count + 1);
+    }
+}
\ No newline at end of file
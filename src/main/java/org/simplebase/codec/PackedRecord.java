@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+import org.simplebase.codec.PackedSchema.FieldType;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link PackedRecord} packs the fields of a {@link PackedSchema} into a single cell value.
+ *
+ * <p>
+ * A record is meant to be reused: set the fields of a row, hand the record to
+ * {@link org.simplebase.writer.Writer#writeRecord}, and {@link #reset} it for the next row. Packed cells are read in
+ * place with {@link PackedReader}.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PackedRecord {
+    /** The maximum length of a packed cell. */
+    public static final int MAX_LENGTH = 0x7FFF;
+
+    /** The end offset bit that marks a field as set. */
+    static final int SET = 0x8000;
+
+    /** The schema. */
+    private PackedSchema schema;
+
+    /** The field values, by index. */
+    private byte[][] values;
+
+    /**
+     * Create a new PackedRecord instance.
+     *
+     * @param schema The schema.
+     */
+    public PackedRecord (PackedSchema schema) {
+        assert schema != null
+             : "schema == null";
+
+        this.schema = schema;
+        this.values = new byte[schema.getFieldCount()][];
+    }
+
+    /**
+     * Retrieve the schema.
+     */
+    public PackedSchema getSchema () {
+        return schema;
+    }
+
+    /**
+     * Clear all fields.
+     */
+    public PackedRecord reset () {
+        if (values.length != schema.getFieldCount()) {
+            // fields were appended to the schema
+            values = new byte[schema.getFieldCount()][];
+        } else {
+            Arrays.fill(values, null);
+        }
+
+        return this;
+    }
+
+    /**
+     * Set a field.
+     *
+     * @param field The field name.
+     * @param type  The field type.
+     * @param value The encoded value.
+     */
+    private PackedRecord set (String field, FieldType type, byte[] value) {
+        int index = schema.getIndex(field);
+
+        if (schema.getType(index) != type) {
+            throw new IllegalArgumentException("Field " + field + " is not of type " + type);
+        }
+
+        if (index >= values.length) {
+            values = Arrays.copyOf(values, schema.getFieldCount());
+        }
+
+        values[index] = value;
+
+        return this;
+    }
+
+    /**
+     * Set a binary boolean field.
+     *
+     * @param field The field name.
+     * @param value The value.
+     */
+    public PackedRecord setBoolean (String field, boolean value) {
+        return set(field, FieldType.BOOLEAN, Bytes.toBytes(value));
+    }
+
+    /**
+     * Set a byte array field.
+     *
+     * @param field The field name.
+     * @param value The value, or null to clear the field.
+     */
+    public PackedRecord setBytes (String field, byte[] value) {
+        return set(field, FieldType.BYTES, value);
+    }
+
+    /**
+     * Set a binary double field.
+     *
+     * @param field The field name.
+     * @param value The value.
+     */
+    public PackedRecord setDouble (String field, double value) {
+        return set(field, FieldType.DOUBLE, Bytes.toBytes(value));
+    }
+
+    /**
+     * Set a binary int field.
+     *
+     * @param field The field name.
+     * @param value The value.
+     */
+    public PackedRecord setInt (String field, int value) {
+        return set(field, FieldType.INT, Bytes.toBytes(value));
+    }
+
+    /**
+     * Set a binary long field.
+     *
+     * @param field The field name.
+     * @param value The value.
+     */
+    public PackedRecord setLong (String field, long value) {
+        return set(field, FieldType.LONG, Bytes.toBytes(value));
+    }
+
+    /**
+     * Set a string field.
+     *
+     * @param field The field name.
+     * @param value The value, or null to clear the field.
+     */
+    public PackedRecord setString (String field, String value) {
+        return set(field, FieldType.STRING, value != null ? Bytes.toBytes(value) : null);
+    }
+
+    /**
+     * Pack the fields into a cell value.
+     *
+     * @throws IllegalStateException If the packed cell is larger than {@link #MAX_LENGTH}.
+     */
+    public byte[] toBytes () {
+        // trailing unset fields are left out
+        int count = values.length;
+
+        while (count > 0 && values[count - 1] == null) {
+            count--;
+        }
+
+        int length = Bytes.SIZEOF_SHORT * (count + 1);
+
+        for (int i = 0; i < count; i++) {
+            length += values[i] != null ? values[i].length : 0;
+        }
+
+        if (length > MAX_LENGTH) {
+            throw new IllegalStateException("Packed record is too large: " + length);
+        }
+
+        byte[] packed = new byte[length];
+        int    offset = Bytes.putShort(packed, 0, (short) count);
+        int    end    = offset + Bytes.SIZEOF_SHORT * count;
+
+        for (int i = 0; i < count; i++) {
+            if (values[i] != null) {
+                System.arraycopy(values[i], 0, packed, end, values[i].length);
+
+                end += values[i].length;
+            }
+
+            offset = Bytes.putShort(packed, offset, (short) (values[i] != null ? end | SET : end));
+        }
+
+        return packed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PackedSchema} declares the fields that {@link PackedRecord} packs into a single cell.
+ *
+ * <p>
+ * A packed cell starts with the number of fields it holds and the end offset of each, as unsigned shorts, followed by
+ * the field values. The top bit of an end offset is set when its field is set, so that an empty string or byte array
+ * is told apart from an unset field. Numbers and booleans take their fixed width binary form, and strings and byte
+ * arrays take their own length. A field that is not set takes no space, so a row of many small fields costs one cell
+ * rather than one cell per field:
+ * </p>
+ *
+ * <pre>
+ * [count][end 0][end 1]...[end count - 1][value 0][value 1]...[value count - 1]
+ * </pre>
+ *
+ * <p>
+ * <strong>Note:</strong> Fields are identified by their position. Fields may be appended to a schema that has already
+ *                        been written, but never removed or reordered. A packed cell is limited to 32KB.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PackedSchema {
+    /** The maximum number of fields. */
+    public static final int MAX_FIELDS = 0xFFFF;
+
+    /** The map of field names to indexes. */
+    private Map<String,Integer> indexes = new HashMap();
+
+    /** The field names. */
+    private List<String> names = new ArrayList();
+
+    /** The field types. */
+    private List<FieldType> types = new ArrayList();
+
+    /**
+     * Create a new PackedSchema instance.
+     */
+    public PackedSchema () {
+    }
+
+    /**
+     * Append a field.
+     *
+     * @param name The field name.
+     * @param type The field type.
+     */
+    public PackedSchema add (String name, FieldType type) {
+        assert name != null && type != null
+             : "name == null || type == null";
+
+        if (indexes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate field: " + name);
+        }
+
+        if (names.size() == MAX_FIELDS) {
+            throw new IllegalArgumentException("Too many fields: " + name);
+        }
+
+        indexes.put(name, names.size());
+        names.add(name);
+        types.add(type);
+
+        return this;
+    }
+
+    /**
+     * Retrieve the number of fields.
+     */
+    public int getFieldCount () {
+        return names.size();
+    }
+
+    /**
+     * Retrieve the index of a field.
+     *
+     * @param name The field name.
+     *
+     * @throws IllegalArgumentException If the field is not declared.
+     */
+    public int getIndex (String name) {
+        Integer index = indexes.get(name);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Undeclared field: " + name);
+        }
+
+        return index;
+    }
+
+    /**
+     * Retrieve the name of a field.
+     *
+     * @param index The field index.
+     */
+    public String getName (int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Retrieve the type of a field.
+     *
+     * @param index The field index.
+     */
+    public FieldType getType (int index) {
+        return types.get(index);
+    }
+
+    /**
+     * {@link FieldType} represents the type of a packed field.
+     *
+     * @author Sean Kerr [sean@code-box.org]
+     */
+    public enum FieldType {
+        /** A binary boolean. */
+        BOOLEAN,
+
+        /** A byte array. */
+        BYTES,
+
+        /** A binary double. */
+        DOUBLE,
+
+        /** A binary int. */
+        INT,
+
+        /** A binary long. */
+        LONG,
+
+        /** A string. */
+        STRING
+    }
+}
\ No newline at end of file
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+import org.simplebase.writer.TablePool;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnectionManager.HConnectionKey;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link QualifierAliases} maps descriptive qualifiers to short aliases, which are what is actually stored.
+ *
+ * <p>
+ * A qualifier is repeated in every cell on disk and on the wire, so a long qualifier can outweigh the value it names.
+ * A {@link org.simplebase.writer.Writer} with aliases defines an alias for every qualifier it writes, and stores the
+ * alias in its place. A {@link org.simplebase.model.Model} with the same aliases maps them back, so that applications
+ * only ever see the descriptive qualifiers.
+ * </p>
+ *
+ * <p>
+ * Aliases are two or three bytes long: the {@link #MARKER} byte, followed by the number of the alias. The marker never
+ * appears in UTF-8 text, so no string qualifier can be mistaken for an alias. A dictionary is stored as a row of a
+ * metadata table, with one column per qualifier in the {@link #FAMILY} column family, and is cached by
+ * {@link #getInstance} for the life of the process. When a qualifier or alias is missing from the cached dictionary,
+ * the dictionary is loaded again to pick up aliases that other processes have defined since, at most once per reload
+ * interval.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Aliases are never redefined, and a dictionary holds at most {@link #MAX_ALIASES} of them, so
+ *                        aliases suit tables with a fixed set of qualifiers. Binary qualifiers that were written
+ *                        without aliases, and happen to equal a defined alias, are read as the aliased qualifier.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class QualifierAliases {
+    /** The column family of the metadata table. */
+    public static final byte[] FAMILY = Bytes.toBytes("a");
+
+    /** The first byte of every alias, which is not valid in UTF-8. */
+    public static final byte MARKER = (byte) 0xFF;
+
+    /** The maximum number of aliases. */
+    public static final int MAX_ALIASES = 0x10000;
+
+    /** The default minimum time in milliseconds between reloads of a stored dictionary. */
+    public static final long RELOAD_INTERVAL = 1000;
+
+    /** The qualifier of the counter that numbers aliases. */
+    private static final byte[] COUNTER = new byte[0];
+
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(QualifierAliases.class);
+
+    /** The map of connection keys, metadata tables and dictionary names to shared instances. */
+    private static Map<List,QualifierAliases> instances = new HashMap();
+
+    /** The map of qualifiers to aliases, which is replaced rather than modified. */
+    private volatile Map<byte[],byte[]> aliases = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The time the dictionary was last loaded. */
+    private long loaded;
+
+    /** The map of aliases to qualifiers, which is replaced rather than modified. */
+    private volatile Map<byte[],byte[]> qualifiers = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The minimum time in milliseconds between reloads. */
+    private long reloadInterval = RELOAD_INTERVAL;
+
+    /** The dictionary row. */
+    private byte[] row;
+
+    /** The metadata table. */
+    private HTableInterface table;
+
+    /**
+     * Create a new QualifierAliases instance, which is not stored.
+     */
+    public QualifierAliases () {
+    }
+
+    /**
+     * Create a new QualifierAliases instance, and load it from the metadata table.
+     *
+     * @param table The metadata table.
+     * @param name  The dictionary name.
+     *
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public QualifierAliases (HTableInterface table, String name)
+    throws IOException {
+        assert table != null && name != null
+             : "table == null || name == null";
+
+        this.row   = Bytes.toBytes(name);
+        this.table = table;
+
+        load();
+    }
+
+    /**
+     * Retrieve the alias of a qualifier.
+     *
+     * @param qualifier The qualifier.
+     *
+     * @return The alias, or the qualifier itself if it has none.
+     */
+    public byte[] alias (byte[] qualifier) {
+        byte[] alias = aliases.get(qualifier);
+
+        if (alias == null && reload()) {
+            alias = aliases.get(qualifier);
+        }
+
+        return alias != null ? alias : qualifier;
+    }
+
+    /**
+     * Define the alias of a qualifier, unless it already has one.
+     *
+     * @param qualifier The qualifier.
+     *
+     * @return The alias.
+     *
+     * @throws IOException If the alias cannot be stored.
+     */
+    public byte[] define (byte[] qualifier)
+    throws IOException {
+        assert qualifier != null && qualifier.length > 0
+             : "qualifier == null || qualifier.length == 0";
+
+        byte[] alias = aliases.get(qualifier);
+
+        // writers define every qualifier they write, so the common case stays off the lock
+        return alias != null ? alias : store(qualifier);
+    }
+
+    /**
+     * Retrieve the shared instance of a dictionary, loading it the first time.
+     *
+     * @param configuration The HBase configuration.
+     * @param table         The metadata table.
+     * @param name          The dictionary name.
+     *
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public static synchronized QualifierAliases getInstance (Configuration configuration, String table, String name)
+    throws IOException {
+        assert configuration != null && table != null && name != null
+             : "configuration == null || table == null || name == null";
+
+        List             key       = Arrays.asList(new HConnectionKey(configuration), table, name);
+        QualifierAliases _instance = instances.get(key);
+
+        if (_instance == null) {
+            // the table handle is kept for as long as the dictionary is cached
+            _instance = new QualifierAliases(TablePool.getInstance().acquire(configuration, table), name);
+
+            instances.put(key, _instance);
+        }
+
+        return _instance;
+    }
+
+    /**
+     * Retrieve the stored alias of a qualifier.
+     *
+     * @param qualifier The qualifier.
+     *
+     * @return The alias, or null if it has none.
+     *
+     * @throws IOException If the dictionary cannot be read.
+     */
+    private byte[] getStoredAlias (byte[] qualifier)
+    throws IOException {
+        Get get = new Get(row);
+
+        get.addColumn(FAMILY, qualifier);
+
+        return table.get(get).getValue(FAMILY, qualifier);
+    }
+
+    /**
+     * Indicates that no qualifier has an alias.
+     */
+    public boolean isEmpty () {
+        return aliases.isEmpty();
+    }
+
+    /**
+     * Load the dictionary from the metadata table, which picks up aliases defined by other processes.
+     *
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public synchronized QualifierAliases load ()
+    throws IOException {
+        if (table == null) {
+            return this;
+        }
+
+        Map<byte[],byte[]> aliases    = new TreeMap(Bytes.BYTES_COMPARATOR);
+        Map<byte[],byte[]> qualifiers = new TreeMap(Bytes.BYTES_COMPARATOR);
+        Get                get        = new Get(row);
+
+        get.addFamily(FAMILY);
+
+        Result result = table.get(get);
+
+        if (!result.isEmpty()) {
+            for (Map.Entry<byte[],byte[]> entry : result.getFamilyMap(FAMILY).entrySet()) {
+                if (entry.getKey().length > 0) {
+                    aliases.put(entry.getKey(), entry.getValue());
+                    qualifiers.put(entry.getValue(), entry.getKey());
+                }
+            }
+        }
+
+        this.qualifiers = qualifiers;
+        this.aliases    = aliases;
+
+        loaded = System.currentTimeMillis();
+
+        return this;
+    }
+
+    /**
+     * Add an alias to the cached dictionary.
+     *
+     * @param qualifier The qualifier.
+     * @param alias     The alias.
+     */
+    private void put (byte[] qualifier, byte[] alias) {
+        Map<byte[],byte[]> aliases    = new TreeMap(Bytes.BYTES_COMPARATOR);
+        Map<byte[],byte[]> qualifiers = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+        aliases.putAll(this.aliases);
+        qualifiers.putAll(this.qualifiers);
+        aliases.put(qualifier, alias);
+        qualifiers.put(alias, qualifier);
+
+        // readers see the alias only once it can be resolved
+        this.qualifiers = qualifiers;
+        this.aliases    = aliases;
+    }
+
+    /**
+     * Load the dictionary again after a miss, unless it was loaded within the reload interval.
+     *
+     * @return True if the dictionary was loaded, otherwise false.
+     */
+    private synchronized boolean reload () {
+        if (table == null || System.currentTimeMillis() - loaded < reloadInterval) {
+            return false;
+        }
+
+        try {
+            load();
+        } catch (IOException e) {
+            // a failed reload is retried after the next interval, and the cached dictionary is still valid
+            loaded = System.currentTimeMillis();
+
+            LOG.warn("Unable to reload qualifier aliases", e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieve the qualifier of an alias.
+     *
+     * @param alias The alias.
+     *
+     * @return The qualifier, or the alias itself if it is not an alias.
+     */
+    public byte[] resolve (byte[] alias) {
+        if (alias.length < 2 || alias.length > 3 || alias[0] != MARKER) {
+            return alias;
+        }
+
+        byte[] qualifier = qualifiers.get(alias);
+
+        if (qualifier == null && reload()) {
+            qualifier = qualifiers.get(alias);
+        }
+
+        return qualifier != null ? qualifier : alias;
+    }
+
+    /**
+     * Set the minimum time between reloads of a stored dictionary after a miss.
+     *
+     * @param interval The interval in milliseconds.
+     */
+    public synchronized QualifierAliases setReloadInterval (long interval) {
+        assert interval >= 0
+             : "interval < 0";
+
+        reloadInterval = interval;
+
+        return this;
+    }
+
+    /**
+     * Define and store the alias of a qualifier, unless it already has one.
+     *
+     * @param qualifier The qualifier.
+     *
+     * @return The alias.
+     *
+     * @throws IOException If the alias cannot be stored.
+     */
+    private synchronized byte[] store (byte[] qualifier)
+    throws IOException {
+        byte[] alias = aliases.get(qualifier);
+
+        if (alias != null) {
+            return alias;
+        }
+
+        if (table == null) {
+            alias = toAlias(aliases.size());
+        } else {
+            // another process may have defined the qualifier since the dictionary was loaded
+            alias = getStoredAlias(qualifier);
+
+            if (alias == null) {
+                byte[] next = toAlias(table.incrementColumnValue(row, FAMILY, COUNTER, 1) - 1);
+                Put    put  = new Put(row);
+
+                put.add(FAMILY, qualifier, next);
+
+                alias = table.checkAndPut(row, FAMILY, qualifier, null, put) ? next : getStoredAlias(qualifier);
+            }
+        }
+
+        put(qualifier, alias);
+
+        return alias;
+    }
+
+    /**
+     * Create the alias of a number.
+     *
+     * @param number The number.
+     *
+     * @throws IllegalStateException If the number is not below {@link #MAX_ALIASES}.
+     */
+    static byte[] toAlias (long number) {
+        if (number >= MAX_ALIASES) {
+            throw new IllegalStateException("Too many aliases: " + number);
+        }
+
+        if (number < 0x100) {
+            return new byte[] { MARKER, (byte) number };
+        }
+
+        return new byte[] { MARKER, (byte) (number >>> 8), (byte) number };
+    }
+}
\ No newline at end of file
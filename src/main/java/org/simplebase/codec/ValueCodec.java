@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+/**
+ * {@link ValueCodec} encodes the values of a column more compactly than their fixed width form.
+ *
+ * <p>
+ * Codecs are declared per column with {@link ValueCodecs}, which is shared by the {@link org.simplebase.writer.Writer}
+ * that encodes values and the {@link org.simplebase.model.Model} that decodes them. Values are decoded in place, from
+ * the cell they are stored in:
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #VARINT} writes zig-zag varints, which take a single byte for values from -64 to 63.</li>
+ *     <li>{@link #timestamp} writes varints of the difference from a base timestamp. See {@link #TIMESTAMP}.</li>
+ *     <li>{@link #decimal} writes varints of decimal values scaled to a fixed number of decimal places.</li>
+ *     <li>{@link #BOOLEAN} writes true as a single byte, and false as an empty value.</li>
+ * </ul>
+ *
+ * <p>
+ * <strong>Note:</strong> A codec cannot be changed once a column has been written, since stored values are decoded
+ *                        with the codec that is declared when they are read. Columns that are merged with the
+ *                        <em>SUM</em>, <em>MIN</em> or <em>MAX</em> {@link org.simplebase.writer.MergeOperator}
+ *                        require fixed width values.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public abstract class ValueCodec {
+    /** Write true as a single byte, and false as an empty value. */
+    public static final ValueCodec BOOLEAN = new ValueCodec() {
+        @Override
+        public boolean decodeBoolean (byte[] buffer, int offset, int length) {
+            return length > 0 && buffer[offset] != 0;
+        }
+
+        @Override
+        public long decodeLong (byte[] buffer, int offset, int length) {
+            return decodeBoolean(buffer, offset, length) ? 1 : 0;
+        }
+
+        @Override
+        public byte[] encodeBoolean (boolean value) {
+            return value ? new byte[] { 1 } : new byte[0];
+        }
+
+        @Override
+        public byte[] encodeLong (long value) {
+            return encodeBoolean(value != 0);
+        }
+    };
+
+    /** The base of {@link #TIMESTAMP}, which is 2014-01-01 00:00:00 UTC in milliseconds. */
+    public static final long EPOCH = 1388534400000L;
+
+    /** Write timestamps in milliseconds as varints of the difference from {@link #EPOCH}. */
+    public static final ValueCodec TIMESTAMP = timestamp(EPOCH);
+
+    /** Write zig-zag varints. */
+    public static final ValueCodec VARINT = timestamp(0);
+
+    /**
+     * Create a new ValueCodec instance.
+     */
+    protected ValueCodec () {
+    }
+
+    /**
+     * Create a codec that writes decimal values as varints, scaled to a fixed number of decimal places.
+     *
+     * <p>
+     * <strong>Note:</strong> Values are rounded to the number of decimal places.
+     * </p>
+     *
+     * @param scale The number of decimal places, up to 18.
+     */
+    public static ValueCodec decimal (int scale) {
+        assert scale >= 0 && scale <= 18
+             : "scale < 0 || scale > 18";
+
+        long factor = 1;
+
+        for (int i = 0; i < scale; i++) {
+            factor *= 10;
+        }
+
+        final long multiplier = factor;
+
+        return new ValueCodec() {
+            @Override
+            public double decodeDouble (byte[] buffer, int offset, int length) {
+                return (double) readVarint(buffer, offset, length) / multiplier;
+            }
+
+            @Override
+            public long decodeLong (byte[] buffer, int offset, int length) {
+                return readVarint(buffer, offset, length) / multiplier;
+            }
+
+            @Override
+            public byte[] encodeDouble (double value) {
+                return toVarint(Math.round(value * multiplier));
+            }
+
+            @Override
+            public byte[] encodeLong (long value) {
+                return toVarint(value * multiplier);
+            }
+        };
+    }
+
+    /**
+     * Decode a boolean value.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the value.
+     * @param length The length of the value.
+     */
+    public boolean decodeBoolean (byte[] buffer, int offset, int length) {
+        return decodeLong(buffer, offset, length) != 0;
+    }
+
+    /**
+     * Decode a double value.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the value.
+     * @param length The length of the value.
+     */
+    public double decodeDouble (byte[] buffer, int offset, int length) {
+        return decodeLong(buffer, offset, length);
+    }
+
+    /**
+     * Decode a long value.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the value.
+     * @param length The length of the value.
+     */
+    public abstract long decodeLong (byte[] buffer, int offset, int length);
+
+    /**
+     * Encode a boolean value.
+     *
+     * @param value The value.
+     */
+    public byte[] encodeBoolean (boolean value) {
+        return encodeLong(value ? 1 : 0);
+    }
+
+    /**
+     * Encode a double value.
+     *
+     * <p>
+     * <strong>Note:</strong> Codecs of whole numbers refuse values with a fraction, rather than lose it.
+     * </p>
+     *
+     * @param value The value.
+     */
+    public byte[] encodeDouble (double value) {
+        if (value != Math.rint(value) || Math.abs(value) > Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Value is not a whole number: " + value);
+        }
+
+        return encodeLong((long) value);
+    }
+
+    /**
+     * Encode a long value.
+     *
+     * @param value The value.
+     */
+    public abstract byte[] encodeLong (long value);
+
+    /**
+     * Read a zig-zag varint.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the varint.
+     * @param length The length of the varint.
+     */
+    public static long readVarint (byte[] buffer, int offset, int length) {
+        long value = 0;
+
+        for (int i = 0, shift = 0; i < length; i++, shift += 7) {
+            value |= (long) (buffer[offset + i] & 0x7F) << shift;
+
+            if (buffer[offset + i] >= 0) {
+                break;
+            }
+        }
+
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Create a codec that writes timestamps as varints of the difference from a base timestamp.
+     *
+     * @param base The base timestamp.
+     */
+    public static ValueCodec timestamp (final long base) {
+        return new ValueCodec() {
+            @Override
+            public long decodeLong (byte[] buffer, int offset, int length) {
+                return readVarint(buffer, offset, length) + base;
+            }
+
+            @Override
+            public byte[] encodeLong (long value) {
+                return toVarint(value - base);
+            }
+        };
+    }
+
+    /**
+     * Write a zig-zag varint.
+     *
+     * @param value The value.
+     */
+    public static byte[] toVarint (long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        int  length = 1;
+
+        for (long rest = zigzag >>> 7; rest != 0; rest >>>= 7) {
+            length++;
+        }
+
+        byte[] varint = new byte[length];
+
+        for (int i = 0; i < length - 1; i++, zigzag >>>= 7) {
+            varint[i] = (byte) (zigzag | 0x80);
+        }
+
+        varint[length - 1] = (byte) zigzag;
+
+        return varint;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.codec;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link ValueCodecs} declares the {@link ValueCodec} of each column that is not written in its fixed width form.
+ *
+ * <p>
+ * The same declarations are handed to the {@link org.simplebase.writer.Writer} and the
+ * {@link org.simplebase.model.Model} of a table, with <em>setValueCodecs</em>, so that each column is declared once.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Declarations are read without locking, so they should be complete before they are shared.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ValueCodecs {
+    /** The map of column families to qualifiers to codecs. */
+    private Map<byte[],Map<byte[],ValueCodec>> codecs = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /**
+     * Retrieve the codec of a column.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     *
+     * @return The codec, or null if there is none.
+     */
+    public ValueCodec get (byte[] family, byte[] qualifier) {
+        if (codecs.isEmpty()) {
+            return null;
+        }
+
+        Map<byte[],ValueCodec> qualifiers = codecs.get(family);
+
+        return qualifiers != null ? qualifiers.get(qualifier) : null;
+    }
+
+    /**
+     * Set the codec of a column.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param codec     The codec, or null to remove it.
+     */
+    public ValueCodecs set (byte[] family, byte[] qualifier, ValueCodec codec) {
+        assert family != null && qualifier != null
+             : "family == null || qualifier == null";
+
+        Map<byte[],ValueCodec> qualifiers = codecs.get(family);
+
+        if (qualifiers == null) {
+            qualifiers = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+            codecs.put(family, qualifiers);
+        }
+
+        if (codec != null) {
+            qualifiers.put(qualifier, codec);
+        } else {
+            qualifiers.remove(qualifier);
+
+            if (qualifiers.isEmpty()) {
+                codecs.remove(family);
+            }
+        }
+
+        return this;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.key;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link HashKeySalt} buckets rows by a hash of the row, with a single byte prefix.
+ *
+ * <p>
+ * <strong>Note:</strong> Changing the number of buckets moves rows to other buckets, so it must not change once rows
+ *                        have been written. Pre-splitting the table at each bucket prefix spreads the buckets across
+ *                        regions from the start.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class HashKeySalt implements KeySalt {
+    /** The maximum number of buckets. */
+    public static final int MAX_BUCKETS = 256;
+
+    /** The number of buckets. */
+    private int buckets;
+
+    /**
+     * Create a new HashKeySalt instance.
+     *
+     * @param buckets The number of buckets, up to {@link #MAX_BUCKETS}.
+     */
+    public HashKeySalt (int buckets) {
+        assert buckets > 0 && buckets <= MAX_BUCKETS
+             : "buckets <= 0 || buckets > MAX_BUCKETS";
+
+        this.buckets = buckets;
+    }
+
+    /**
+     * Retrieve the bucket of a row.
+     *
+     * @param row The row.
+     */
+    public int bucket (byte[] row) {
+        return (Bytes.hashCode(row) & Integer.MAX_VALUE) % buckets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBuckets () {
+        return buckets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPrefixLength () {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] prefix (int bucket) {
+        assert bucket >= 0 && bucket < buckets
+             : "bucket < 0 || bucket >= buckets";
+
+        return new byte[] { (byte) bucket };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] salt (byte[] row) {
+        assert row != null
+             : "row == null";
+
+        byte[] salted = new byte[row.length + 1];
+
+        salted[0] = (byte) bucket(row);
+
+        System.arraycopy(row, 0, salted, 1, row.length);
+
+        return salted;
+    }
+
+    /**
+     * Retrieve the split keys of a table pre-split at each bucket prefix.
+     */
+    public byte[][] splitKeys () {
+        byte[][] keys = new byte[buckets - 1][];
+
+        for (int i = 1; i < buckets; i++) {
+            keys[i - 1] = prefix(i);
+        }
+
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] unsalt (byte[] row) {
+        assert row != null && row.length > 0
+             : "row == null || row.length == 0";
+
+        return Arrays.copyOfRange(row, 1, row.length);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.key;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * {@link KeyDecoder} reads the components of a row key written by a {@link KeyEncoder}, in the order they were written.
+ *
+ * <p>
+ * A decoder reads a key in place, and is reused from one key to the next with {@link #reset}. Reading or skipping a
+ * number, or skipping a string, allocates nothing.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class KeyDecoder {
+    /** The key. */
+    private byte[] key;
+
+    /** The end of the key. */
+    private int limit;
+
+    /** The position of the next component. */
+    private int position;
+
+    /**
+     * Create a new KeyDecoder instance.
+     */
+    public KeyDecoder () {
+    }
+
+    /**
+     * Create a new KeyDecoder instance.
+     *
+     * @param key The key.
+     */
+    public KeyDecoder (byte[] key) {
+        reset(key);
+    }
+
+    /**
+     * Read a long, big-endian.
+     */
+    private long getLong () {
+        assert position + 8 <= limit
+             : "position + 8 > limit";
+
+        long value = 0;
+
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (key[position++] & 0xFF);
+        }
+
+        return value;
+    }
+
+    /**
+     * Retrieve the position of the next component.
+     */
+    public int getPosition () {
+        return position;
+    }
+
+    /**
+     * Indicates that there are components left to read.
+     */
+    public boolean hasRemaining () {
+        return position < limit;
+    }
+
+    /**
+     * Read a byte array component.
+     */
+    public byte[] readBytes () {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+        while (true) {
+            byte b = key[position++];
+
+            if (b == KeyEncoder.ESCAPE && key[position++] == KeyEncoder.TERMINATOR) {
+                return value.toByteArray();
+            }
+
+            value.write(b);
+        }
+    }
+
+    /**
+     * Read a double component.
+     */
+    public double readDouble () {
+        long bits = getLong();
+
+        return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+    }
+
+    /**
+     * Read an int component.
+     */
+    public int readInt () {
+        assert position + 4 <= limit
+             : "position + 4 > limit";
+
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (key[position++] & 0xFF);
+        }
+
+        return value ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Read a long component.
+     */
+    public long readLong () {
+        return getLong() ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Read a long component written with {@link KeyEncoder#writeReverseLong}.
+     */
+    public long readReverseLong () {
+        return ~getLong() ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Read a string component.
+     */
+    public String readString () {
+        try {
+            return new String(readBytes(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Start reading a key.
+     *
+     * @param key The key.
+     */
+    public KeyDecoder reset (byte[] key) {
+        return reset(key, 0, key.length);
+    }
+
+    /**
+     * Start reading a key held in part of an array.
+     *
+     * @param key    The array.
+     * @param offset The offset of the key.
+     * @param length The length of the key.
+     */
+    public KeyDecoder reset (byte[] key, int offset, int length) {
+        assert key != null && offset >= 0 && offset + length <= key.length
+             : "key == null || offset < 0 || offset + length > key.length";
+
+        this.key = key;
+        limit    = offset + length;
+        position = offset;
+
+        return this;
+    }
+
+    /**
+     * Skip a fixed length component.
+     *
+     * @param length The length, which is 4 for an int, and 8 for a long or double.
+     */
+    public KeyDecoder skip (int length) {
+        assert position + length <= limit
+             : "position + length > limit";
+
+        position += length;
+
+        return this;
+    }
+
+    /**
+     * Skip a string or byte array component.
+     */
+    public KeyDecoder skipString () {
+        while (true) {
+            if (key[position++] == KeyEncoder.ESCAPE && key[position++] == KeyEncoder.TERMINATOR) {
+                return this;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.key;
+
+import java.util.Arrays;
+
+/**
+ * {@link KeyEncoder} encodes composite row keys that sort in the same order as their components.
+ *
+ * <p>
+ * Components are appended to a buffer that is reused from one key to the next, so encoding a key allocates nothing
+ * until {@link #toBytes} is called. Each component is encoded so that keys compare byte by byte in the order of their
+ * components:
+ * </p>
+ *
+ * <ul>
+ *     <li>Ints and longs are written big-endian, with the sign bit flipped, so that negative numbers sort first.</li>
+ *     <li>Doubles have the sign bit flipped when positive, and every bit flipped when negative.</li>
+ *     <li>
+ *         Strings and byte arrays are written with each 0x00 byte escaped as 0x00 0xFF, and end with 0x00 0x01, so
+ *         that a component sorts ahead of every longer component it is a prefix of. Strings are written as UTF-8.
+ *     </li>
+ *     <li>Reversed longs have every bit flipped, so that the latest timestamps sort first.</li>
+ * </ul>
+ *
+ * <p>
+ * Keys are read back with a {@link KeyDecoder}, in the order the components were written.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class KeyEncoder {
+    /** The escape byte. */
+    static final byte ESCAPE = 0x00;
+
+    /** The escaped 0x00 byte, which follows the escape byte. */
+    static final byte ESCAPED = (byte) 0xFF;
+
+    /** The terminator, which follows the escape byte at the end of a variable length component. */
+    static final byte TERMINATOR = 0x01;
+
+    /** The buffer. */
+    private byte[] buffer;
+
+    /** The length of the key. */
+    private int length;
+
+    /**
+     * Create a new KeyEncoder instance.
+     */
+    public KeyEncoder () {
+        this(64);
+    }
+
+    /**
+     * Create a new KeyEncoder instance.
+     *
+     * @param capacity The initial capacity of the buffer.
+     */
+    public KeyEncoder (int capacity) {
+        assert capacity > 0
+             : "capacity <= 0";
+
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Make room for a number of bytes.
+     *
+     * @param count The number of bytes.
+     */
+    private void ensure (int count) {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+    }
+
+    /**
+     * Retrieve the buffer, which holds the key up to its length.
+     *
+     * <p>
+     * <strong>Note:</strong> The buffer is reused by the next key.
+     * </p>
+     */
+    public byte[] getBuffer () {
+        return buffer;
+    }
+
+    /**
+     * Retrieve the length of the key.
+     */
+    public int getLength () {
+        return length;
+    }
+
+    /**
+     * Write a byte.
+     *
+     * @param value The value.
+     */
+    private void put (int value) {
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Write a byte of a variable length component, escaping it if needed.
+     *
+     * @param value The value.
+     */
+    private void putEscaped (int value) {
+        ensure(2);
+        put(value);
+
+        if ((byte) value == ESCAPE) {
+            put(ESCAPED);
+        }
+    }
+
+    /**
+     * Write a long, big-endian.
+     *
+     * @param value The value.
+     */
+    private void putLong (long value) {
+        ensure(8);
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            put((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Clear the key, so that the buffer can be reused.
+     */
+    public KeyEncoder reset () {
+        length = 0;
+
+        return this;
+    }
+
+    /**
+     * Copy the key.
+     */
+    public byte[] toBytes () {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Write a byte array component.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeBytes (byte[] value) {
+        assert value != null
+             : "value == null";
+
+        for (int i = 0; i < value.length; i++) {
+            putEscaped(value[i]);
+        }
+
+        return writeTerminator();
+    }
+
+    /**
+     * Write a double component.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeDouble (double value) {
+        long bits = Double.doubleToLongBits(value);
+
+        putLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Write an int component.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeInt (int value) {
+        ensure(4);
+
+        value ^= Integer.MIN_VALUE;
+
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            put(value >>> shift);
+        }
+
+        return this;
+    }
+
+    /**
+     * Write a long component.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeLong (long value) {
+        putLong(value ^ Long.MIN_VALUE);
+
+        return this;
+    }
+
+    /**
+     * Write a long component that sorts in descending order.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeReverseLong (long value) {
+        putLong(~(value ^ Long.MIN_VALUE));
+
+        return this;
+    }
+
+    /**
+     * Write a string component.
+     *
+     * @param value The value.
+     */
+    public KeyEncoder writeString (String value) {
+        assert value != null
+             : "value == null";
+
+        for (int i = 0; i < value.length(); i++) {
+            int c = value.codePointAt(i);
+
+            if (c < 0x80) {
+                putEscaped(c);
+            } else if (c < 0x800) {
+                ensure(2);
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (c < 0x10000) {
+                ensure(3);
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            } else {
+                ensure(4);
+                put(0xF0 | (c >> 18));
+                put(0x80 | ((c >> 12) & 0x3F));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+
+                // a supplementary character takes two chars
+                i++;
+            }
+        }
+
+        return writeTerminator();
+    }
+
+    /**
+     * Write the end of a variable length component.
+     */
+    private KeyEncoder writeTerminator () {
+        ensure(2);
+        put(ESCAPE);
+        put(TERMINATOR);
+
+        return this;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.key;
+
+/**
+ * {@link KeySalt} spreads rows across a fixed number of buckets, by prefixing each row with the prefix of its bucket.
+ *
+ * <p>
+ * Rows that grow steadily, such as timestamps and sequence numbers, are written to a single region at a time. Salted,
+ * they are written to as many regions as there are buckets. A writer salts rows with {@link #salt}, when one is set
+ * with {@link org.simplebase.writer.Writer#setKeySalt}. Salted rows are read back in the order of the rows before
+ * salting with a {@link SaltedScanner}, and {@link org.simplebase.model.Model#getRow} removes the prefix.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Every bucket prefix has the same length, and the bucket of a row must only depend on the row.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public interface KeySalt {
+    /**
+     * Retrieve the number of buckets.
+     */
+    int getBuckets ();
+
+    /**
+     * Retrieve the length of a bucket prefix.
+     */
+    int getPrefixLength ();
+
+    /**
+     * Retrieve the prefix of a bucket.
+     *
+     * @param bucket The bucket, from 0 up to the number of buckets.
+     */
+    byte[] prefix (int bucket);
+
+    /**
+     * Salt a row.
+     *
+     * @param row The row.
+     *
+     * @return The row, prefixed with the prefix of its bucket.
+     */
+    byte[] salt (byte[] row);
+
+    /**
+     * Remove the prefix of a salted row.
+     *
+     * @param row The salted row.
+     */
+    byte[] unsalt (byte[] row);
+}
\ No newline at end of file
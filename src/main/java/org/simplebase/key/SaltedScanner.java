@@ -0,0 +1,385 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.key;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link SaltedScanner} scans a range of rows written with a {@link KeySalt}, in the order of the rows before salting.
+ *
+ * <p>
+ * The range is scanned in every bucket at once. Each bucket is read in batches by a thread of its own, which fetches
+ * the next batch while the current one is consumed, and the buckets are merged by row. The start and stop rows of the
+ * scan are rows before salting.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> The rows of the results are salted. A {@link org.simplebase.model.Model} with the same
+ *                        {@link KeySalt} returns them without the prefix. Filters see salted rows.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class SaltedScanner implements ResultScanner {
+    /** The default batch size, in rows, for scans that do not set their caching. */
+    public static final int BATCH_SIZE = 100;
+
+    /** The maximum number of threads. */
+    public static final int THREADS = 16;
+
+    /** The buckets. */
+    private List<Bucket> buckets = new ArrayList();
+
+    /** The executor. */
+    private ExecutorService executor;
+
+    /** The buckets that have results left, by current row. */
+    private PriorityQueue<Bucket> heads;
+
+    /** The key salt. */
+    private KeySalt salt;
+
+    /**
+     * Create a new SaltedScanner instance.
+     *
+     * @param table The table.
+     * @param scan  The scan, with start and stop rows before salting.
+     * @param salt  The key salt.
+     *
+     * @throws IOException If a bucket cannot be scanned.
+     */
+    public SaltedScanner (HTableInterface table, Scan scan, KeySalt salt)
+    throws IOException {
+        assert table != null && scan != null && salt != null
+             : "table == null || scan == null || salt == null";
+
+        this.salt = salt;
+
+        final int prefixLength = salt.getPrefixLength();
+
+        executor = Executors.newFixedThreadPool(Math.min(salt.getBuckets(), THREADS),
+                                                Threads.newDaemonThreadFactory("simplebase-salt"));
+        heads    = new PriorityQueue(salt.getBuckets(), new Comparator<Bucket>() {
+            public int compare (Bucket a, Bucket b) {
+                byte[] row1 = a.current().getRow();
+                byte[] row2 = b.current().getRow();
+
+                return Bytes.compareTo(row1, prefixLength, row1.length - prefixLength,
+                                       row2, prefixLength, row2.length - prefixLength);
+            }
+        });
+
+        for (int i = 0; i < salt.getBuckets(); i++) {
+            byte[] prefix = salt.prefix(i);
+            Scan   bucket = new Scan(scan);
+
+            bucket.setStartRow(Bytes.add(prefix, scan.getStartRow()));
+            bucket.setStopRow(scan.getStopRow().length > 0 ? Bytes.add(prefix, scan.getStopRow()) : successor(prefix));
+
+            buckets.add(new Bucket(table, bucket, scan.getCaching() > 0 ? scan.getCaching() : BATCH_SIZE));
+        }
+
+        try {
+            for (Bucket bucket : buckets) {
+                if (bucket.fill()) {
+                    heads.add(bucket);
+                }
+            }
+        } catch (IOException e) {
+            close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close () {
+        executor.shutdownNow();
+
+        for (Bucket bucket : buckets) {
+            bucket.close();
+        }
+
+        heads.clear();
+    }
+
+    /**
+     * Retrieve the key salt.
+     */
+    public KeySalt getKeySalt () {
+        return salt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Result> iterator () {
+        return new Iterator<Result>() {
+            /** The next result. */
+            private Result next;
+
+            public boolean hasNext () {
+                try {
+                    if (next == null) {
+                        next = SaltedScanner.this.next();
+                    }
+
+                    return next != null;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            public Result next () {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Result result = next;
+
+                next = null;
+
+                return result;
+            }
+
+            public void remove () {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Result next ()
+    throws IOException {
+        Bucket bucket = heads.poll();
+
+        if (bucket == null) {
+            return null;
+        }
+
+        Result result = bucket.current();
+
+        if (bucket.advance()) {
+            heads.add(bucket);
+        } else {
+            bucket.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Result[] next (int count)
+    throws IOException {
+        List<Result> results = new ArrayList();
+
+        for (Result result = null; results.size() < count && (result = next()) != null;) {
+            results.add(result);
+        }
+
+        return results.toArray(new Result[results.size()]);
+    }
+
+    /**
+     * Retrieve the first row after every row that starts with a prefix.
+     *
+     * @param prefix The prefix.
+     *
+     * @return The row, or an empty row if there is none.
+     */
+    private static byte[] successor (byte[] prefix) {
+        byte[] row = prefix.clone();
+
+        for (int i = row.length - 1; i >= 0; i--) {
+            if (++row[i] != 0) {
+                return Bytes.head(row, i + 1);
+            }
+        }
+
+        return new byte[0];
+    }
+
+    /**
+     * {@link Bucket} reads the results of a single bucket, a batch ahead.
+     *
+     * @author Sean Kerr [sean@code-box.org]
+     */
+    private class Bucket implements Callable<Result[]> {
+        /** The batch size. */
+        private int batchSize;
+
+        /** The current batch. */
+        private Result[] batch;
+
+        /** Indicates that the bucket has been closed. */
+        private boolean closed;
+
+        /** Indicates that the last batch has been fetched. */
+        private boolean exhausted;
+
+        /** The next batch. */
+        private Future<Result[]> future;
+
+        /** The index of the current result. */
+        private int index;
+
+        /** The scan. */
+        private Scan scan;
+
+        /** The scanner, which is opened by the first fetch. */
+        private ResultScanner scanner;
+
+        /** The table. */
+        private HTableInterface table;
+
+        /**
+         * Create a new Bucket instance, and start fetching its first batch.
+         *
+         * @param table     The table.
+         * @param scan      The scan of the bucket.
+         * @param batchSize The batch size.
+         */
+        Bucket (HTableInterface table, Scan scan, int batchSize) {
+            this.batchSize = batchSize;
+            this.scan      = scan;
+            this.table     = table;
+            future         = executor.submit(this);
+        }
+
+        /**
+         * Move to the next result.
+         *
+         * @return True if there is one, otherwise false.
+         *
+         * @throws IOException If the next batch cannot be fetched.
+         */
+        boolean advance ()
+        throws IOException {
+            return ++index < batch.length || fill();
+        }
+
+        /**
+         * Fetch a batch, on the executor.
+         */
+        public Result[] call ()
+        throws IOException {
+            ResultScanner scanner;
+
+            synchronized (this) {
+                if (closed) {
+                    return new Result[0];
+                }
+
+                if (this.scanner == null) {
+                    this.scanner = table.getScanner(scan);
+                }
+
+                scanner = this.scanner;
+            }
+
+            return scanner.next(batchSize);
+        }
+
+        /**
+         * Close the scanner.
+         *
+         * <p>
+         * <strong>Note:</strong> The scanner is opened and closed under the lock of the bucket, so that a fetch still
+         *                        running on the executor can never open a scanner once the bucket has been closed.
+         * </p>
+         */
+        void close () {
+            if (future != null) {
+                future.cancel(true);
+            }
+
+            synchronized (this) {
+                closed = true;
+
+                if (scanner != null) {
+                    scanner.close();
+                }
+            }
+        }
+
+        /**
+         * Retrieve the current result.
+         */
+        Result current () {
+            return batch[index];
+        }
+
+        /**
+         * Take the next batch, and start fetching the one after it.
+         *
+         * @return True if the batch has results, otherwise false.
+         *
+         * @throws IOException If the batch cannot be fetched.
+         */
+        boolean fill ()
+        throws IOException {
+            if (exhausted) {
+                return false;
+            }
+
+            try {
+                batch = future.get();
+            } catch (ExecutionException e) {
+                future = null;
+
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while scanning");
+            }
+
+            index     = 0;
+            exhausted = batch.length < batchSize;
+            future    = exhausted ? null : executor.submit(this);
+
+            return batch.length > 0;
+        }
+    }
+}
\ No newline at end of file
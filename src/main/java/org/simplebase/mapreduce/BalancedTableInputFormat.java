@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+
+/**
+ * {@link BalancedTableInputFormat} is a <em>TableInputFormat</em> that cuts large regions into several splits.
+ *
+ * <p>
+ * The size of each region is read from the store file sizes the region servers report. A region larger than the split
+ * size is cut into as many key ranges as it takes to bring each close to the split size, up to a limit, so that a few
+ * large regions no longer decide how long a job takes. The key ranges are interpolated between the start and end rows
+ * of the region, and every key range keeps the location of its region.
+ * </p>
+ *
+ * <p>
+ * The split size is read from {@link #SPLIT_SIZE_KEY}, and defaults to the average size of the regions that are read.
+ * The limit is read from {@link #MAX_REGION_SPLITS_KEY}.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Interpolation assumes rows are spread evenly between the start and end rows of a region. The
+ *                        first and last regions have no bound to interpolate towards, and are never cut.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class BalancedTableInputFormat extends TableInputFormat {
+    /** The default maximum number of splits per region. */
+    public static final int MAX_REGION_SPLITS = 16;
+
+    /** The configuration key of the maximum number of splits per region. */
+    public static final String MAX_REGION_SPLITS_KEY = "simplebase.input.max.region.splits";
+
+    /** The configuration key of the split size in bytes. */
+    public static final String SPLIT_SIZE_KEY = "simplebase.input.split.size";
+
+    /**
+     * Retrieve the store file size of each region of the table.
+     *
+     * @return The sizes in bytes, by region start row.
+     *
+     * @throws IOException If the sizes cannot be retrieved.
+     */
+    protected NavigableMap<byte[],Long> getRegionSizes ()
+    throws IOException {
+        Map<byte[],byte[]>        startRows = new TreeMap(Bytes.BYTES_COMPARATOR);
+        NavigableMap<byte[],Long> sizes     = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+        for (HRegionInfo region : getHTable().getRegionLocations().keySet()) {
+            startRows.put(region.getRegionName(), region.getStartKey());
+        }
+
+        HBaseAdmin admin = new HBaseAdmin(getHTable().getConfiguration());
+
+        try {
+            ClusterStatus status = admin.getClusterStatus();
+
+            for (ServerName server : status.getServers()) {
+                for (HServerLoad.RegionLoad load : status.getLoad(server).getRegionsLoad().values()) {
+                    byte[] startRow = startRows.get(load.getName());
+
+                    if (startRow != null) {
+                        sizes.put(startRow, (long) load.getStorefileSizeMB() * 1024 * 1024);
+                    }
+                }
+            }
+        } finally {
+            admin.close();
+        }
+
+        return sizes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<InputSplit> getSplits (JobContext context)
+    throws IOException {
+        List<InputSplit> splits = super.getSplits(context);
+
+        if (splits.size() == 0) {
+            return splits;
+        }
+
+        return split(splits, getRegionSizes(), context.getConfiguration().getLong(SPLIT_SIZE_KEY, 0),
+                     context.getConfiguration().getInt(MAX_REGION_SPLITS_KEY, MAX_REGION_SPLITS));
+    }
+
+    /**
+     * Cut large regions into several splits.
+     *
+     * @param splits    The splits, one per region.
+     * @param sizes     The region sizes in bytes, by region start row.
+     * @param splitSize The split size in bytes, or 0 for the average size of the regions that are read.
+     * @param maxSplits The maximum number of splits per region.
+     *
+     * @return The splits, in the same order.
+     */
+    public static List<InputSplit> split (List<InputSplit> splits, NavigableMap<byte[],Long> sizes, long splitSize,
+                                          int maxSplits) {
+        assert splits != null && sizes != null && maxSplits > 0
+             : "splits == null || sizes == null || maxSplits <= 0";
+
+        long[] regionSizes = new long[splits.size()];
+        long   total       = 0;
+
+        for (int i = 0; i < splits.size(); i++) {
+            Map.Entry<byte[],Long> size = sizes.floorEntry(((TableSplit) splits.get(i)).getStartRow());
+
+            regionSizes[i] = size != null ? size.getValue() : 0;
+            total         += regionSizes[i];
+        }
+
+        if (splitSize <= 0) {
+            splitSize = total / splits.size();
+        }
+
+        if (splitSize <= 0) {
+            return splits;
+        }
+
+        List<InputSplit> result = new ArrayList();
+
+        for (int i = 0; i < splits.size(); i++) {
+            TableSplit split = (TableSplit) splits.get(i);
+            int        count = (int) Math.min(maxSplits, Math.round((double) regionSizes[i] / splitSize));
+            byte[][]   rows  = null;
+
+            if (count > 1 && split.getStartRow().length > 0 && split.getEndRow().length > 0) {
+                // padding leaves room between rows that differ only in their last byte
+                rows = Bytes.split(Bytes.padTail(split.getStartRow(), Bytes.SIZEOF_LONG),
+                                   Bytes.padTail(split.getEndRow(), Bytes.SIZEOF_LONG), count - 1);
+            }
+
+            if (rows != null) {
+                rows[0]               = split.getStartRow();
+                rows[rows.length - 1] = split.getEndRow();
+            }
+
+            if (rows == null) {
+                result.add(split);
+
+                continue;
+            }
+
+            for (int j = 0; j < rows.length - 1; j++) {
+                result.add(new TableSplit(split.getTableName(), rows[j], rows[j + 1], split.getRegionLocation()));
+            }
+        }
+
+        return result;
+    }
+}
\ No newline at end of file
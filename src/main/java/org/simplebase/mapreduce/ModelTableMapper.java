@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import org.simplebase.model.Model;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * {@link ModelTableMapper} is a table mapper that hands each row to {@link #map} as a {@link Model}.
+ *
+ * <p>
+ * A single {@link Model} is reused for every row of a task, so wrapping a row costs nothing. Columns are decoded with
+ * the typed getters of the {@link Model}, such as {@link Model#getLong} and {@link Model#getString}, which read the
+ * default column family when none is given. The default column family is read from {@link #COLUMN_FAMILY_KEY}.
+ * </p>
+ *
+ * <p>
+ * Use {@link #initJob} to set up a job. It tunes the scan for reading a whole table, and sets the default column family
+ * when the scan reads a single column family.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Subclasses that override {@link #setup} must call it. The {@link Model} handed to
+ *                        {@link #map} is only valid until the next row, and must not be kept.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public abstract class ModelTableMapper<KEYOUT,VALUEOUT> extends TableMapper<KEYOUT,VALUEOUT> {
+    /** The configuration key of the default column family. */
+    public static final String COLUMN_FAMILY_KEY = "simplebase.mapper.column.family";
+
+    /** The default scan caching, in rows. */
+    public static final int SCAN_CACHING = 500;
+
+    /** The configuration key of the scan caching. */
+    public static final String SCAN_CACHING_KEY = "simplebase.mapper.scan.caching";
+
+    /** The model. */
+    private Model model = new Model();
+
+    /**
+     * Tune a scan for reading a whole table.
+     *
+     * <p>
+     * Blocks are not cached, so that a full scan does not evict the blocks of other readers from the block cache, and
+     * rows are fetched in batches of {@link #SCAN_CACHING} rows, unless the scan sets its own caching.
+     * </p>
+     *
+     * @param scan    The scan.
+     * @param caching The scan caching, in rows.
+     */
+    public static Scan configureScan (Scan scan, int caching) {
+        assert scan != null && caching > 0
+             : "scan == null || caching <= 0";
+
+        scan.setCacheBlocks(false);
+
+        if (scan.getCaching() <= 0) {
+            scan.setCaching(caching);
+        }
+
+        return scan;
+    }
+
+    /**
+     * Retrieve the model.
+     */
+    public Model getModel () {
+        return model;
+    }
+
+    /**
+     * Set up a job to read a table with a {@link ModelTableMapper}.
+     *
+     * @param table       The table name.
+     * @param scan        The scan, which is tuned with {@link #configureScan}.
+     * @param mapper      The mapper class.
+     * @param outputKey   The map output key class.
+     * @param outputValue The map output value class.
+     * @param job         The job.
+     *
+     * @throws IOException If the job cannot be set up.
+     */
+    public static void initJob (String table, Scan scan, Class<? extends ModelTableMapper> mapper,
+                                Class<? extends WritableComparable> outputKey, Class<? extends Writable> outputValue,
+                                Job job)
+    throws IOException {
+        assert table != null && scan != null && mapper != null && job != null
+             : "table == null || scan == null || mapper == null || job == null";
+
+        configureScan(scan, job.getConfiguration().getInt(SCAN_CACHING_KEY, SCAN_CACHING));
+
+        if (scan.numFamilies() == 1 && job.getConfiguration().get(COLUMN_FAMILY_KEY) == null) {
+            job.getConfiguration().set(COLUMN_FAMILY_KEY, Bytes.toString(scan.getFamilies()[0]));
+        }
+
+        TableMapReduceUtil.initTableMapperJob(table, scan, mapper, outputKey, outputValue, job);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void map (ImmutableBytesWritable row, Result result, Context context)
+    throws InterruptedException, IOException {
+        map(row, model.setResult(result), context);
+    }
+
+    /**
+     * Map a row.
+     *
+     * @param row     The row.
+     * @param model   The model of the row, which is reused for the next row.
+     * @param context The context.
+     *
+     * @throws InterruptedException If an operation is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    protected abstract void map (ImmutableBytesWritable row, Model model, Context context)
+    throws InterruptedException, IOException;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setup (Context context)
+    throws InterruptedException, IOException {
+        String family = context.getConfiguration().get(COLUMN_FAMILY_KEY);
+
+        if (family != null) {
+            model.setColumnFamily(Bytes.toBytes(family));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * {@link PutCombiner} merges the <em>Put</em> operations written to the same table and row, before the shuffle.
+ *
+ * <p>
+ * It combines the output of {@link org.simplebase.writer.ContextWriter} in
+ * {@link org.simplebase.writer.ContextWriter.OutputMode#TABLE_ROW} mode, where each operation is keyed by a
+ * {@link TableRowKey}, and deletes travel as delete markers inside a <em>Put</em>. Operations are merged in the order
+ * they were written, as recorded by the {@link #SEQUENCE_ATTRIBUTE} of each operation:
+ * </p>
+ *
+ * <ul>
+ *     <li>A cell replaces an earlier cell of the same column with the same timestamp, or with no timestamp.</li>
+ *     <li>A delete marker cancels the earlier cells of the column or column family it deletes, that have a timestamp
+ *         at or below its own, or no timestamp.</li>
+ * </ul>
+ *
+ * <p>
+ * Merging keeps the last write of a column, just as the table would. Columns with a merge operator are no exception,
+ * since {@link org.simplebase.writer.ContextWriter} only accepts operators that need neither the stored value nor the
+ * earlier writes of other operations, such as {@link org.simplebase.writer.MergeOperator#LAST}.
+ * </p>
+ *
+ * <p>
+ * A job sets it up as follows, with {@link PutReducer} turning the merged operations back into <em>Put</em> and
+ * <em>Delete</em> operations keyed by table name:
+ * </p>
+ *
+ * <pre>
+ * job.setMapOutputKeyClass(TableRowKey.class);
+ * job.setMapOutputValueClass(Put.class);
+ * job.setCombinerClass(PutCombiner.class);
+ * job.setReducerClass(PutReducer.class);
+ * job.setOutputFormatClass(RegionOutputFormat.class);
+ * </pre>
+ *
+ * <p>
+ * <strong>Note:</strong> Sequences only order the operations of a single task. Operations written to the same column
+ *                        by different tasks have no order to keep, and are merged in an arbitrary one.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PutCombiner extends Reducer<TableRowKey,Put,TableRowKey,Put> {
+    /** The name of the operation attribute that holds the sequence in which operations were written. */
+    public static final String SEQUENCE_ATTRIBUTE = "simplebase.sequence";
+
+    /**
+     * Merge operations written to the same row.
+     *
+     * <p>
+     * <strong>Note:</strong> The operations may be reused by the iterator, so only their cells are kept.
+     * </p>
+     *
+     * @param row        The row.
+     * @param operations The operations.
+     *
+     * @return The merged operation, with the latest sequence of the operations.
+     *
+     * @throws IOException If a cell does not belong to the row.
+     */
+    public static Put merge (byte[] row, Iterable<Put> operations)
+    throws IOException {
+        assert row != null && operations != null
+             : "row == null || operations == null";
+
+        List<Map.Entry<Long,List<KeyValue>>> batches = new ArrayList();
+
+        for (Put operation : operations) {
+            List<KeyValue> cells = new ArrayList();
+
+            for (List<KeyValue> family : operation.getFamilyMap().values()) {
+                cells.addAll(family);
+            }
+
+            batches.add(new AbstractMap.SimpleEntry(sequence(operation), cells));
+        }
+
+        // stable, so that operations without a sequence keep the order they arrived in
+        Collections.sort(batches, new Comparator<Map.Entry<Long,List<KeyValue>>>() {
+            public int compare (Map.Entry<Long,List<KeyValue>> a, Map.Entry<Long,List<KeyValue>> b) {
+                return a.getKey().compareTo(b.getKey());
+            }
+        });
+
+        Put merged = new Put(row);
+
+        for (Map.Entry<Long,List<KeyValue>> batch : batches) {
+            for (KeyValue cell : batch.getValue()) {
+                merge(merged, cell);
+            }
+        }
+
+        if (!batches.isEmpty()) {
+            merged.setAttribute(SEQUENCE_ATTRIBUTE, Bytes.toBytes(batches.get(batches.size() - 1).getKey()));
+        }
+
+        return merged;
+    }
+
+    /**
+     * Merge a cell into an operation.
+     *
+     * @param merged The operation.
+     * @param cell   The cell.
+     *
+     * @throws IOException If the cell does not belong to the row.
+     */
+    private static void merge (Put merged, KeyValue cell)
+    throws IOException {
+        List<KeyValue> cells = merged.getFamilyMap().get(cell.getFamily());
+
+        for (int i = 0; cells != null && i < cells.size(); i++) {
+            KeyValue other = cells.get(i);
+
+            if (cell.isDelete()) {
+                if (other.isDelete()) {
+                    if (other.getType() != cell.getType() || !other.matchingQualifier(cell.getQualifier())) {
+                        continue;
+                    }
+
+                    if (other.getTimestamp() > cell.getTimestamp()) {
+                        // an equal marker that deletes more is already in place
+                        return;
+                    }
+                } else if ((!cell.isDeleteFamily() && !other.matchingQualifier(cell.getQualifier())) ||
+                           (!other.isLatestTimestamp() && other.getTimestamp() > cell.getTimestamp())) {
+                    // a cell stamped after the marker survives it
+                    continue;
+                }
+            } else if (other.isDelete() || !other.matchingQualifier(cell.getQualifier()) ||
+                       (!other.isLatestTimestamp() && other.getTimestamp() != cell.getTimestamp())) {
+                // an earlier cell without a timestamp would be stamped by the server, after this one
+                continue;
+            }
+
+            cells.remove(i--);
+        }
+
+        merged.add(cell);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reduce (TableRowKey key, Iterable<Put> operations, Context context)
+    throws InterruptedException, IOException {
+        context.write(key, merge(key.getRow(), operations));
+    }
+
+    /**
+     * Retrieve the sequence in which an operation was written.
+     *
+     * @param operation The operation.
+     *
+     * @return The sequence, or 0 if there is none.
+     */
+    public static long sequence (Put operation) {
+        byte[] sequence = operation.getAttribute(SEQUENCE_ATTRIBUTE);
+
+        return sequence != null ? Bytes.toLong(sequence) : 0;
+    }
+}
\ No newline at end of file
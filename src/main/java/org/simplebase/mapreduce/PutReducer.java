@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * {@link PutReducer} merges the <em>Put</em> operations written to the same table and row, and writes them keyed by
+ * table name.
+ *
+ * <p>
+ * Operations are merged as {@link PutCombiner} merges them. The delete markers of the merged operation are written as
+ * a <em>Delete</em>, ahead of the <em>Put</em>, so that the output suits <em>TableOutputFormat</em> and
+ * {@link RegionOutputFormat}.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PutReducer extends Reducer<TableRowKey,Put,ImmutableBytesWritable,Writable> {
+    /** The currently active table name. */
+    private ImmutableBytesWritable table;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void reduce (TableRowKey key, Iterable<Put> operations, Context context)
+    throws InterruptedException, IOException {
+        // keys are sorted by table, so the table name changes rarely
+        if (table == null || !Bytes.equals(table.get(), key.getTable())) {
+            table = new ImmutableBytesWritable(key.getTable());
+        }
+
+        Put    merged = PutCombiner.merge(key.getRow(), operations);
+        Put    put    = new Put(key.getRow());
+        Delete delete = null;
+
+        for (List<KeyValue> cells : merged.getFamilyMap().values()) {
+            for (KeyValue cell : cells) {
+                if (!cell.isDelete()) {
+                    put.add(cell);
+                } else {
+                    if (delete == null) {
+                        delete = new Delete(key.getRow());
+                    }
+
+                    delete.addDeleteMarker(cell);
+                }
+            }
+        }
+
+        if (delete != null) {
+            context.write(table, delete);
+        }
+
+        if (!put.isEmpty()) {
+            context.write(table, put);
+        }
+    }
+}
\ No newline at end of file
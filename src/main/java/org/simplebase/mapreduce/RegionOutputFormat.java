@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import org.simplebase.writer.RegionServerFlusher;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableOutputCommitter;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * {@link RegionOutputFormat} writes <em>Put</em> and <em>Delete</em> operations to any number of tables, grouped by
+ * region server.
+ *
+ * <p>
+ * It is a drop-in replacement for <em>TableOutputFormat</em>. Each operation is keyed by table name, as written by
+ * {@link org.simplebase.writer.ContextWriter}, so a single job may write to many tables. Operations are buffered, and
+ * each table is flushed with a {@link RegionServerFlusher}, which writes to its region servers concurrently. See
+ * {@link RegionRecordWriter}.
+ * </p>
+ *
+ * <p>
+ * The buffer size and the number of flush threads are read from the job configuration, under {@link #BUFFER_SIZE_KEY}
+ * and {@link #FLUSH_THREADS_KEY}.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RegionOutputFormat extends OutputFormat<ImmutableBytesWritable,Writable> {
+    /** The default buffer size, in operations. */
+    public static final int BUFFER_SIZE = 10000;
+
+    /** The configuration key of the buffer size. */
+    public static final String BUFFER_SIZE_KEY = "simplebase.output.buffer.size";
+
+    /** The configuration key of the number of flush threads. */
+    public static final String FLUSH_THREADS_KEY = "simplebase.output.flush.threads";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkOutputSpecs (JobContext context) {
+        // tables are named by the output keys, so there is nothing to check up front
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OutputCommitter getOutputCommitter (TaskAttemptContext context) {
+        return new TableOutputCommitter();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecordWriter<ImmutableBytesWritable,Writable> getRecordWriter (TaskAttemptContext context)
+    throws IOException {
+        Configuration configuration = HBaseConfiguration.create(context.getConfiguration());
+
+        return new RegionRecordWriter(configuration, context,
+                                      configuration.getInt(BUFFER_SIZE_KEY, BUFFER_SIZE),
+                                      configuration.getInt(FLUSH_THREADS_KEY, RegionServerFlusher.FLUSH_THREADS));
+    }
+}
\ No newline at end of file
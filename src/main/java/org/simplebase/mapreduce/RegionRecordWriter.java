@@ -0,0 +1,273 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import org.simplebase.writer.RegionServerFlusher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * {@link RegionRecordWriter} buffers <em>Put</em> and <em>Delete</em> operations per table, and flushes each table
+ * grouped by region server.
+ *
+ * <p>
+ * The buffer is flushed once it holds the buffer size in operations, and when the writer is closed. The puts and
+ * deletes of a table are written in the order they were emitted.
+ * </p>
+ *
+ * <p>
+ * Throughput is logged when the writer is closed, and the running totals are shown in the task status after each flush.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> The totals are also reported through the {@link OutputCounter} counters, but only when the
+ *                        task context supports counters. Hadoop 1 hands record writers a plain task context, in which
+ *                        case the totals are only logged and shown in the status.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Operations are buffered as they are, so an operation must not be changed once written.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RegionRecordWriter extends RecordWriter<ImmutableBytesWritable,Writable> {
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(RegionRecordWriter.class);
+
+    /** The map of table names to buffered operations, in the order they were emitted. */
+    private Map<byte[],List<Row>> actions = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The number of buffered operations. */
+    private int buffered;
+
+    /** The buffer size, in operations. */
+    private int bufferSize;
+
+    /** The HBase configuration. */
+    private Configuration configuration;
+
+    /** The task context. */
+    private TaskAttemptContext context;
+
+    /** The region server flusher. */
+    private RegionServerFlusher flusher;
+
+    /** The number of flush threads. */
+    private int flushThreads;
+
+    /** The totals of each counter. */
+    private long[] totals = new long[OutputCounter.values().length];
+
+    /**
+     * Create a new RegionRecordWriter instance.
+     *
+     * @param configuration The HBase configuration.
+     * @param context       The task context.
+     * @param bufferSize    The buffer size, in operations.
+     * @param flushThreads  The maximum number of region servers written to concurrently.
+     */
+    public RegionRecordWriter (Configuration configuration, TaskAttemptContext context, int bufferSize,
+                               int flushThreads) {
+        assert configuration != null && bufferSize > 0 && flushThreads > 0
+             : "configuration == null || bufferSize <= 0 || flushThreads <= 0";
+
+        this.bufferSize    = bufferSize;
+        this.configuration = configuration;
+        this.context       = context;
+        this.flushThreads  = flushThreads;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close (TaskAttemptContext context)
+    throws IOException, InterruptedException {
+        try {
+            flush();
+        } finally {
+            if (flusher != null) {
+                flusher.close();
+
+                flusher = null;
+            }
+        }
+
+        long time = Math.max(1, getTotal(OutputCounter.FLUSH_TIME));
+
+        LOG.info("Wrote " + getTotal(OutputCounter.PUTS) + " puts and " + getTotal(OutputCounter.DELETES) +
+                 " deletes in " + getTotal(OutputCounter.FLUSHES) + " flushes, at " +
+                 getTotal(OutputCounter.BYTES) * 1000 / time + " bytes per second");
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param counter The counter.
+     * @param amount  The amount.
+     */
+    private void count (OutputCounter counter, long amount) {
+        totals[counter.ordinal()] += amount;
+
+        if (context instanceof TaskInputOutputContext) {
+            ((TaskInputOutputContext) context).getCounter(counter).increment(amount);
+        }
+    }
+
+    /**
+     * Flush all buffered operations.
+     *
+     * @throws InterruptedException If the flush is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    public void flush ()
+    throws InterruptedException, IOException {
+        if (buffered == 0) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (Map.Entry<byte[],List<Row>> entry : actions.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                long bytes   = 0;
+                long deletes = 0;
+                long puts    = 0;
+
+                send(entry.getKey(), entry.getValue());
+
+                for (Row action : entry.getValue()) {
+                    if (action instanceof Put) {
+                        bytes += ((Put) action).heapSize();
+                        puts++;
+                    } else {
+                        deletes++;
+                    }
+                }
+
+                count(OutputCounter.BYTES, bytes);
+                count(OutputCounter.DELETES, deletes);
+                count(OutputCounter.PUTS, puts);
+
+                entry.getValue().clear();
+            }
+        }
+
+        buffered = 0;
+
+        count(OutputCounter.FLUSHES, 1);
+        count(OutputCounter.FLUSH_TIME, System.currentTimeMillis() - start);
+
+        if (context != null) {
+            context.setStatus("Wrote " + getTotal(OutputCounter.PUTS) + " puts and " + getTotal(OutputCounter.DELETES) +
+                              " deletes in " + getTotal(OutputCounter.FLUSHES) + " flushes");
+        }
+    }
+
+    /**
+     * Retrieve the total of a counter.
+     *
+     * @param counter The counter.
+     */
+    public long getTotal (OutputCounter counter) {
+        return totals[counter.ordinal()];
+    }
+
+    /**
+     * Write a batch of operations to a table, grouped by region server.
+     *
+     * @param table   The table name.
+     * @param actions The operations.
+     *
+     * @throws InterruptedException If the write is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    protected void send (byte[] table, List<? extends Row> actions)
+    throws InterruptedException, IOException {
+        if (flusher == null) {
+            flusher = new RegionServerFlusher(configuration, flushThreads);
+        }
+
+        flusher.flush(table, actions);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write (ImmutableBytesWritable key, Writable value)
+    throws IOException, InterruptedException {
+        if (!(value instanceof Put) && !(value instanceof Delete)) {
+            throw new IOException("Unsupported operation: " + value.getClass().getName());
+        }
+
+        byte[]    table = key.copyBytes();
+        List<Row> batch = actions.get(table);
+
+        if (batch == null) {
+            batch = new ArrayList();
+
+            actions.put(table, batch);
+        }
+
+        batch.add((Row) value);
+
+        if (++buffered >= bufferSize) {
+            flush();
+        }
+    }
+
+    /**
+     * {@link OutputCounter} represents a counter reported by {@link RegionRecordWriter}.
+     *
+     * @author Sean Kerr [sean@code-box.org]
+     */
+    public enum OutputCounter {
+        /** The approximate number of bytes of puts written. */
+        BYTES,
+
+        /** The number of deletes written. */
+        DELETES,
+
+        /** The number of flushes. */
+        FLUSHES,
+
+        /** The time spent flushing, in milliseconds. */
+        FLUSH_TIME,
+
+        /** The number of puts written. */
+        PUTS
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * {@link TableRowKey} is a map output key made of a table name and a row.
+ *
+ * <p>
+ * Keys sort by table name, and then by row. Both are written as a length followed by the bytes, so that keys can be
+ * compared without being deserialized. See {@link Comparator}, which is registered for this class.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TableRowKey implements WritableComparable<TableRowKey> {
+    /** The row. */
+    private byte[] row;
+
+    /** The table name. */
+    private byte[] table;
+
+    static {
+        WritableComparator.define(TableRowKey.class, new Comparator());
+    }
+
+    /**
+     * Create a new TableRowKey instance.
+     */
+    public TableRowKey () {
+    }
+
+    /**
+     * Create a new TableRowKey instance.
+     *
+     * @param table The table name.
+     * @param row   The row.
+     */
+    public TableRowKey (byte[] table, byte[] row) {
+        set(table, row);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo (TableRowKey key) {
+        int compare = Bytes.compareTo(table, key.table);
+
+        return compare != 0 ? compare : Bytes.compareTo(row, key.row);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals (Object object) {
+        return object instanceof TableRowKey && compareTo((TableRowKey) object) == 0;
+    }
+
+    /**
+     * Retrieve the row.
+     */
+    public byte[] getRow () {
+        return row;
+    }
+
+    /**
+     * Retrieve the table name.
+     */
+    public byte[] getTable () {
+        return table;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode () {
+        return Bytes.hashCode(table) * 31 + Bytes.hashCode(row);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readFields (DataInput in)
+    throws IOException {
+        table = Bytes.readByteArray(in);
+        row   = Bytes.readByteArray(in);
+    }
+
+    /**
+     * Set the table name and row.
+     *
+     * @param table The table name.
+     * @param row   The row.
+     */
+    public TableRowKey set (byte[] table, byte[] row) {
+        assert table != null && row != null
+             : "table == null || row == null";
+
+        this.table = table;
+        this.row   = row;
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString () {
+        return Bytes.toStringBinary(table) + "/" + Bytes.toStringBinary(row);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write (DataOutput out)
+    throws IOException {
+        Bytes.writeByteArray(out, table);
+        Bytes.writeByteArray(out, row);
+    }
+
+    /**
+     * {@link Comparator} compares serialized {@link TableRowKey} instances, without deserializing them.
+     *
+     * @author Sean Kerr [sean@code-box.org]
+     */
+    public static class Comparator extends WritableComparator {
+        /**
+         * Create a new Comparator instance.
+         */
+        public Comparator () {
+            super(TableRowKey.class);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compare (byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int size1   = WritableUtils.decodeVIntSize(b1[s1]);
+                int size2   = WritableUtils.decodeVIntSize(b2[s2]);
+                int table1  = readVInt(b1, s1);
+                int table2  = readVInt(b2, s2);
+                int compare = compareBytes(b1, s1 + size1, table1, b2, s2 + size2, table2);
+
+                if (compare != 0) {
+                    return compare;
+                }
+
+                s1 += size1 + table1;
+                s2 += size2 + table2;
+
+                size1 = WritableUtils.decodeVIntSize(b1[s1]);
+                size2 = WritableUtils.decodeVIntSize(b2[s2]);
+
+                return compareBytes(b1, s1 + size1, readVInt(b1, s1), b2, s2 + size2, readVInt(b2, s2));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
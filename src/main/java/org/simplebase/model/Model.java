@@ -16,11 +16,20 @@
 
 package org.simplebase.model;
 
+import org.simplebase.codec.PackedReader;
+import org.simplebase.codec.PackedSchema;
+import org.simplebase.codec.QualifierAliases;
+import org.simplebase.codec.ValueCodec;
+import org.simplebase.codec.ValueCodecs;
+import org.simplebase.key.KeyDecoder;
+import org.simplebase.key.KeySalt;
+
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 
@@ -47,9 +56,24 @@ public class Model {
     /** The nonexistent column error message. */
     private static final String ERR_NONEXISTENT_COLUMN = "Nonexistent column: '%s:%s'";
 
+    /** The qualifier aliases. */
+    private QualifierAliases aliases;
+
+    /** The value codecs. */
+    private ValueCodecs codecs;
+
     /** The default column family. */
     private byte[] family;
 
+    /** The key decoder, which is reused for every row. */
+    private KeyDecoder keyDecoder;
+
+    /** The key salt. */
+    private KeySalt keySalt;
+
+    /** The packed record reader, which is reused for every record with the same schema. */
+    private PackedReader recordReader;
+
     /** The result. */
     private Result result;
 
@@ -71,6 +95,15 @@ public class Model {
         setResult(result);
     }
 
+    /**
+     * Retrieve the qualifier that is stored for a qualifier.
+     *
+     * @param qualifier The qualifier.
+     */
+    private byte[] aliasQualifier (byte[] qualifier) {
+        return aliases != null ? aliases.alias(qualifier) : qualifier;
+    }
+
     /**
      * Compare two binary double columns, or throw an exception if either is null.
      *
@@ -561,7 +594,7 @@ public class Model {
 
         loop:
         for (Map.Entry<byte[],byte[]> entry : getResult().getFamilyMap(family).entrySet()) {
-            byte[] qualifier = entry.getKey();
+            byte[] qualifier = resolveQualifier(entry.getKey());
 
             if (prefix.length <= qualifier.length) {
                 for (int i = 0; i < prefix.length; i++) {
@@ -616,7 +649,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeBoolean(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toBoolean(value);
@@ -650,7 +690,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeBoolean(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Boolean) Bytes.toBoolean(value) : defaultValue;
@@ -685,7 +732,7 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return value;
@@ -719,7 +766,7 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         return value != null ? value : defaultValue;
     }
@@ -760,7 +807,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeDouble(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toDouble(value);
@@ -794,7 +848,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeDouble(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Double) Bytes.toDouble(value) : defaultValue;
@@ -839,7 +900,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (float) codec.decodeDouble(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toFloat(value);
@@ -873,7 +941,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (float) codec.decodeDouble(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Float) Bytes.toFloat(value) : defaultValue;
@@ -908,7 +983,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (int) codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toInt(value);
@@ -942,12 +1024,50 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (int) codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Integer) Bytes.toInt(value) : defaultValue;
     }
 
+    /**
+     * Retrieve a decoder of the row, for a row key written by a {@link org.simplebase.key.KeyEncoder}.
+     *
+     * <p>
+     * <strong>Note:</strong> The decoder reads the row in place, without its key salt prefix. The same decoder is
+     *                        returned for every row, and is reset by each call.
+     * </p>
+     */
+    public KeyDecoder getKey () {
+        assert result != null
+             : "result == null";
+
+        byte[] row    = result.getRow();
+        int    offset = keySalt != null ? keySalt.getPrefixLength() : 0;
+
+        if (keyDecoder == null) {
+            keyDecoder = new KeyDecoder();
+        }
+
+        return keyDecoder.reset(row, offset, row.length - offset);
+    }
+
+    /**
+     * Retrieve the key salt.
+     *
+     * @return The key salt, or null if rows are not salted.
+     */
+    public KeySalt getKeySalt () {
+        return keySalt;
+    }
+
     /**
      * Retrieve a binary long value, or throw an exception if the column is nonexistent.
      *
@@ -977,7 +1097,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toLong(value);
@@ -1011,12 +1138,28 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Long) Bytes.toLong(value) : defaultValue;
     }
 
+    /**
+     * Retrieve the qualifier aliases.
+     *
+     * @return The qualifier aliases, or null if qualifiers are stored as they are.
+     */
+    public QualifierAliases getQualifierAliases () {
+        return aliases;
+    }
+
     /**
      * Retrieve a list of qualifiers.
      *
@@ -1037,17 +1180,73 @@ public class Model {
         assert result != null
              : "result == null";
 
-        return new ArrayList(result.getFamilyMap(family).keySet());
+        List<byte[]> qualifiers = new ArrayList(result.getFamilyMap(family).keySet());
+
+        for (int i = 0; aliases != null && i < qualifiers.size(); i++) {
+            qualifiers.set(i, resolveQualifier(qualifiers.get(i)));
+        }
+
+        return qualifiers;
+    }
+
+    /**
+     * Retrieve a packed record, whose fields are read in place.
+     *
+     * <p>
+     * <strong>Note:</strong> This assumes {@link #setColumnFamily} has been called.
+     * </p>
+     *
+     * @param qualifier The qualifier.
+     * @param schema    The schema the record was written with.
+     */
+    public PackedReader getRecord (byte[] qualifier, PackedSchema schema) {
+        return getRecord(family, qualifier, schema);
+    }
+
+    /**
+     * Retrieve a packed record, whose fields are read in place.
+     *
+     * <p>
+     * <strong>Note:</strong> The same reader is returned for every call with the same schema, so it is only valid until
+     *                        the next call.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param schema    The schema the record was written with.
+     *
+     * @return The reader, or null if the column is nonexistent.
+     */
+    public PackedReader getRecord (byte[] family, byte[] qualifier, PackedSchema schema) {
+        assert family != null && qualifier != null && schema != null
+             : "family == null || qualifier == null || schema == null";
+
+        KeyValue cell = result.getColumnLatest(family, aliasQualifier(qualifier));
+
+        if (cell == null) {
+            return null;
+        }
+
+        if (recordReader == null || recordReader.getSchema() != schema) {
+            recordReader = new PackedReader(schema);
+        }
+
+        return recordReader.reset(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
     }
 
     /**
      * Retrieve the row.
+     *
+     * <p>
+     * <strong>Note:</strong> If there is a key salt, the row is returned without its prefix. The salted row is the row
+     *                        of the underlying result.
+     * </p>
      */
     public byte[] getRow () {
         assert result != null
              : "result == null";
 
-        return result.getRow();
+        return keySalt != null ? keySalt.unsalt(result.getRow()) : result.getRow();
     }
 
     /**
@@ -1086,7 +1285,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (short) codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toShort(value);
@@ -1120,7 +1326,14 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        ValueCodec codec = getValueCodec(family, qualifier);
+        KeyValue   cell  = codec != null ? result.getColumnLatest(family, aliasQualifier(qualifier)) : null;
+
+        if (cell != null) {
+            return (short) codec.decodeLong(cell.getBuffer(), cell.getValueOffset(), cell.getValueLength());
+        }
+
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         // the cast avoids an ugly auto-boxing bug when defaultValue is null
         return value != null ? (Short) Bytes.toShort(value) : defaultValue;
@@ -1155,7 +1368,7 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         if (value != null) {
             return Bytes.toString(value);
@@ -1189,11 +1402,32 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        byte[] value = result.getValue(family, qualifier);
+        byte[] value = result.getValue(family, aliasQualifier(qualifier));
 
         return value != null ? Bytes.toString(value) : defaultValue;
     }
 
+    /**
+     * Retrieve the value codec of a column.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     *
+     * @return The value codec, or null if the column has none.
+     */
+    private ValueCodec getValueCodec (byte[] family, byte[] qualifier) {
+        return codecs != null ? codecs.get(family, qualifier) : null;
+    }
+
+    /**
+     * Retrieve the value codecs.
+     *
+     * @return The value codecs, or null if values are read in their fixed width form.
+     */
+    public ValueCodecs getValueCodecs () {
+        return codecs;
+    }
+
     /**
      * Indicates that a column is present.
      *
@@ -1217,7 +1451,7 @@ public class Model {
         assert family != null && qualifier != null
              : "family == null || qualifier == null";
 
-        return result.containsColumn(family, qualifier);
+        return result.containsColumn(family, aliasQualifier(qualifier));
     }
 
     /**
@@ -1688,6 +1922,15 @@ public class Model {
         return value != null ? (Short) Short.parseShort(value) : defaultValue;
     }
 
+    /**
+     * Retrieve the qualifier that a stored qualifier stands for.
+     *
+     * @param qualifier The stored qualifier.
+     */
+    private byte[] resolveQualifier (byte[] qualifier) {
+        return aliases != null ? aliases.resolve(qualifier) : qualifier;
+    }
+
     /**
      * Set the default column family.
      *
@@ -1699,6 +1942,32 @@ public class Model {
         return this;
     }
 
+    /**
+     * Set the key salt of the rows.
+     *
+     * @param salt The key salt, or null if rows are not salted.
+     */
+    public Model setKeySalt (KeySalt salt) {
+        keySalt = salt;
+
+        return this;
+    }
+
+    /**
+     * Set the qualifier aliases, which map stored qualifiers back to the qualifiers they stand for.
+     *
+     * <p>
+     * <strong>Note:</strong> These should be the qualifier aliases of the writer that wrote the columns.
+     * </p>
+     *
+     * @param aliases The qualifier aliases, or null if qualifiers are stored as they are.
+     */
+    public Model setQualifierAliases (QualifierAliases aliases) {
+        this.aliases = aliases;
+
+        return this;
+    }
+
     /**
      * Set the underlying result.
      *
@@ -1710,6 +1979,21 @@ public class Model {
         return this;
     }
 
+    /**
+     * Set the value codecs, which decode the binary booleans and numbers read from their columns.
+     *
+     * <p>
+     * <strong>Note:</strong> These should be the value codecs of the writer that wrote the columns.
+     * </p>
+     *
+     * @param codecs The value codecs, or null to read values in their fixed width form.
+     */
+    public Model setValueCodecs (ValueCodecs codecs) {
+        this.codecs = codecs;
+
+        return this;
+    }
+
     /**
      * {@link CompareOp} represents a comparison operation.
      *
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+/**
+ * {@link AdaptiveBatchController} sizes table write buffers and put batches based on observed flush latency.
+ *
+ * <p>
+ * Sizes follow an additive-increase/multiplicative-decrease policy. Each flush that completes within the target latency
+ * grows both sizes by a fixed step, as long as throughput has not collapsed. Each flush that exceeds the target latency
+ * cuts both sizes by the decrease factor, as does each flush that fails, since timeouts and exhausted retries are the
+ * clearest sign of an overloaded cluster. Sizes never leave their configured bounds.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> A single {@link AdaptiveBatchController} may be shared by multiple writers.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class AdaptiveBatchController {
+    /** The default batch size step. */
+    public static final int BATCH_SIZE_STEP = 5000;
+
+    /** The default decrease factor. */
+    public static final double DECREASE_FACTOR = 0.5;
+
+    /** The default maximum batch size. */
+    public static final int MAX_BATCH_SIZE = 200000;
+
+    /** The default maximum write buffer size. */
+    public static final int MAX_WRITE_BUFFER_SIZE = 1024 * 1024 * 64;
+
+    /** The default minimum batch size. */
+    public static final int MIN_BATCH_SIZE = 1000;
+
+    /** The default minimum write buffer size. */
+    public static final int MIN_WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    /** The default target flush latency in milliseconds. */
+    public static final long TARGET_LATENCY = 1000;
+
+    /** The default write buffer size step. */
+    public static final int WRITE_BUFFER_SIZE_STEP = 1024 * 1024;
+
+    /** The throughput smoothing factor. */
+    private static final double SMOOTHING = 0.2;
+
+    /** The current batch size. */
+    private int batchSize = BufferedTableWriter.PUT_BUFFER_SIZE;
+
+    /** The batch size step. */
+    private int batchSizeStep = BATCH_SIZE_STEP;
+
+    /** The smoothed byte throughput in bytes per second. */
+    private double byteThroughput;
+
+    /** The number of size decreases. */
+    private long decreaseCount;
+
+    /** The decrease factor. */
+    private double decreaseFactor = DECREASE_FACTOR;
+
+    /** The number of recorded failed flushes. */
+    private long failureCount;
+
+    /** The number of recorded flushes. */
+    private long flushCount;
+
+    /** The number of size increases. */
+    private long increaseCount;
+
+    /** The most recent flush latency in milliseconds. */
+    private long lastLatency;
+
+    /** The maximum batch size. */
+    private int maxBatchSize = MAX_BATCH_SIZE;
+
+    /** The maximum write buffer size. */
+    private int maxWriteBufferSize = MAX_WRITE_BUFFER_SIZE;
+
+    /** The minimum batch size. */
+    private int minBatchSize = MIN_BATCH_SIZE;
+
+    /** The minimum write buffer size. */
+    private int minWriteBufferSize = MIN_WRITE_BUFFER_SIZE;
+
+    /** The target flush latency in milliseconds. */
+    private long targetLatency = TARGET_LATENCY;
+
+    /** The smoothed put throughput in puts per second. */
+    private double throughput;
+
+    /** The current write buffer size. */
+    private int writeBufferSize = TableWriter.TABLE_WRITE_BUFFER_SIZE;
+
+    /** The write buffer size step. */
+    private int writeBufferSizeStep = WRITE_BUFFER_SIZE_STEP;
+
+    /**
+     * Create a new AdaptiveBatchController instance.
+     */
+    public AdaptiveBatchController () {
+    }
+
+    /**
+     * Cut both sizes by the decrease factor.
+     */
+    private void decrease () {
+        batchSize       = Math.max(minBatchSize, (int) (batchSize * decreaseFactor));
+        writeBufferSize = Math.max(minWriteBufferSize, (int) (writeBufferSize * decreaseFactor));
+
+        decreaseCount++;
+    }
+
+    /**
+     * Retrieve the current batch size.
+     */
+    public synchronized int getBatchSize () {
+        return batchSize;
+    }
+
+    /**
+     * Retrieve the smoothed byte throughput in bytes per second.
+     */
+    public synchronized double getByteThroughput () {
+        return byteThroughput;
+    }
+
+    /**
+     * Retrieve the number of size decreases.
+     */
+    public synchronized long getDecreaseCount () {
+        return decreaseCount;
+    }
+
+    /**
+     * Retrieve the number of recorded failed flushes.
+     */
+    public synchronized long getFailureCount () {
+        return failureCount;
+    }
+
+    /**
+     * Retrieve the number of recorded flushes.
+     */
+    public synchronized long getFlushCount () {
+        return flushCount;
+    }
+
+    /**
+     * Retrieve the number of size increases.
+     */
+    public synchronized long getIncreaseCount () {
+        return increaseCount;
+    }
+
+    /**
+     * Retrieve the most recent flush latency in milliseconds.
+     */
+    public synchronized long getLastLatency () {
+        return lastLatency;
+    }
+
+    /**
+     * Retrieve the target flush latency in milliseconds.
+     */
+    public synchronized long getTargetLatency () {
+        return targetLatency;
+    }
+
+    /**
+     * Retrieve the smoothed put throughput in puts per second.
+     */
+    public synchronized double getThroughput () {
+        return throughput;
+    }
+
+    /**
+     * Retrieve the current write buffer size.
+     */
+    public synchronized int getWriteBufferSize () {
+        return writeBufferSize;
+    }
+
+    /**
+     * Record a completed flush and adjust the sizes.
+     *
+     * @param latency The flush latency in milliseconds.
+     * @param puts    The number of puts flushed.
+     * @param bytes   The number of bytes flushed.
+     */
+    public synchronized void record (long latency, int puts, long bytes) {
+        assert latency >= 0 && puts >= 0 && bytes >= 0
+             : "latency < 0 || puts < 0 || bytes < 0";
+
+        if (puts == 0) {
+            return;
+        }
+
+        double seconds      = Math.max(latency, 1) / 1000.0;
+        double rate         = puts / seconds;
+        double previousRate = throughput;
+
+        byteThroughput = flushCount == 0 ? bytes / seconds
+                                         : (1 - SMOOTHING) * byteThroughput + SMOOTHING * (bytes / seconds);
+        throughput     = flushCount == 0 ? rate : (1 - SMOOTHING) * throughput + SMOOTHING * rate;
+        lastLatency    = latency;
+
+        flushCount++;
+
+        if (latency > targetLatency) {
+            decrease();
+        } else if (rate >= previousRate * decreaseFactor) {
+            // only grow while throughput holds up, a collapse means the cluster is struggling despite answering quickly
+            batchSize       = (int) Math.min(maxBatchSize, (long) batchSize + batchSizeStep);
+            writeBufferSize = (int) Math.min(maxWriteBufferSize, (long) writeBufferSize + writeBufferSizeStep);
+
+            increaseCount++;
+        }
+    }
+
+    /**
+     * Record a failed flush, and cut the sizes.
+     *
+     * <p>
+     * <strong>Note:</strong> A failed flush says nothing about throughput, so only the sizes are changed.
+     * </p>
+     */
+    public synchronized void recordFailure () {
+        failureCount++;
+
+        decrease();
+    }
+
+    /**
+     * Set the batch size bounds.
+     *
+     * @param min The minimum batch size.
+     * @param max The maximum batch size.
+     */
+    public synchronized AdaptiveBatchController setBatchSizeBounds (int min, int max) {
+        assert min > 0 && max >= min
+             : "min <= 0 || max < min";
+
+        minBatchSize = min;
+        maxBatchSize = max;
+        batchSize    = Math.min(max, Math.max(min, batchSize));
+
+        return this;
+    }
+
+    /**
+     * Set the batch size step.
+     *
+     * @param step The step.
+     */
+    public synchronized AdaptiveBatchController setBatchSizeStep (int step) {
+        assert step > 0
+             : "step <= 0";
+
+        batchSizeStep = step;
+
+        return this;
+    }
+
+    /**
+     * Set the decrease factor.
+     *
+     * @param factor The factor.
+     */
+    public synchronized AdaptiveBatchController setDecreaseFactor (double factor) {
+        assert factor > 0 && factor < 1
+             : "factor <= 0 || factor >= 1";
+
+        decreaseFactor = factor;
+
+        return this;
+    }
+
+    /**
+     * Set the target flush latency.
+     *
+     * @param latency The latency in milliseconds.
+     */
+    public synchronized AdaptiveBatchController setTargetLatency (long latency) {
+        assert latency > 0
+             : "latency <= 0";
+
+        targetLatency = latency;
+
+        return this;
+    }
+
+    /**
+     * Set the write buffer size bounds.
+     *
+     * @param min The minimum write buffer size.
+     * @param max The maximum write buffer size.
+     */
+    public synchronized AdaptiveBatchController setWriteBufferSizeBounds (int min, int max) {
+        assert min > 0 && max >= min
+             : "min <= 0 || max < min";
+
+        minWriteBufferSize = min;
+        maxWriteBufferSize = max;
+        writeBufferSize    = Math.min(max, Math.max(min, writeBufferSize));
+
+        return this;
+    }
+
+    /**
+     * Set the write buffer size step.
+     *
+     * @param step The step.
+     */
+    public synchronized AdaptiveBatchController setWriteBufferSizeStep (int step) {
+        assert step > 0
+             : "step <= 0";
+
+        writeBufferSizeStep = step;
+
+        return this;
+    }
+}
\ No newline at end of file
@@ -18,16 +18,18 @@ package org.simplebase.writer;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
 
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 
 /**
- * {@link BufferedContextWriter} writes <em>Put</em> operations to a mapreduce context.
+ * {@link BufferedContextWriter} writes <em>Put</em> and <em>Delete</em> operations to a mapreduce context.
  *
  * <p>
  * Data is written when the put buffer size has been reached, when the table has been changed, or when
@@ -35,7 +37,18 @@ import org.apache.hadoop.mapreduce.TaskInputOutputContext;
  * </p>
  *
  * <p>
- * <strong>Note:</strong> {@link Writer#close} calls {@link BufferedContextWriter#flush}.
+ * Deletes are buffered alongside puts, count towards the put buffer size, and are written ahead of the puts of the same
+ * flush. A delete cancels the buffered cells it covers, so they are never written.
+ * </p>
+ *
+ * <p>
+ * When a maximum buffer age is set, the buffer is also flushed once its oldest write reaches that age.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> {@link Writer#close} calls {@link BufferedContextWriter#flush}. Writers with a maximum buffer
+ *                        age are flushed from another thread, so their methods are synchronized, and nothing else may
+ *                        write to the context while the writer is open.
  * </p>
  *
  * @author Sean Kerr [sean@code-box.org]
@@ -44,11 +57,20 @@ public class BufferedContextWriter extends ContextWriter {
     /** The default put buffer size. */
     public static final int PUT_BUFFER_SIZE = 10000;
 
+    /** The buffer age check. */
+    private ScheduledFuture ageCheck;
+
+    /** The map of delete operations, sorted by row. */
+    private Map<byte[],Delete> deletes = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The maximum buffer age in milliseconds, or 0 if there is none. */
+    private long maxBufferAge;
+
     /** The put buffer size. */
     private int putBufferSize = PUT_BUFFER_SIZE;
 
-    /** The map of put operations. */
-    Map<byte[],Put> puts = new HashMap();
+    /** The map of put operations, sorted by row. */
+    Map<byte[],Put> puts = new TreeMap(Bytes.BYTES_COMPARATOR);
 
     /**
      * Create a new BufferedContextWriter instance.
@@ -63,20 +85,51 @@ public class BufferedContextWriter extends ContextWriter {
      * {@inheritDoc}
      */
     @Override
-    public void flush ()
+    public synchronized void close ()
+    throws InterruptedException, IOException {
+        setMaxBufferAge(0);
+
+        super.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void flush ()
     throws InterruptedException, IOException {
-        getContext().setStatus("Flushing " + puts.size() + " puts");
+        if (puts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        count(WriterCounter.FLUSHES, 1);
 
-        ImmutableBytesWritable tableBytes = new ImmutableBytesWritable(Bytes.toBytes(getTableName()));
+        ImmutableBytesWritable tableBytes = getTableBytes();
+
+        for (Delete delete : deletes.values()) {
+            write(tableBytes, delete);
+        }
 
         for (Put put : puts.values()) {
             if (!put.isEmpty()) {
-                getContext().write(tableBytes, put);
+                write(tableBytes, put);
             }
         }
 
+        deletes.clear();
         puts.clear();
+        setDelete(null);
         setPut(null);
+        resetOldestWrite();
+    }
+
+    /**
+     * Retrieve the maximum buffer age in milliseconds.
+     *
+     * @return The age, or 0 if there is none.
+     */
+    public long getMaxBufferAge () {
+        return maxBufferAge;
     }
 
     /**
@@ -86,6 +139,49 @@ public class BufferedContextWriter extends ContextWriter {
         return putBufferSize;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BufferedContextWriter setDelete (Delete delete) {
+        if (delete != null) {
+            deletes.put(delete.getRow(), delete);
+        }
+
+        super.setDelete(delete);
+
+        return this;
+    }
+
+    /**
+     * Set the maximum buffer age.
+     *
+     * <p>
+     * <strong>Note:</strong> Once the oldest buffered write reaches this age, the buffer is flushed by the shared
+     *                        {@link FlushScheduler}, regardless of its size.
+     * </p>
+     *
+     * @param age The age in milliseconds, or 0 to only flush by size.
+     */
+    public synchronized BufferedContextWriter setMaxBufferAge (long age) {
+        assert age >= 0
+             : "age < 0";
+
+        if (ageCheck != null) {
+            FlushScheduler.getInstance().cancel(ageCheck);
+
+            ageCheck = null;
+        }
+
+        if (age > 0) {
+            ageCheck = FlushScheduler.getInstance().schedule(this, age);
+        }
+
+        maxBufferAge = age;
+
+        return this;
+    }
+
     /**
      * Set the put buffer size.
      *
@@ -104,25 +200,35 @@ public class BufferedContextWriter extends ContextWriter {
      * {@inheritDoc}
      */
     @Override
-    public ContextWriter setRow (byte[] row)
+    public synchronized ContextWriter setRow (byte[] row)
     throws InterruptedException, IOException {
         assert row != null
              : "row == null";
 
+        row = saltRow(row);
+
         if (getPut() == null || !Arrays.equals(getRow(), row)) {
-            if (puts.size() >= getPutBufferSize()) {
+            if (puts.size() + deletes.size() >= getPutBufferSize()) {
                 flush();
             }
 
-            getContext().setStatus("Switching row '" + Bytes.toString(row) + "'");
-
             if (!puts.containsKey(row)) {
                 puts.put(row, new Put(row));
             }
 
             setPut(puts.get(row));
+            setDelete(deletes.get(row));
         }
 
         return this;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ContextWriter setTableName (String table)
+    throws InterruptedException, IOException {
+        return super.setTableName(table);
+    }
 }
\ No newline at end of file
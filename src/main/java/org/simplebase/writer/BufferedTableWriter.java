@@ -19,12 +19,20 @@ package org.simplebase.writer;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.simplebase.model.Model;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
@@ -36,7 +44,27 @@ import org.apache.hadoop.hbase.util.Bytes;
  * </p>
  *
  * <p>
- * <strong>Note:</strong> {@link Writer#close} calls {@link BufferedTableWriter#flush}.
+ * Deletes are buffered alongside puts, and count towards the put buffer size. A delete cancels the buffered cells it
+ * covers, so they are never sent.
+ * </p>
+ *
+ * <p>
+ * When parallel flushing is enabled, the buffered puts are grouped by region server and each group is written
+ * concurrently. See {@link RegionServerFlusher}.
+ * </p>
+ *
+ * <p>
+ * Rows can be read back with {@link #lookup} without flushing. Buffered cells and deletes take precedence over the
+ * stored row, and the table is not read at all when the buffered cells answer the lookup on their own.
+ * </p>
+ *
+ * <p>
+ * When a maximum buffer age is set, the buffer is also flushed once its oldest write reaches that age.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> {@link Writer#close} calls {@link BufferedTableWriter#flush}. Writers with a maximum buffer
+ *                        age are flushed from another thread, so their methods are synchronized.
  * </p>
  *
  * @author Sean Kerr [sean@code-box.org]
@@ -45,11 +73,29 @@ public class BufferedTableWriter extends TableWriter {
     /** The default put buffer size. */
     public static final int PUT_BUFFER_SIZE = 50000;
 
+    /** The buffer age check. */
+    private ScheduledFuture ageCheck;
+
+    /** The map of delete operations, sorted by row. */
+    private Map<byte[],Delete> deletes = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The region server flusher. */
+    private RegionServerFlusher flusher;
+
+    /** The maximum buffer age in milliseconds, or 0 if there is none. */
+    private long maxBufferAge;
+
+    /** Indicates that parallel flushing is enabled. */
+    private boolean parallelFlush;
+
+    /** The maximum number of region servers flushed concurrently. */
+    private int parallelFlushThreads = RegionServerFlusher.FLUSH_THREADS;
+
     /** The put buffer size. */
     private int putBufferSize = PUT_BUFFER_SIZE;
 
-    /** The map of put operations. */
-    Map<byte[],Put> puts = new HashMap();
+    /** The map of put operations, sorted by row. */
+    Map<byte[],Put> puts = new TreeMap(Bytes.BYTES_COMPARATOR);
 
     /**
      * Create a new BufferedTableWriter instance.
@@ -71,29 +117,334 @@ public class BufferedTableWriter extends TableWriter {
      * {@inheritDoc}
      */
     @Override
-    public void flush ()
+    public synchronized void close ()
+    throws InterruptedException, IOException {
+        setMaxBufferAge(0);
+
+        super.close();
+
+        if (flusher != null) {
+            flusher.close();
+
+            flusher = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void flush ()
     throws InterruptedException, IOException {
         if (getTable() != null) {
-            if (getContext() != null) {
-                getContext().setStatus("Flushing " + puts.size() + " puts");
+            if (getPut() != null && getPut().isEmpty()) {
+                puts.remove(getRow());
             }
 
-            if (getPut().isEmpty()) {
-                puts.remove(getRow());
+            if (!puts.isEmpty() || !deletes.isEmpty()) {
+                count(WriterCounter.FLUSHES, 1);
             }
 
-            getTable().put(new ArrayList(puts.values()));
+            if (!deletes.isEmpty()) {
+                flushDeletes(new ArrayList(deletes.values()));
+
+                deletes.clear();
+                setDelete(null);
+            }
+
+            if (!puts.isEmpty()) {
+                flushBatch(new ArrayList(puts.values()));
+            }
 
             puts.clear();
             setPut(null);
+            resetOldestWrite();
         }
     }
 
+    /**
+     * Retrieve the maximum buffer age in milliseconds.
+     *
+     * @return The age, or 0 if there is none.
+     */
+    public long getMaxBufferAge () {
+        return maxBufferAge;
+    }
+
+    /**
+     * Retrieve the maximum number of region servers flushed concurrently.
+     */
+    public int getParallelFlushThreads () {
+        return parallelFlushThreads;
+    }
+
     /**
      * Retrieve the put buffer size.
+     *
+     * <p>
+     * <strong>Note:</strong> When an {@link AdaptiveBatchController} is set, this is the batch size chosen by the
+     * controller.
+     * </p>
      */
     public int getPutBufferSize () {
-        return putBufferSize;
+        return getAdaptiveBatchController() != null ? getAdaptiveBatchController().getBatchSize() : putBufferSize;
+    }
+
+    /**
+     * Indicates that parallel flushing is enabled.
+     */
+    public boolean isParallelFlush () {
+        return parallelFlush;
+    }
+
+    /**
+     * Look up a row, including buffered cells that have not been flushed.
+     *
+     * @param row The row.
+     *
+     * @return The row, which is empty if it has neither buffered nor stored cells.
+     *
+     * @throws IOException If the stored row cannot be read.
+     */
+    public Model lookup (byte[] row)
+    throws IOException {
+        return lookup(row, null);
+    }
+
+    /**
+     * Look up columns of a row, including buffered cells that have not been flushed.
+     *
+     * <p>
+     * <strong>Note:</strong> When every requested qualifier is buffered, the table is not read.
+     * </p>
+     *
+     * @param row        The row.
+     * @param family     The column family, or null for all column families.
+     * @param qualifiers The qualifiers, or none for all qualifiers in the column family.
+     *
+     * @return The row, which is empty if it has neither buffered nor stored cells.
+     *
+     * @throws IOException If the stored row cannot be read.
+     */
+    public synchronized Model lookup (byte[] row, byte[] family, byte[]... qualifiers)
+    throws IOException {
+        assert row != null && getTable() != null
+             : "row == null || table == null";
+
+        row = saltRow(row);
+
+        if (getQualifierAliases() != null) {
+            qualifiers = qualifiers.clone();
+
+            for (int i = 0; i < qualifiers.length; i++) {
+                qualifiers[i] = aliasQualifier(qualifiers[i]);
+            }
+        }
+
+        List<KeyValue> cells    = new ArrayList();
+        Delete         delete   = deletes.get(row);
+        Put            put      = puts.get(row);
+        boolean        buffered = family != null && qualifiers.length > 0 && put != null;
+
+        if (put != null) {
+            for (List<KeyValue> familyCells : put.getFamilyMap().values()) {
+                // newest first, so that the sort below keeps a column's latest write ahead of its earlier ones
+                for (int i = familyCells.size() - 1; i >= 0; i--) {
+                    KeyValue cell = familyCells.get(i);
+
+                    if (family == null || (cell.matchingFamily(family) && matches(cell, qualifiers))) {
+                        cells.add(cell);
+                    }
+                }
+            }
+
+            for (int i = 0; buffered && i < qualifiers.length; i++) {
+                buffered = put.has(family, qualifiers[i]);
+            }
+        }
+
+        if (delete != null && delete.getFamilyMap().isEmpty()) {
+            // the whole row is deleted, so only the buffered cells are left
+            buffered = true;
+        }
+
+        if (!buffered) {
+            Get get = new Get(row);
+
+            if (family != null && qualifiers.length == 0) {
+                get.addFamily(family);
+            }
+
+            for (int i = 0; family != null && i < qualifiers.length; i++) {
+                get.addColumn(family, qualifiers[i]);
+            }
+
+            Result stored = getTable().get(get);
+
+            for (int i = 0; !stored.isEmpty() && i < stored.raw().length; i++) {
+                // stored cells covered by a buffered delete are already gone, as far as this writer is concerned
+                if (delete == null || !masks(delete, stored.raw()[i])) {
+                    cells.add(stored.raw()[i]);
+                }
+            }
+        }
+
+        // buffered cells carry the latest timestamp, so they sort ahead of stored cells in the same column, and the
+        // sort is stable, so buffered cells in the same column stay newest first
+        Collections.sort(cells, KeyValue.COMPARATOR);
+
+        List<KeyValue> merged = new ArrayList();
+
+        for (KeyValue cell : cells) {
+            KeyValue last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+            if (last == null || !last.matchingColumn(cell.getFamily(), cell.getQualifier())) {
+                merged.add(cell);
+            }
+        }
+
+        return new Model(new Result(merged)).setColumnFamily(getColumnFamily())
+                                            .setKeySalt(getKeySalt())
+                                            .setQualifierAliases(getQualifierAliases())
+                                            .setValueCodecs(getValueCodecs());
+    }
+
+    /**
+     * Indicates that a delete covers a stored cell.
+     *
+     * @param delete The delete.
+     * @param cell   The cell.
+     */
+    private static boolean masks (Delete delete, KeyValue cell) {
+        if (delete.getFamilyMap().isEmpty()) {
+            return true;
+        }
+
+        List<KeyValue> markers = delete.getFamilyMap().get(cell.getFamily());
+
+        for (int i = 0; markers != null && i < markers.size(); i++) {
+            if (markers.get(i).isDeleteFamily() || markers.get(i).matchingQualifier(cell.getQualifier())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indicates that a cell matches one of a list of qualifiers.
+     *
+     * @param cell       The cell.
+     * @param qualifiers The qualifiers, or none to match any qualifier.
+     */
+    private static boolean matches (KeyValue cell, byte[][] qualifiers) {
+        if (qualifiers.length == 0) {
+            return true;
+        }
+
+        for (byte[] qualifier : qualifiers) {
+            if (cell.matchingQualifier(qualifier)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void sendBatch (List<Put> batch)
+    throws InterruptedException, IOException {
+        if (!parallelFlush) {
+            super.sendBatch(batch);
+
+            return;
+        }
+
+        if (flusher == null) {
+            flusher = new RegionServerFlusher(getConfiguration(), parallelFlushThreads);
+        }
+
+        flusher.flush(getTable().getTableName(), batch);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BufferedTableWriter setDelete (Delete delete) {
+        if (delete != null) {
+            deletes.put(delete.getRow(), delete);
+        }
+
+        super.setDelete(delete);
+
+        return this;
+    }
+
+    /**
+     * Set the maximum buffer age.
+     *
+     * <p>
+     * <strong>Note:</strong> Once the oldest buffered write reaches this age, the buffer is flushed by the shared
+     *                        {@link FlushScheduler}, regardless of its size.
+     * </p>
+     *
+     * @param age The age in milliseconds, or 0 to only flush by size.
+     */
+    public synchronized BufferedTableWriter setMaxBufferAge (long age) {
+        assert age >= 0
+             : "age < 0";
+
+        if (ageCheck != null) {
+            FlushScheduler.getInstance().cancel(ageCheck);
+
+            ageCheck = null;
+        }
+
+        if (age > 0) {
+            ageCheck = FlushScheduler.getInstance().schedule(this, age);
+        }
+
+        maxBufferAge = age;
+
+        return this;
+    }
+
+    /**
+     * Enable or disable parallel flushing.
+     *
+     * <p>
+     * <strong>Note:</strong> When enabled, buffered puts are grouped by region server and each group is written
+     * concurrently.
+     * </p>
+     *
+     * @param enabled Whether or not parallel flushing is enabled.
+     */
+    public BufferedTableWriter setParallelFlush (boolean enabled) {
+        parallelFlush = enabled;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum number of region servers flushed concurrently.
+     *
+     * <p>
+     * <strong>Note:</strong> This must be called prior to the first parallel flush.
+     * </p>
+     *
+     * @param threads The thread count.
+     */
+    public BufferedTableWriter setParallelFlushThreads (int threads) {
+        assert threads > 0
+             : "threads <= 0";
+
+        parallelFlushThreads = threads;
+
+        return this;
     }
 
     /**
@@ -114,31 +465,41 @@ public class BufferedTableWriter extends TableWriter {
      * {@inheritDoc}
      */
     @Override
-    public BufferedTableWriter setRow (byte[] row)
+    public synchronized BufferedTableWriter setRow (byte[] row)
     throws InterruptedException, IOException {
         assert row != null
              : "row == null";
 
+        row = saltRow(row);
+
         if (getPut() == null || !Arrays.equals(getRow(), row)) {
             if (getPut() != null && getPut().isEmpty()) {
                 puts.remove(getRow());
             }
 
-            if (puts.size() >= getPutBufferSize()) {
+            if (puts.size() + deletes.size() >= getPutBufferSize()) {
                 flush();
             }
 
-            if (getContext() != null) {
-                getContext().setStatus("Switching row '" + Bytes.toString(row) + "'");
-            }
-
             if (!puts.containsKey(row)) {
                 puts.put(row, new Put(row));
             }
 
             setPut(puts.get(row));
+            setDelete(deletes.get(row));
         }
 
         return this;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized BufferedTableWriter setTableName (String table)
+    throws InterruptedException, IOException {
+        super.setTableName(table);
+
+        return this;
+    }
 }
\ No newline at end of file
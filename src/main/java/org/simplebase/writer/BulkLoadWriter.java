@@ -0,0 +1,688 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link BulkLoadWriter} writes rows to HFiles, and bulk loads them into table.
+ *
+ * <p>
+ * Rows may be written in any order. Cells are buffered in memory, and each time the spill buffer size is reached they
+ * are sorted and spilled to a run on local disk. When flushing, the runs are merged into one HFile per column family
+ * per region of the table, and the HFiles are handed to <em>LoadIncrementalHFiles</em>. Nothing passes through the
+ * write-ahead log or the memstores of the region servers.
+ * </p>
+ *
+ * <p>
+ * Data is loaded when the table has been changed, or when {@link BulkLoadWriter#flush} is called. Each flush loads a
+ * new set of HFiles, so a writer should be flushed as rarely as possible.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> {@link Writer#close} calls {@link BulkLoadWriter#flush}. Cells are stamped with the time they
+ *                        leave the currently active row, and when the same cell is written twice with the same
+ *                        timestamp, the last write wins. Merge operators only merge the writes buffered for a row, as
+ *                        nothing is read back from, or incremented in, the table, so operators that would need either
+ *                        are rejected.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class BulkLoadWriter extends Writer {
+    /** The default spill buffer size. */
+    public static final long SPILL_BUFFER_SIZE = 1024 * 1024 * 64;
+
+    /** The buffered cells. */
+    private List<KeyValue> buffer = new ArrayList();
+
+    /** The size of the buffered cells. */
+    private long bufferSize;
+
+    /** The HBase configuration. */
+    private Configuration configuration;
+
+    /** The staging directory. */
+    private Path directory;
+
+    /** The number of HFiles written. */
+    private long fileCount;
+
+    /** The number of completed loads. */
+    private long loadCount;
+
+    /** The sorted runs on local disk. */
+    private List<File> runs = new ArrayList();
+
+    /** The spill buffer size. */
+    private long spillBufferSize = SPILL_BUFFER_SIZE;
+
+    /** The number of runs spilled. */
+    private long spillCount;
+
+    /** The local spill directory. */
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    /** The currently active table. */
+    private HTable table;
+
+    /** The currently active table name. */
+    private String tableName;
+
+    /**
+     * Create a new BulkLoadWriter instance.
+     *
+     * @param configuration The HBase configuration.
+     * @param directory     The staging directory, on the file system of the cluster.
+     */
+    public BulkLoadWriter (Configuration configuration, Path directory) {
+        assert configuration != null && directory != null
+             : "configuration == null || directory == null";
+
+        this.configuration = configuration;
+        this.directory     = directory;
+    }
+
+    /**
+     * Buffer a cell, spilling the buffer if it is full.
+     *
+     * @param cell The cell.
+     *
+     * @throws IOException If the buffer cannot be spilled.
+     */
+    private void buffer (KeyValue cell)
+    throws IOException {
+        buffer.add(cell);
+
+        bufferSize += cell.heapSize();
+
+        if (bufferSize >= spillBufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Buffer the cells of the currently active row.
+     *
+     * @throws IOException If the buffer cannot be spilled.
+     */
+    private void bufferRow ()
+    throws IOException {
+        Delete delete = getDelete();
+        Put    put    = getPut();
+
+        if (delete != null && delete.getFamilyMap().isEmpty()) {
+            // a row delete is spelled out as a delete of every column family
+            for (byte[] family : getTableDescriptor().getFamiliesKeys()) {
+                buffer(new KeyValue(delete.getRow(), family, null, delete.getTimeStamp(), KeyValue.Type.DeleteFamily));
+            }
+        } else if (delete != null) {
+            for (List<KeyValue> markers : delete.getFamilyMap().values()) {
+                for (KeyValue marker : markers) {
+                    buffer(marker);
+                }
+            }
+        }
+
+        if (put != null) {
+            byte[] now = Bytes.toBytes(System.currentTimeMillis());
+
+            for (List<KeyValue> cells : put.getFamilyMap().values()) {
+                for (KeyValue cell : cells) {
+                    cell.updateLatestStamp(now);
+
+                    buffer(cell);
+                }
+            }
+        }
+
+        setDelete(null);
+        setPut(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close ()
+    throws InterruptedException, IOException {
+        flush();
+
+        if (table != null) {
+            table.close();
+
+            table = null;
+        }
+
+        if (getProgressReporter() != null) {
+            getProgressReporter().flush();
+        }
+    }
+
+    /**
+     * Close the HFiles of a region.
+     *
+     * @param writers The map of column families to HFile writers.
+     *
+     * @throws IOException If an HFile cannot be closed.
+     */
+    private void closeRegion (Map<byte[],StoreFile.Writer> writers)
+    throws IOException {
+        for (StoreFile.Writer writer : writers.values()) {
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+            writer.close();
+
+            fileCount++;
+        }
+
+        writers.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush ()
+    throws InterruptedException, IOException {
+        bufferRow();
+
+        if (buffer.isEmpty() && runs.isEmpty()) {
+            return;
+        }
+
+        Path       output     = new Path(directory, tableName + "_" + System.currentTimeMillis());
+        FileSystem fileSystem = output.getFileSystem(configuration);
+
+        try {
+            if (getContext() != null) {
+                getContext().setStatus("Writing HFiles for table '" + tableName + "'");
+            }
+
+            writeHFiles(output);
+
+            if (getContext() != null) {
+                getContext().setStatus("Loading HFiles into table '" + tableName + "'");
+            }
+
+            load(output);
+        } finally {
+            fileSystem.delete(output, true);
+        }
+
+        // the runs are kept until the load succeeds, so that a failed flush can be flushed again
+        for (File run : runs) {
+            run.delete();
+        }
+
+        runs.clear();
+
+        loadCount++;
+
+        count(WriterCounter.FLUSHES, 1);
+        resetOldestWrite();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getConfiguration () {
+        return configuration;
+    }
+
+    /**
+     * Retrieve the number of HFiles written.
+     */
+    public long getFileCount () {
+        return fileCount;
+    }
+
+    /**
+     * Retrieve the number of completed loads.
+     */
+    public long getLoadCount () {
+        return loadCount;
+    }
+
+    /**
+     * Retrieve the spill buffer size.
+     */
+    public long getSpillBufferSize () {
+        return spillBufferSize;
+    }
+
+    /**
+     * Retrieve the number of runs spilled to local disk.
+     */
+    public long getSpillCount () {
+        return spillCount;
+    }
+
+    /**
+     * Retrieve the local spill directory.
+     */
+    public File getSpillDirectory () {
+        return spillDirectory;
+    }
+
+    /**
+     * Retrieve the start keys of the regions of the currently active table.
+     *
+     * @throws IOException If the region locations cannot be read.
+     */
+    protected byte[][] getStartKeys ()
+    throws IOException {
+        return getTable().getStartKeys();
+    }
+
+    /**
+     * Retrieve the currently active table, opening it if necessary.
+     *
+     * @throws IOException If the table cannot be opened.
+     */
+    protected HTable getTable ()
+    throws IOException {
+        if (table == null) {
+            table = new HTable(configuration, tableName);
+        }
+
+        return table;
+    }
+
+    /**
+     * Retrieve the descriptor of the currently active table.
+     *
+     * @throws IOException If the descriptor cannot be read.
+     */
+    protected HTableDescriptor getTableDescriptor ()
+    throws IOException {
+        return getTable().getTableDescriptor();
+    }
+
+    /**
+     * Retrieve the currently active table name.
+     */
+    @Override
+    public String getTableName () {
+        return tableName;
+    }
+
+    /**
+     * Bulk load a directory of HFiles into the currently active table.
+     *
+     * @param output The directory, with one subdirectory per column family.
+     *
+     * @throws IOException If the HFiles cannot be loaded.
+     */
+    protected void load (Path output)
+    throws IOException {
+        try {
+            new LoadIncrementalHFiles(configuration).doBulkLoad(output, getTable());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to bulk load " + output, e);
+        }
+    }
+
+    /**
+     * Retrieve the index of the region containing a row.
+     *
+     * @param startKeys The start keys of the regions.
+     * @param row       The row.
+     */
+    private static int region (byte[][] startKeys, byte[] row) {
+        int index = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Set the merge operator of a column.
+     *
+     * <p>
+     * <strong>Note:</strong> Bulk loaded cells replace the stored values, so only operators that never read or
+     *                        increment them, such as {@link MergeOperator#LAST}, are supported.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param operator  The merge operator, or null to remove it.
+     *
+     * @throws IllegalArgumentException If the operator increments or reads the stored value.
+     */
+    @Override
+    public synchronized BulkLoadWriter setMergeOperator (byte[] family, byte[] qualifier, MergeOperator operator) {
+        if (operator != null && (operator.isIncrement() || operator.isReadMerge())) {
+            throw new IllegalArgumentException("Bulk load writers cannot merge with stored values: " +
+                                               Bytes.toString(qualifier));
+        }
+
+        super.setMergeOperator(family, qualifier, operator);
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkLoadWriter setRow (byte[] row)
+    throws InterruptedException, IOException {
+        assert row != null
+             : "row == null";
+
+        row = saltRow(row);
+
+        if (getPut() == null || !Arrays.equals(getRow(), row)) {
+            bufferRow();
+
+            setPut(new Put(row));
+        }
+
+        return this;
+    }
+
+    /**
+     * Set the spill buffer size.
+     *
+     * @param size The size in bytes.
+     */
+    public BulkLoadWriter setSpillBufferSize (long size) {
+        assert size > 0
+             : "size <= 0";
+
+        spillBufferSize = size;
+
+        return this;
+    }
+
+    /**
+     * Set the local spill directory.
+     *
+     * @param directory The directory.
+     */
+    public BulkLoadWriter setSpillDirectory (File directory) {
+        assert directory != null
+             : "directory == null";
+
+        spillDirectory = directory;
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkLoadWriter setTableName (String table)
+    throws InterruptedException, IOException {
+        assert table != null
+             : "table == null";
+
+        if (tableName == null || !tableName.equals(table)) {
+            if (getProgressReporter() != null) {
+                getProgressReporter().setTable(table);
+            }
+
+            flush();
+
+            if (this.table != null) {
+                this.table.close();
+
+                this.table = null;
+            }
+
+            tableName = table;
+        }
+
+        return this;
+    }
+
+    /**
+     * Sort the buffer, and spill it to a run on local disk.
+     *
+     * @throws IOException If the run cannot be written.
+     */
+    private void spill ()
+    throws IOException {
+        count(WriterCounter.SPILLS, 1);
+
+        // the sort is stable, so equal cells keep the order they were written in, and the last one wins
+        Collections.sort(buffer, KeyValue.COMPARATOR);
+
+        File             file = File.createTempFile("simplebase", ".run", spillDirectory);
+        DataOutputStream out  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        runs.add(file);
+
+        try {
+            for (int i = 0; i < buffer.size(); i++) {
+                if (i + 1 < buffer.size() && KeyValue.COMPARATOR.compare(buffer.get(i), buffer.get(i + 1)) == 0) {
+                    continue;
+                }
+
+                out.writeBoolean(true);
+
+                buffer.get(i).write(out);
+            }
+
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+
+        buffer.clear();
+
+        bufferSize = 0;
+        spillCount++;
+    }
+
+    /**
+     * Spill the buffer, and merge the runs into HFiles, partitioned by region.
+     *
+     * @param output The directory, which receives one subdirectory per column family.
+     *
+     * @throws IOException If the HFiles cannot be written.
+     */
+    protected void writeHFiles (Path output)
+    throws IOException {
+        HTableDescriptor             descriptor = getTableDescriptor();
+        FileSystem                   fileSystem = output.getFileSystem(configuration);
+        byte[][]                     startKeys  = getStartKeys();
+        Map<byte[],StoreFile.Writer> writers    = new TreeMap(Bytes.BYTES_COMPARATOR);
+        PriorityQueue<Run>           queue      = new PriorityQueue(runs.size() + 1, Run.COMPARATOR);
+        Configuration                uncached   = new Configuration(configuration);
+
+        // the HFiles are never read here, so they need no block cache
+        uncached.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+
+        CacheConfig cacheConfig = new CacheConfig(uncached);
+
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(i, runs.get(i));
+
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+
+            KeyValue last   = null;
+            int      region = -1;
+
+            while (!queue.isEmpty()) {
+                Run      run  = queue.poll();
+                KeyValue cell = run.current;
+
+                if (run.next()) {
+                    queue.add(run);
+                }
+
+                if (last != null && KeyValue.COMPARATOR.compare(last, cell) == 0) {
+                    // the newest run comes first, and replaces the same cell in older runs
+                    continue;
+                }
+
+                if (last == null || !last.matchingRow(cell)) {
+                    int cellRegion = region(startKeys, cell.getRow());
+
+                    if (cellRegion != region) {
+                        closeRegion(writers);
+
+                        region = cellRegion;
+                    }
+                }
+
+                StoreFile.Writer writer = writers.get(cell.getFamily());
+
+                if (writer == null) {
+                    HColumnDescriptor family = descriptor.getFamily(cell.getFamily());
+
+                    if (family == null) {
+                        throw new IOException("Nonexistent column family '" + Bytes.toString(cell.getFamily()) +
+                                              "' in table '" + tableName + "'");
+                    }
+
+                    writer = new StoreFile.WriterBuilder(uncached, cacheConfig, fileSystem, family.getBlocksize())
+                                          .withOutputDir(new Path(output, family.getNameAsString()))
+                                          .withCompression(family.getCompression())
+                                          .withBloomType(family.getBloomFilterType())
+                                          .withComparator(KeyValue.COMPARATOR)
+                                          .build();
+
+                    writers.put(cell.getFamily(), writer);
+                }
+
+                writer.append(cell);
+
+                last = cell;
+            }
+
+            closeRegion(writers);
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * {@link Run} is a sorted sequence of cells, spilled to local disk.
+     */
+    private static class Run {
+        /** The comparator that orders runs by their current cell, newest run first. */
+        static final Comparator<Run> COMPARATOR = new Comparator<Run>() {
+            public int compare (Run a, Run b) {
+                int comparison = KeyValue.COMPARATOR.compare(a.current, b.current);
+
+                return comparison != 0 ? comparison : b.index - a.index;
+            }
+        };
+
+        /** The current cell. */
+        KeyValue current;
+
+        /** The run index, which increases with every spill. */
+        int index;
+
+        /** The input stream. */
+        DataInputStream in;
+
+        /**
+         * Create a new Run instance.
+         *
+         * @param index The run index.
+         * @param file  The file.
+         *
+         * @throws IOException If the file cannot be opened.
+         */
+        Run (int index, File file)
+        throws IOException {
+            this.in    = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.index = index;
+        }
+
+        /**
+         * Close this run.
+         *
+         * @throws IOException If the file cannot be closed.
+         */
+        void close ()
+        throws IOException {
+            in.close();
+        }
+
+        /**
+         * Advance to the next cell.
+         *
+         * @return True if there is a next cell, otherwise false.
+         *
+         * @throws IOException If the next cell cannot be read.
+         */
+        boolean next ()
+        throws IOException {
+            if (in.readBoolean()) {
+                current = new KeyValue();
+
+                current.readFields(in);
+            } else {
+                current = null;
+
+                close();
+            }
+
+            return current != null;
+        }
+    }
+}
\ No newline at end of file
@@ -16,17 +16,26 @@
 
 package org.simplebase.writer;
 
+import org.simplebase.mapreduce.PutCombiner;
+import org.simplebase.mapreduce.TableRowKey;
+
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 
 /**
- * {@link ContextWriter} writes <em>Put</em> operations to a mapreduce context.
+ * {@link ContextWriter} writes <em>Put</em> and <em>Delete</em> operations to a mapreduce context.
  *
  * <p>
  * Data is written when the row changes, table changes, or when {@link ContextWriter#flush} is called--whichever comes
@@ -34,15 +43,40 @@ import org.apache.hadoop.mapreduce.TaskInputOutputContext;
  * </p>
  *
  * <p>
+ * By default, operations are keyed by table name, for <em>TableOutputFormat</em>. With
+ * {@link OutputMode#KEY_VALUES}, each cell is written on its own, keyed by row, for a job set up with
+ * <em>HFileOutputFormat.configureIncrementalLoad</em>, so that the output is bulk loaded instead of being written
+ * through the region servers. The table name is not written, so such a job writes a single table.
+ * </p>
+ *
+ * <p>
+ * With {@link OutputMode#TABLE_ROW}, each operation is written as a <em>Put</em>, keyed by a {@link TableRowKey}, so
+ * that {@link PutCombiner} can merge the operations written to the same row before the shuffle. See
+ * {@link PutCombiner}.
+ * </p>
+ *
+ * <p>
  * <strong>Note:</strong> {@link Writer#close} calls {@link ContextWriter#flush}.
  * </p>
  *
  * @author Sean Kerr [sean@code-box.org]
  */
 public class ContextWriter extends Writer {
+    /** The output mode. */
+    private OutputMode outputMode = OutputMode.PUT;
+
+    /** The sequence of the last operation written. */
+    private long sequence;
+
     /** The currenty active table. */
     private String table;
 
+    /** The currently active table name, encoded as an output key. */
+    private ImmutableBytesWritable tableBytes;
+
+    /** The map of table names to output keys. */
+    private Map<String,ImmutableBytesWritable> tableKeys = new HashMap();
+
     /**
      * Create a new ContextWriter instance.
      *
@@ -62,6 +96,8 @@ public class ContextWriter extends Writer {
     public void close ()
     throws InterruptedException, IOException {
         flush();
+
+        getProgressReporter().flush();
     }
 
     /**
@@ -70,11 +106,24 @@ public class ContextWriter extends Writer {
     @Override
     public void flush ()
     throws InterruptedException, IOException {
+        boolean flushed = getDelete() != null || (getPut() != null && !getPut().isEmpty());
+
+        if (getDelete() != null) {
+            write(tableBytes, getDelete());
+
+            setDelete(null);
+            resetOldestWrite();
+        }
+
         if (getPut() != null && !getPut().isEmpty()) {
-            getContext().setStatus("Flushing put");
-            getContext().write(new ImmutableBytesWritable(Bytes.toBytes(table)), getPut());
+            write(tableBytes, getPut());
 
             setPut(null);
+            resetOldestWrite();
+        }
+
+        if (flushed) {
+            count(WriterCounter.FLUSHES, 1);
         }
     }
 
@@ -86,6 +135,24 @@ public class ContextWriter extends Writer {
         return getContext().getConfiguration();
     }
 
+    /**
+     * Retrieve the output mode.
+     */
+    public OutputMode getOutputMode () {
+        return outputMode;
+    }
+
+    /**
+     * Retrieve the currently active table name, encoded as an output key.
+     *
+     * <p>
+     * <strong>Note:</strong> The key is encoded once per table, and is shared by every operation written to the table.
+     * </p>
+     */
+    protected ImmutableBytesWritable getTableBytes () {
+        return tableBytes;
+    }
+
     /**
      * Retrieve the currently active table name.
      */
@@ -94,6 +161,74 @@ public class ContextWriter extends Writer {
         return table;
     }
 
+    /**
+     * Indicates that a cell is replaced by a later cell with the same column and timestamp.
+     *
+     * <p>
+     * <strong>Note:</strong> The sort reducer keeps only one of a set of equal cells, and not necessarily the last.
+     * </p>
+     *
+     * @param cells The cells of a column family, in the order they were written.
+     * @param index The index of the cell.
+     */
+    private static boolean isReplaced (List<KeyValue> cells, int index) {
+        KeyValue cell = cells.get(index);
+
+        for (int i = index + 1; i < cells.size(); i++) {
+            if (cells.get(i).matchingQualifier(cell.getQualifier()) &&
+                cells.get(i).getTimestamp() == cell.getTimestamp()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the merge operator of a column.
+     *
+     * <p>
+     * <strong>Note:</strong> Operations written to a context replace the stored values, and may be combined with other
+     *                        operations in any order, so only operators that need neither, such as
+     *                        {@link MergeOperator#LAST}, are supported.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param operator  The merge operator, or null to remove it.
+     *
+     * @throws IllegalArgumentException If the operator increments or reads the stored value.
+     */
+    @Override
+    public synchronized ContextWriter setMergeOperator (byte[] family, byte[] qualifier, MergeOperator operator) {
+        if (operator != null && (operator.isIncrement() || operator.isReadMerge())) {
+            throw new IllegalArgumentException("Context writers cannot merge with stored values: " +
+                                               Bytes.toString(qualifier));
+        }
+
+        super.setMergeOperator(family, qualifier, operator);
+
+        return this;
+    }
+
+    /**
+     * Set the output mode.
+     *
+     * <p>
+     * <strong>Note:</strong> The map output classes of the job must match the output mode.
+     * </p>
+     *
+     * @param mode The output mode.
+     */
+    public ContextWriter setOutputMode (OutputMode mode) {
+        assert mode != null
+             : "mode == null";
+
+        outputMode = mode;
+
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -103,11 +238,11 @@ public class ContextWriter extends Writer {
         assert row != null
              : "row == null";
 
+        row = saltRow(row);
+
         if (getPut() == null || !Arrays.equals(getRow(), row)) {
             flush();
 
-            getContext().setStatus("Switching row '" + Bytes.toString(row) + "'");
-
             setPut(new Put(row));
         }
 
@@ -126,11 +261,85 @@ public class ContextWriter extends Writer {
         if (this.table == null || !this.table.equals(table)) {
             flush();
 
-            getContext().setStatus("Switching table '" + table + "'");
+            getProgressReporter().setTable(table);
 
             this.table = table;
+            tableBytes = tableKeys.get(table);
+
+            if (tableBytes == null) {
+                tableBytes = new ImmutableBytesWritable(Bytes.toBytes(table));
+
+                tableKeys.put(table, tableBytes);
+            }
         }
 
         return this;
     }
+
+    /**
+     * Write an operation to the context, according to the output mode.
+     *
+     * @param tableBytes The table name.
+     * @param mutation   The operation.
+     *
+     * @throws InterruptedException If the write is interrupted.
+     * @throws IOException          If the operation cannot be written.
+     */
+    protected void write (ImmutableBytesWritable tableBytes, Mutation mutation)
+    throws InterruptedException, IOException {
+        if (outputMode == OutputMode.PUT) {
+            getContext().write(tableBytes, mutation);
+
+            return;
+        }
+
+        if (mutation instanceof Delete && mutation.getFamilyMap().isEmpty()) {
+            throw new IOException("Row deletes cannot be written as cells, delete each column family instead");
+        }
+
+        if (outputMode == OutputMode.TABLE_ROW) {
+            // deletes travel as delete markers, so that all operations share a map output value class
+            Put put = mutation instanceof Put ? (Put) mutation : new Put(mutation.getRow());
+
+            if (put != mutation) {
+                for (List<KeyValue> cells : mutation.getFamilyMap().values()) {
+                    for (KeyValue cell : cells) {
+                        put.add(cell);
+                    }
+                }
+            }
+
+            put.setAttribute(PutCombiner.SEQUENCE_ATTRIBUTE, Bytes.toBytes(++sequence));
+
+            getContext().write(new TableRowKey(tableBytes.get(), put.getRow()), put);
+
+            return;
+        }
+
+        ImmutableBytesWritable row = new ImmutableBytesWritable(mutation.getRow());
+
+        for (List<KeyValue> cells : mutation.getFamilyMap().values()) {
+            for (int i = 0; i < cells.size(); i++) {
+                if (!isReplaced(cells, i)) {
+                    getContext().write(row, cells.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link OutputMode} represents the form in which operations are written to the context.
+     *
+     * @author Sean Kerr [sean@code-box.org]
+     */
+    public enum OutputMode {
+        /** Each cell is written as a <em>KeyValue</em>, keyed by row, for <em>HFileOutputFormat</em>. */
+        KEY_VALUES,
+
+        /** Each operation is written as it is, keyed by table, for <em>TableOutputFormat</em>. */
+        PUT,
+
+        /** Each operation is written as a <em>Put</em>, keyed by table and row, for {@link PutCombiner}. */
+        TABLE_ROW
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.Put;
+
+/**
+ * {@link DeadLetterHandler} receives puts that could not be written within the {@link RetryPolicy}.
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public interface DeadLetterHandler {
+    /**
+     * Handle a put that could not be written.
+     *
+     * @param table The table.
+     * @param put   The put.
+     * @param cause The cause of the last failure.
+     *
+     * @throws IOException If the put cannot be handled, which fails the flush.
+     */
+    void handle (String table, Put put, Throwable cause)
+    throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link FlushScheduler} is a process-wide scheduler that flushes writers whose buffered writes have grown too old.
+ *
+ * <p>
+ * Every scheduled writer is checked by a single daemon thread, at a quarter of its maximum buffer age. A writer is
+ * flushed when its oldest write since the last flush has reached the maximum buffer age, which bounds how long a write
+ * can sit in a quiet writer without shrinking the buffer of a busy one.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class FlushScheduler {
+    /** The minimum check interval in milliseconds. */
+    public static final long MIN_INTERVAL = 10;
+
+    /** The shared instance. */
+    private static FlushScheduler instance;
+
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(FlushScheduler.class);
+
+    /** The executor. */
+    private ScheduledExecutorService executor;
+
+    /** The number of expired flushes. */
+    private long flushCount;
+
+    /** The number of scheduled writers. */
+    private int scheduledCount;
+
+    /**
+     * Create a new FlushScheduler instance.
+     */
+    FlushScheduler () {
+    }
+
+    /**
+     * Stop checking a writer.
+     *
+     * @param future The future returned by {@link #schedule}.
+     */
+    public synchronized void cancel (ScheduledFuture future) {
+        assert future != null
+             : "future == null";
+
+        if (future.cancel(false) && --scheduledCount == 0) {
+            executor.shutdown();
+
+            executor = null;
+        }
+    }
+
+    /**
+     * Retrieve the number of expired flushes.
+     */
+    public synchronized long getFlushCount () {
+        return flushCount;
+    }
+
+    /**
+     * Retrieve the shared instance.
+     */
+    public static synchronized FlushScheduler getInstance () {
+        if (instance == null) {
+            instance = new FlushScheduler();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Retrieve the number of scheduled writers.
+     */
+    public synchronized int getScheduledCount () {
+        return scheduledCount;
+    }
+
+    /**
+     * Start checking a writer.
+     *
+     * @param writer The writer.
+     * @param age    The maximum buffer age in milliseconds.
+     *
+     * @return The future to hand to {@link #cancel}.
+     */
+    public synchronized ScheduledFuture schedule (final Writer writer, final long age) {
+        assert writer != null && age > 0
+             : "writer == null || age <= 0";
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(Threads.newDaemonThreadFactory("simplebase-age"));
+        }
+
+        long interval = Math.max(MIN_INTERVAL, age / 4);
+
+        scheduledCount++;
+
+        return executor.scheduleWithFixedDelay(new Runnable() {
+            public void run () {
+                long oldest = writer.getOldestWrite();
+
+                if (oldest == 0 || System.currentTimeMillis() - oldest < age) {
+                    return;
+                }
+
+                try {
+                    writer.flushExpired(age);
+
+                    synchronized (FlushScheduler.this) {
+                        flushCount++;
+                    }
+                } catch (Exception e) {
+                    // the writes stay buffered, and are flushed by the next successful flush
+                    LOG.warn("Unable to flush expired writes", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * {@link MergeOperator} combines repeated writes to a column into a single value.
+ *
+ * <p>
+ * Operators are declared per column with {@link Writer#setMergeOperator}. Each write to a declared column is merged
+ * into the value already buffered for it, so that a writer sends one value per column per flush, no matter how many
+ * times the column was written. Table writers also merge the buffered value with the stored value when flushing:
+ * </p>
+ *
+ * <ul>
+ *     <li>{@link #SUM} adds <em>long</em> values, and is sent as a single <em>Increment</em>.</li>
+ *     <li>{@link #MIN} and {@link #MAX} keep the smallest or largest <em>long</em> value.</li>
+ *     <li>{@link #LAST} keeps the most recently written value.</li>
+ *     <li>{@link #union} keeps a sorted set of distinct values, up to a limit. Use {@link #members} to read it.</li>
+ * </ul>
+ *
+ * <p>
+ * <strong>Note:</strong> {@link #MIN}, {@link #MAX} and {@link #union} read the stored value before writing the merged
+ *                        value. Concurrent writers of the same column may overwrite each other's merges, so each such
+ *                        column should have a single writer.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public abstract class MergeOperator {
+    /** Keep the most recently written value. */
+    public static final MergeOperator LAST = new MergeOperator() {
+        @Override
+        public byte[] merge (byte[] current, byte[] value) {
+            return value;
+        }
+    };
+
+    /** Keep the largest long value. */
+    public static final MergeOperator MAX = new MergeOperator() {
+        @Override
+        public boolean isReadMerge () {
+            return true;
+        }
+
+        @Override
+        public byte[] merge (byte[] current, byte[] value) {
+            return Bytes.toLong(value) > Bytes.toLong(current) ? value : current;
+        }
+    };
+
+    /** Keep the smallest long value. */
+    public static final MergeOperator MIN = new MergeOperator() {
+        @Override
+        public boolean isReadMerge () {
+            return true;
+        }
+
+        @Override
+        public byte[] merge (byte[] current, byte[] value) {
+            return Bytes.toLong(value) < Bytes.toLong(current) ? value : current;
+        }
+    };
+
+    /** Add long values. */
+    public static final MergeOperator SUM = new MergeOperator() {
+        @Override
+        public boolean isIncrement () {
+            return true;
+        }
+
+        @Override
+        public byte[] merge (byte[] current, byte[] value) {
+            return Bytes.toBytes(Bytes.toLong(current) + Bytes.toLong(value));
+        }
+    };
+
+    /**
+     * Create a new MergeOperator instance.
+     */
+    protected MergeOperator () {
+    }
+
+    /**
+     * Encode a written value.
+     *
+     * <p>
+     * <strong>Note:</strong> The encoded value is what {@link #merge} receives.
+     * </p>
+     *
+     * @param value The value.
+     */
+    public byte[] encode (byte[] value) {
+        return value;
+    }
+
+    /**
+     * Indicates that the merged value is sent as an <em>Increment</em>.
+     */
+    public boolean isIncrement () {
+        return false;
+    }
+
+    /**
+     * Indicates that the merged value must be merged with the stored value before it is written.
+     */
+    public boolean isReadMerge () {
+        return false;
+    }
+
+    /**
+     * Retrieve the members of a set written with a {@link #union} operator.
+     *
+     * @param value The set.
+     *
+     * @return The members, in ascending order.
+     */
+    public static List<byte[]> members (byte[] value) {
+        assert value != null
+             : "value == null";
+
+        List<byte[]> members = new ArrayList();
+
+        for (int offset = 0; offset < value.length;) {
+            int length = Bytes.toInt(value, offset);
+
+            members.add(Arrays.copyOfRange(value, offset + Bytes.SIZEOF_INT, offset + Bytes.SIZEOF_INT + length));
+
+            offset += Bytes.SIZEOF_INT + length;
+        }
+
+        return members;
+    }
+
+    /**
+     * Merge two encoded values.
+     *
+     * @param current The current value.
+     * @param value   The newer value.
+     *
+     * @return The merged value.
+     */
+    public abstract byte[] merge (byte[] current, byte[] value);
+
+    /**
+     * Create an operator that keeps a sorted set of distinct values.
+     *
+     * <p>
+     * <strong>Note:</strong> Once the set is full, only the smallest members are kept.
+     * </p>
+     *
+     * @param limit The maximum number of members.
+     */
+    public static MergeOperator union (final int limit) {
+        assert limit > 0
+             : "limit <= 0";
+
+        return new MergeOperator() {
+            @Override
+            public byte[] encode (byte[] value) {
+                return Bytes.add(Bytes.toBytes(value.length), value);
+            }
+
+            @Override
+            public boolean isReadMerge () {
+                return true;
+            }
+
+            @Override
+            public byte[] merge (byte[] current, byte[] value) {
+                TreeSet<byte[]> members = new TreeSet(Bytes.BYTES_COMPARATOR);
+
+                members.addAll(members(current));
+                members.addAll(members(value));
+
+                while (members.size() > limit) {
+                    members.pollLast();
+                }
+
+                int size = 0;
+
+                for (byte[] member : members) {
+                    size += Bytes.SIZEOF_INT + member.length;
+                }
+
+                byte[] merged = new byte[size];
+                int    offset = 0;
+
+                for (byte[] member : members) {
+                    offset = Bytes.putInt(merged, offset, member.length);
+                    offset = Bytes.putBytes(merged, offset, member, 0, member.length);
+                }
+
+                return merged;
+            }
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * {@link ProgressReporter} reports the progress of a {@link Writer} to a mapreduce context, at a limited rate.
+ *
+ * <p>
+ * Counting is a matter of adding to an array. The counts are added to the {@link WriterCounter} counters of the
+ * context, and the status of the task is set, at most once per interval and whenever {@link #flush} is called. The
+ * status names the last table and row opened, which are only decoded when the status is set. Retries, spills, dead
+ * letters and waits on the spill journal are counted the same way, rather than each setting a status of their own.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ProgressReporter {
+    /** The default report interval in milliseconds. */
+    public static final long INTERVAL = 5000;
+
+    /** The context. */
+    private TaskInputOutputContext context;
+
+    /** The counts since the last report. */
+    private long[] counts = new long[WriterCounter.values().length];
+
+    /** The report interval in milliseconds. */
+    private long interval;
+
+    /** The last row opened. */
+    private byte[] lastRow;
+
+    /** The last table opened. */
+    private String lastTable;
+
+    /** The time of the next report, in milliseconds. */
+    private long nextReport;
+
+    /** The counts reported so far. */
+    private long[] totals = new long[WriterCounter.values().length];
+
+    /**
+     * Create a new ProgressReporter instance.
+     *
+     * @param context The context.
+     */
+    public ProgressReporter (TaskInputOutputContext context) {
+        this(context, INTERVAL);
+    }
+
+    /**
+     * Create a new ProgressReporter instance.
+     *
+     * @param context  The context.
+     * @param interval The report interval in milliseconds.
+     */
+    public ProgressReporter (TaskInputOutputContext context, long interval) {
+        assert context != null && interval >= 0
+             : "context == null || interval < 0";
+
+        this.context  = context;
+        this.interval = interval;
+        nextReport    = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Append the total of a counter to a status, if it is not zero.
+     *
+     * @param status  The status.
+     * @param counter The counter.
+     * @param suffix  The suffix.
+     */
+    private void appendTotal (StringBuilder status, WriterCounter counter, String suffix) {
+        long total = totals[counter.ordinal()];
+
+        if (total > 0) {
+            status.append(", ").append(total).append(suffix);
+        }
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param counter The counter.
+     * @param amount  The amount.
+     */
+    public synchronized void count (WriterCounter counter, long amount) {
+        counts[counter.ordinal()] += amount;
+
+        if (System.currentTimeMillis() >= nextReport) {
+            report();
+        }
+    }
+
+    /**
+     * Count a written cell.
+     *
+     * @param bytes The number of qualifier and value bytes.
+     */
+    public synchronized void countCell (long bytes) {
+        counts[WriterCounter.BYTES.ordinal()] += bytes;
+
+        count(WriterCounter.CELLS, 1);
+    }
+
+    /**
+     * Count a row opened for writing.
+     *
+     * @param row The row.
+     */
+    public synchronized void countRow (byte[] row) {
+        lastRow = row;
+
+        count(WriterCounter.ROWS, 1);
+    }
+
+    /**
+     * Add the counts to the counters of the context, and set the status of the task.
+     */
+    public synchronized void flush () {
+        report();
+    }
+
+    /**
+     * Retrieve the report interval in milliseconds.
+     */
+    public long getInterval () {
+        return interval;
+    }
+
+    /**
+     * Retrieve the total of a counter, including counts that have not been reported yet.
+     *
+     * @param counter The counter.
+     */
+    public synchronized long getTotal (WriterCounter counter) {
+        return totals[counter.ordinal()] + counts[counter.ordinal()];
+    }
+
+    /**
+     * Add the counts to the counters of the context, and set the status of the task.
+     */
+    private void report () {
+        for (WriterCounter counter : WriterCounter.values()) {
+            int index = counter.ordinal();
+
+            if (counts[index] > 0) {
+                context.getCounter(counter).increment(counts[index]);
+
+                totals[index] += counts[index];
+                counts[index]  = 0;
+            }
+        }
+
+        StringBuilder status = new StringBuilder();
+
+        status.append("Wrote ").append(totals[WriterCounter.CELLS.ordinal()]).append(" cells in ")
+              .append(totals[WriterCounter.ROWS.ordinal()]).append(" rows, with ")
+              .append(totals[WriterCounter.DELETES.ordinal()]).append(" deletes and ")
+              .append(totals[WriterCounter.FLUSHES.ordinal()]).append(" flushes");
+
+        appendTotal(status, WriterCounter.RETRIES, " retries");
+        appendTotal(status, WriterCounter.SPILLS, " spills");
+        appendTotal(status, WriterCounter.DEAD_LETTERS, " dead letters");
+        appendTotal(status, WriterCounter.DRAIN_WAITS, " waits for spilled batches");
+
+        if (lastRow != null) {
+            status.append(", at row '").append(Bytes.toStringBinary(lastRow)).append("'");
+        }
+
+        if (lastTable != null) {
+            status.append(", in table '").append(lastTable).append("'");
+        }
+
+        context.setStatus(status.toString());
+
+        nextReport = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Set the table that is being written, which is named by the next status.
+     *
+     * @param table The table.
+     */
+    public synchronized void setTable (String table) {
+        lastTable = table;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerAddress;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HTable;
+
+/**
+ * {@link RegionLocations} warms the region location cache of a table.
+ *
+ * <p>
+ * Warming reads every region location of a table in a single scan of the meta table, rather than looking regions up one
+ * at a time as rows are first written to them. Locations can also be saved to a local snapshot and loaded back, so that
+ * a restarted process starts warm without touching the meta table at all.
+ * </p>
+ *
+ * <p>
+ * A snapshot holds a format version, the time it was saved, and each region followed by the name of its server.
+ * Snapshots older than the maximum age handed to {@link #load} are ignored, so that a long lived snapshot does not
+ * keep sending the first writes of every process to servers that have since lost their regions.
+ * </p>
+ *
+ * <p>
+ * Regions without a server, such as regions in transition while a table splits or moves, are left out of warming and
+ * of snapshots, and are looked up by the client the first time they are used.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> A stale snapshot is otherwise harmless. Locations of regions that have since moved or split
+ *                        are corrected by the client the first time they are used.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RegionLocations {
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(RegionLocations.class);
+
+    /** The snapshot format version. */
+    private static final int VERSION = 1;
+
+    /**
+     * Create a new RegionLocations instance.
+     */
+    private RegionLocations () {
+    }
+
+    /**
+     * Warm the region location cache of a table from a snapshot.
+     *
+     * @param table  The table.
+     * @param file   The snapshot file.
+     * @param maxAge The maximum age of the snapshot in milliseconds.
+     *
+     * @return The number of region locations loaded, or -1 if the snapshot does not exist, is too old, was saved in
+     *         another format, or cannot be read.
+     */
+    public static int load (HTable table, File file, long maxAge) {
+        assert table != null && file != null && maxAge >= 0
+             : "table == null || file == null || maxAge < 0";
+
+        if (!file.exists()) {
+            return -1;
+        }
+
+        Map<HRegionInfo,ServerName> regions = new TreeMap();
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try {
+                if (in.readInt() != VERSION || System.currentTimeMillis() - in.readLong() > maxAge) {
+                    return -1;
+                }
+
+                for (int i = in.readInt(); i > 0; i--) {
+                    HRegionInfo region = new HRegionInfo();
+
+                    region.readFields(in);
+                    regions.put(region, ServerName.parseServerName(in.readUTF()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // a truncated or corrupt snapshot is a miss, and is replaced from the meta table
+            LOG.warn("Unable to read region snapshot: " + file, e);
+
+            return -1;
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to read region snapshot: " + file, e);
+
+            return -1;
+        }
+
+        prewarm(table, regions);
+
+        return regions.size();
+    }
+
+    /**
+     * Hand region locations to the region location cache of a table.
+     *
+     * <p>
+     * <strong>Note:</strong> <em>HTable#prewarmRegionCache</em> is the only way into the cache, and it takes server
+     *                        addresses, so this is the one place they are built.
+     * </p>
+     *
+     * @param table   The table.
+     * @param regions The region locations.
+     */
+    private static void prewarm (HTable table, Map<HRegionInfo,ServerName> regions) {
+        Map<HRegionInfo,HServerAddress> addresses = new HashMap();
+
+        for (Map.Entry<HRegionInfo,ServerName> entry : regions.entrySet()) {
+            ServerName server = entry.getValue();
+
+            if (server == null) {
+                continue;
+            }
+
+            addresses.put(entry.getKey(), new HServerAddress(server.getHostname(), server.getPort()));
+        }
+
+        table.prewarmRegionCache(addresses);
+    }
+
+    /**
+     * Save region locations to a snapshot.
+     *
+     * <p>
+     * <strong>Note:</strong> The snapshot is written to a temporary file first, so that an interrupted save never
+     *                        leaves a partial snapshot behind. Regions without a server are left out.
+     * </p>
+     *
+     * @param regions The region locations.
+     * @param file    The snapshot file.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void save (Map<HRegionInfo,ServerName> regions, File file)
+    throws IOException {
+        assert regions != null && file != null
+             : "regions == null || file == null";
+
+        File             temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+        try {
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            int count = 0;
+
+            for (ServerName server : regions.values()) {
+                if (server != null) {
+                    count++;
+                }
+            }
+
+            out.writeInt(count);
+
+            for (Map.Entry<HRegionInfo,ServerName> entry : regions.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+
+                entry.getKey().write(out);
+                out.writeUTF(entry.getValue().getServerName());
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            file.delete();
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to replace region snapshot: " + file);
+            }
+        }
+    }
+
+    /**
+     * Warm the region location cache of a table from the meta table.
+     *
+     * @param table The table.
+     *
+     * @return The region locations.
+     *
+     * @throws IOException If the meta table cannot be read.
+     */
+    public static NavigableMap<HRegionInfo,ServerName> warm (HTable table)
+    throws IOException {
+        assert table != null
+             : "table == null";
+
+        NavigableMap<HRegionInfo,ServerName> regions = table.getRegionLocations();
+
+        prewarm(table, regions);
+
+        return regions;
+    }
+}
\ No newline at end of file
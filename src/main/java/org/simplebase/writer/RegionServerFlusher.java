@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link RegionServerFlusher} writes batches of operations grouped by region server.
+ *
+ * <p>
+ * Each batch is split into one group per region server using the region location cache, and the groups are written
+ * concurrently on a bounded executor. Writing a batch takes as long as the slowest region server, rather than the sum
+ * of all of them.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> A single {@link RegionServerFlusher} may be shared by multiple writers.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RegionServerFlusher {
+    /** The default number of flush threads. */
+    public static final int FLUSH_THREADS = 10;
+
+    /** The idle thread keep-alive time in seconds. */
+    private static final long KEEP_ALIVE = 60;
+
+    /** The pool handed to the connection for each group. */
+    private ExecutorService batchPool;
+
+    /** The connection. */
+    private HConnection connection;
+
+    /** The bounded group executor. */
+    private ExecutorService executor;
+
+    /**
+     * Create a new RegionServerFlusher instance.
+     *
+     * @param configuration The HBase configuration.
+     *
+     * @throws IOException If the connection cannot be established.
+     */
+    public RegionServerFlusher (Configuration configuration)
+    throws IOException {
+        this(configuration, FLUSH_THREADS);
+    }
+
+    /**
+     * Create a new RegionServerFlusher instance.
+     *
+     * @param configuration The HBase configuration.
+     * @param threads       The maximum number of region servers written to concurrently.
+     *
+     * @throws IOException If the connection cannot be established.
+     */
+    public RegionServerFlusher (Configuration configuration, int threads)
+    throws IOException {
+        assert configuration != null && threads > 0
+             : "configuration == null || threads <= 0";
+
+        batchPool  = Executors.newCachedThreadPool(Threads.newDaemonThreadFactory("simplebase-batch"));
+        connection = TablePool.getInstance().acquireConnection(configuration);
+        executor   = Threads.getBoundedCachedThreadPool(threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                                                        Threads.newDaemonThreadFactory("simplebase-flush"));
+    }
+
+    /**
+     * Close this flusher.
+     *
+     * <p>
+     * <strong>Note:</strong> Groups still being written are waited on before the connection is handed back to the
+     *                        {@link TablePool}. If the wait is interrupted, they are interrupted in turn.
+     * </p>
+     *
+     * @throws InterruptedException If the wait for running groups is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    public void close ()
+    throws InterruptedException, IOException {
+        executor.shutdown();
+        batchPool.shutdown();
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            batchPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            batchPool.shutdownNow();
+
+            throw e;
+        } finally {
+            TablePool.getInstance().releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Write a batch of operations, grouped by region server.
+     *
+     * @param table   The table.
+     * @param actions The operations.
+     *
+     * @throws InterruptedException                  If an operation is interrupted.
+     * @throws RetriesExhaustedWithDetailsException If any of the operations could not be written.
+     * @throws IOException                           If an I/O error occurs.
+     */
+    public void flush (final byte[] table, List<? extends Row> actions)
+    throws InterruptedException, IOException {
+        assert table != null && actions != null
+             : "table == null || actions == null";
+
+        Map<String,List<Row>> groups = new HashMap();
+
+        for (Row action : actions) {
+            String    server = connection.locateRegion(table, action.getRow()).getHostnamePort();
+            List<Row> group  = groups.get(server);
+
+            if (group == null) {
+                group = new ArrayList();
+
+                groups.put(server, group);
+            }
+
+            group.add(action);
+        }
+
+        List<Future<Void>> futures = new ArrayList();
+
+        for (final List<Row> group : groups.values()) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call ()
+                throws Exception {
+                    connection.processBatch(group, table, batchPool, new Object[group.size()]);
+
+                    return null;
+                }
+            }));
+        }
+
+        // wait on every group before reporting failures, so that no group is left running behind the caller
+        List<Throwable> causes    = new ArrayList();
+        List<String>    hosts     = new ArrayList();
+        List<Row>       rows      = new ArrayList();
+        IOException     exception = null;
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // the caller gives up on the batch, so the groups still running must not land behind a retry of it
+                for (Future<Void> other : futures) {
+                    other.cancel(true);
+                }
+
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RetriesExhaustedWithDetailsException) {
+                    RetriesExhaustedWithDetailsException details = (RetriesExhaustedWithDetailsException) e.getCause();
+
+                    for (int i = 0; i < details.getNumExceptions(); i++) {
+                        causes.add(details.getCause(i));
+                        hosts.add(details.getHostnamePort(i));
+                        rows.add(details.getRow(i));
+                    }
+                } else if (e.getCause() instanceof IOException) {
+                    exception = (IOException) e.getCause();
+                } else if (e.getCause() instanceof InterruptedException) {
+                    exception = new InterruptedIOException(e.getCause().getMessage());
+                } else {
+                    exception = new IOException(e.getCause());
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+
+        if (!rows.isEmpty()) {
+            throw new RetriesExhaustedWithDetailsException(causes, rows, hosts);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.util.Random;
+
+/**
+ * {@link RetryPolicy} decides whether and when failed puts are written again.
+ *
+ * <p>
+ * Each retry waits a random time between zero and an exponentially growing ceiling, so that writers that failed
+ * together do not retry together. Retries are paid for from a budget that is refilled by a fraction of every
+ * successful put. When the cluster is failing most writes, the budget runs dry and failed puts go to the dead letter
+ * handler instead of multiplying the load.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> A single {@link RetryPolicy} may be shared by multiple writers, in which case they share one
+ *                        budget.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RetryPolicy {
+    /** The default base backoff in milliseconds. */
+    public static final long BASE_BACKOFF = 100;
+
+    /** The default maximum number of attempts, including the first. */
+    public static final int MAX_ATTEMPTS = 5;
+
+    /** The default maximum backoff in milliseconds. */
+    public static final long MAX_BACKOFF = 10000;
+
+    /** The default retry budget, in retried puts. */
+    public static final int RETRY_BUDGET = 10000;
+
+    /** The default fraction of each successful put added to the retry budget. */
+    public static final double RETRY_RATIO = 0.1;
+
+    /** The base backoff in milliseconds. */
+    private long baseBackoff = BASE_BACKOFF;
+
+    /** The retry budget capacity. */
+    private int budget = RETRY_BUDGET;
+
+    /** The maximum number of attempts. */
+    private int maxAttempts = MAX_ATTEMPTS;
+
+    /** The maximum backoff in milliseconds. */
+    private long maxBackoff = MAX_BACKOFF;
+
+    /** The random backoff source. */
+    private Random random = new Random();
+
+    /** The number of puts refused by the budget. */
+    private long rejectedCount;
+
+    /** The number of retried puts. */
+    private long retryCount;
+
+    /** The retry budget refill ratio. */
+    private double retryRatio = RETRY_RATIO;
+
+    /** The remaining retry budget. */
+    private double tokens = RETRY_BUDGET;
+
+    /**
+     * Create a new RetryPolicy instance.
+     */
+    public RetryPolicy () {
+    }
+
+    /**
+     * Retrieve the backoff before a retry.
+     *
+     * @param attempt The number of attempts made so far.
+     *
+     * @return The backoff in milliseconds.
+     */
+    public synchronized long getBackoff (int attempt) {
+        assert attempt > 0
+             : "attempt <= 0";
+
+        long ceiling = Math.min(maxBackoff, baseBackoff << Math.min(attempt - 1, 30));
+
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    /**
+     * Retrieve the maximum number of attempts, including the first.
+     */
+    public synchronized int getMaxAttempts () {
+        return maxAttempts;
+    }
+
+    /**
+     * Retrieve the remaining retry budget, in retried puts.
+     */
+    public synchronized int getRemainingBudget () {
+        return (int) tokens;
+    }
+
+    /**
+     * Retrieve the number of puts refused by the budget.
+     */
+    public synchronized long getRejectedCount () {
+        return rejectedCount;
+    }
+
+    /**
+     * Retrieve the number of retried puts.
+     */
+    public synchronized long getRetryCount () {
+        return retryCount;
+    }
+
+    /**
+     * Record successfully written puts, refilling the retry budget.
+     *
+     * @param puts The number of puts.
+     */
+    public synchronized void recordSuccess (int puts) {
+        assert puts >= 0
+             : "puts < 0";
+
+        tokens = Math.min(budget, tokens + puts * retryRatio);
+    }
+
+    /**
+     * Set the backoff bounds.
+     *
+     * @param base The base backoff in milliseconds.
+     * @param max  The maximum backoff in milliseconds.
+     */
+    public synchronized RetryPolicy setBackoff (long base, long max) {
+        assert base > 0 && max >= base
+             : "base <= 0 || max < base";
+
+        baseBackoff = base;
+        maxBackoff  = max;
+
+        return this;
+    }
+
+    /**
+     * Set the retry budget.
+     *
+     * <p>
+     * <strong>Note:</strong> This also refills the budget.
+     * </p>
+     *
+     * @param budget The budget, in retried puts.
+     * @param ratio  The fraction of each successful put added to the budget.
+     */
+    public synchronized RetryPolicy setBudget (int budget, double ratio) {
+        assert budget >= 0 && ratio >= 0
+             : "budget < 0 || ratio < 0";
+
+        this.budget = budget;
+        retryRatio  = ratio;
+        tokens      = budget;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum number of attempts, including the first.
+     *
+     * @param attempts The attempts.
+     */
+    public synchronized RetryPolicy setMaxAttempts (int attempts) {
+        assert attempts > 0
+             : "attempts <= 0";
+
+        maxAttempts = attempts;
+
+        return this;
+    }
+
+    /**
+     * Withdraw retries from the budget.
+     *
+     * @param attempt The number of attempts made so far.
+     * @param puts    The number of puts to retry.
+     *
+     * @return True if the puts may be retried, otherwise false.
+     */
+    public synchronized boolean withdraw (int attempt, int puts) {
+        assert attempt > 0 && puts >= 0
+             : "attempt <= 0 || puts < 0";
+
+        if (attempt >= maxAttempts || tokens < puts) {
+            rejectedCount += puts;
+
+            return false;
+        }
+
+        tokens     -= puts;
+        retryCount += puts;
+
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,876 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+
+/**
+ * {@link SpillJournal} is an append-only, memory-mapped local journal of put batches.
+ *
+ * <p>
+ * Writers append batches they cannot afford to wait on, and a background drainer writes them to their tables in the
+ * order they were appended. When puts in a batch fail to write, the drainer backs off and tries them again before
+ * moving on, so that nothing behind them overtakes them. Without a {@link RetryPolicy} it retries until they succeed,
+ * and with one it retries as the policy allows. Puts that fail permanently or run out of retries go to the
+ * {@link DeadLetterHandler}, or to the quarantine file in the journal directory when there is no handler or it fails,
+ * and the drainer moves on to the next batch.
+ * </p>
+ *
+ * <p>
+ * The journal is split into segment files in its directory. Each record is a length followed by the table name and the
+ * serialized puts, and the length is written last so that a partially written record is never read. A drained record
+ * has its length negated in place, and a segment is deleted once every record in it has been drained. Records left in
+ * the directory when a journal is opened are drained first, so a restarted process picks up where it left off.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Appended records survive a crash of the process, because the operating system owns the mapped
+ *                        pages. Enable sync to also survive a crash of the operating system, at the cost of a disk
+ *                        flush per append.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class SpillJournal {
+    /** The default maximum backoff in milliseconds between failed drain attempts. */
+    public static final long MAX_BACKOFF = 30000;
+
+    /** The quarantine file name. */
+    public static final String QUARANTINE = "quarantine";
+
+    /** The default segment size. */
+    public static final int SEGMENT_SIZE = 1024 * 1024 * 64;
+
+    /** The segment file suffix. */
+    private static final String SUFFIX = ".journal";
+
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(SpillJournal.class);
+
+    /** The number of records appended since the journal was opened. */
+    private long appendCount;
+
+    /** Indicates that the journal has been closed. */
+    private boolean closed;
+
+    /** The configuration. */
+    private Configuration configuration;
+
+    /** The directory. */
+    private File directory;
+
+    /** The number of puts handed to the dead letter handler or quarantined. */
+    private long deadLetterCount;
+
+    /** The dead letter handler. */
+    private DeadLetterHandler deadLetterHandler;
+
+    /** The number of records drained since the journal was opened. */
+    private long drainCount;
+
+    /** The drainer thread. */
+    private Thread drainer;
+
+    /** The maximum backoff in milliseconds. */
+    private long maxBackoff = MAX_BACKOFF;
+
+    /** The next segment number. */
+    private long nextSegment;
+
+    /** The number of records found when the journal was opened. */
+    private long replayCount;
+
+    /** The retry policy. */
+    private RetryPolicy retryPolicy;
+
+    /** The segment size. */
+    private int segmentSize = SEGMENT_SIZE;
+
+    /** The segments, oldest first. */
+    private Deque<Segment> segments = new ArrayDeque();
+
+    /** Indicates that the drainer has stopped. */
+    private boolean stopped;
+
+    /** Indicates that every append is flushed to disk. */
+    private boolean sync;
+
+    /**
+     * Create a new SpillJournal instance, and start draining any records left by a previous process.
+     *
+     * @param configuration The HBase configuration.
+     * @param directory     The journal directory.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    public SpillJournal (Configuration configuration, File directory)
+    throws IOException {
+        assert configuration != null && directory != null
+             : "configuration == null || directory == null";
+
+        this.configuration = configuration;
+        this.directory     = directory;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory: " + directory);
+        }
+
+        String[] names = directory.list();
+
+        Arrays.sort(names);
+
+        for (String name : names) {
+            if (name.endsWith(SUFFIX)) {
+                Segment segment = new Segment(new File(directory, name), 0);
+
+                replayCount += segment.count();
+                nextSegment  = Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1;
+
+                segments.add(segment);
+            }
+        }
+
+        drainer = new Thread(new Runnable() {
+            public void run () {
+                try {
+                    drain();
+                } finally {
+                    synchronized (SpillJournal.this) {
+                        stopped = true;
+
+                        SpillJournal.this.notifyAll();
+                    }
+                }
+            }
+        }, "simplebase-journal");
+
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Append a batch of puts.
+     *
+     * @param table The table.
+     * @param puts  The puts.
+     *
+     * @return The sequence number of the record, for use with {@link #isDrained}.
+     *
+     * @throws IOException If the record cannot be appended.
+     */
+    public long append (String table, List<Put> puts)
+    throws IOException {
+        assert table != null && puts != null
+             : "table == null || puts == null";
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream      out   = new DataOutputStream(bytes);
+
+        out.writeUTF(table);
+        out.writeInt(puts.size());
+
+        for (Put put : puts) {
+            put.write(out);
+        }
+
+        out.close();
+
+        byte[] record = bytes.toByteArray();
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+
+            Segment segment = segments.peekLast();
+
+            if (segment == null || !segment.writable || !segment.fits(record.length)) {
+                if (segment != null) {
+                    segment.writable = false;
+                }
+
+                segment = new Segment(new File(directory, String.format("%020d", nextSegment++) + SUFFIX),
+                                      Math.max(segmentSize, record.length + 8));
+
+                segments.add(segment);
+            }
+
+            segment.append(record);
+
+            if (sync) {
+                segment.buffer.force();
+            }
+
+            appendCount++;
+
+            notifyAll();
+
+            return replayCount + appendCount;
+        }
+    }
+
+    /**
+     * Wait until every record appended so far has been drained.
+     *
+     * <p>
+     * <strong>Note:</strong> The wait ends early once the journal is closed or its drainer has stopped.
+     * </p>
+     *
+     * @param timeout The timeout in milliseconds.
+     *
+     * @return True if the journal was drained, otherwise false.
+     *
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    public synchronized boolean awaitDrained (long timeout)
+    throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long target   = replayCount + appendCount;
+
+        while (drainCount < target && !closed && !stopped) {
+            long remaining = deadline - System.currentTimeMillis();
+
+            if (remaining <= 0) {
+                return false;
+            }
+
+            wait(remaining);
+        }
+
+        return drainCount >= target;
+    }
+
+    /**
+     * Close this journal.
+     *
+     * <p>
+     * <strong>Note:</strong> Records that have not been drained stay in the journal directory, and are drained when the
+     *                        journal is opened again.
+     * </p>
+     *
+     * @throws InterruptedException If the wait for the drainer is interrupted.
+     */
+    public void close ()
+    throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+
+            notifyAll();
+        }
+
+        drainer.interrupt();
+        drainer.join();
+
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+
+            segments.clear();
+        }
+    }
+
+    /**
+     * Hand puts that could not be drained to the dead letter handler, or to the quarantine file.
+     *
+     * @param table    The table.
+     * @param failures The map of puts to the cause of their last failure.
+     */
+    private void deadLetter (String table, Map<Put,Throwable> failures) {
+        List<Put>         quarantined = new ArrayList();
+        DeadLetterHandler handler;
+
+        synchronized (this) {
+            handler          = deadLetterHandler;
+            deadLetterCount += failures.size();
+        }
+
+        for (Map.Entry<Put,Throwable> entry : failures.entrySet()) {
+            if (handler == null) {
+                quarantined.add(entry.getKey());
+
+                continue;
+            }
+
+            try {
+                handler.handle(table, entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                LOG.error("Dead letter handler failed, quarantining put", e);
+
+                quarantined.add(entry.getKey());
+            }
+        }
+
+        if (!quarantined.isEmpty()) {
+            LOG.error("Quarantining " + quarantined.size() + " puts to table '" + table + "' in "
+                      + new File(directory, QUARANTINE), failures.values().iterator().next());
+
+            try {
+                quarantine(table, quarantined);
+            } catch (IOException e) {
+                LOG.error("Unable to quarantine " + quarantined.size() + " puts to table '" + table + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Drain records until the journal is closed.
+     */
+    private void drain () {
+        while (true) {
+            Record record;
+
+            try {
+                record = next();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IllegalStateException e) {
+                LOG.error("Journal draining stopped", e);
+
+                return;
+            }
+
+            if (record == null) {
+                return;
+            }
+
+            try {
+                if (!drain(record)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            drained(record);
+        }
+    }
+
+    /**
+     * Write a record to its table, retrying failed puts as the retry policy allows.
+     *
+     * @param record The record.
+     *
+     * @return True if the record is finished with, or false if the journal was closed first.
+     *
+     * @throws InterruptedException If a backoff is interrupted.
+     */
+    private boolean drain (Record record)
+    throws InterruptedException {
+        List<Put> pending = record.puts;
+        long      backoff = 0;
+
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            Map<Put,Throwable> failures  = new LinkedHashMap();
+            Map<Put,Throwable> retryable = new LinkedHashMap();
+            RetryPolicy        policy    = getRetryPolicy();
+
+            try {
+                write(record.table, pending);
+
+                if (policy != null) {
+                    policy.recordSuccess(pending.size());
+                }
+
+                return true;
+            } catch (RetriesExhaustedWithDetailsException e) {
+                for (int i = 0; i < e.getNumExceptions(); i++) {
+                    if (e.getCause(i) instanceof DoNotRetryIOException) {
+                        failures.put((Put) e.getRow(i), e.getCause(i));
+                    } else {
+                        retryable.put((Put) e.getRow(i), e.getCause(i));
+                    }
+                }
+
+                if (policy != null) {
+                    policy.recordSuccess(pending.size() - e.getNumExceptions());
+                }
+            } catch (DoNotRetryIOException e) {
+                for (Put put : pending) {
+                    failures.put(put, e);
+                }
+            } catch (IOException e) {
+                for (Put put : pending) {
+                    retryable.put(put, e);
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected failure draining " + pending.size() + " puts to table '" + record.table + "'", e);
+
+                for (Put put : pending) {
+                    failures.put(put, e);
+                }
+            }
+
+            if (policy != null && !retryable.isEmpty() && !policy.withdraw(attempt, retryable.size())) {
+                failures.putAll(retryable);
+                retryable.clear();
+            }
+
+            if (!failures.isEmpty()) {
+                deadLetter(record.table, failures);
+            }
+
+            if (retryable.isEmpty()) {
+                return true;
+            }
+
+            if (policy != null) {
+                backoff = policy.getBackoff(attempt);
+            } else {
+                backoff = Math.min(getMaxBackoff(), Math.max(100, backoff * 2));
+            }
+
+            LOG.warn("Unable to drain " + retryable.size() + " puts to table '" + record.table + "', retrying in "
+                     + backoff + "ms", retryable.values().iterator().next());
+
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+            }
+
+            Thread.sleep(backoff);
+
+            pending = new ArrayList(retryable.keySet());
+        }
+
+        return true;
+    }
+
+    /**
+     * Mark a record as drained.
+     *
+     * @param record The record.
+     */
+    private synchronized void drained (Record record) {
+        record.segment.buffer.putInt(record.position, -record.length);
+
+        drainCount++;
+
+        notifyAll();
+    }
+
+    /**
+     * Retrieve the number of puts handed to the dead letter handler or quarantined.
+     */
+    public synchronized long getDeadLetterCount () {
+        return deadLetterCount;
+    }
+
+    /**
+     * Retrieve the dead letter handler.
+     */
+    public synchronized DeadLetterHandler getDeadLetterHandler () {
+        return deadLetterHandler;
+    }
+
+    /**
+     * Retrieve the maximum backoff between failed drain attempts, used when there is no retry policy.
+     */
+    public synchronized long getMaxBackoff () {
+        return maxBackoff;
+    }
+
+    /**
+     * Retrieve the number of records waiting to be drained.
+     */
+    public synchronized long getPendingCount () {
+        return replayCount + appendCount - drainCount;
+    }
+
+    /**
+     * Retrieve the number of records found when the journal was opened.
+     */
+    public synchronized long getReplayCount () {
+        return replayCount;
+    }
+
+    /**
+     * Retrieve the retry policy.
+     */
+    public synchronized RetryPolicy getRetryPolicy () {
+        return retryPolicy;
+    }
+
+    /**
+     * Indicates that a record has been drained.
+     *
+     * @param sequence The record sequence number returned by {@link #append}.
+     */
+    public synchronized boolean isDrained (long sequence) {
+        return drainCount >= sequence;
+    }
+
+    /**
+     * Indicates that records are being drained, which stops once the journal is closed, or if a record cannot be read.
+     */
+    public synchronized boolean isDraining () {
+        return !closed && !stopped;
+    }
+
+    /**
+     * Indicates that every append is flushed to disk.
+     */
+    public synchronized boolean isSync () {
+        return sync;
+    }
+
+    /**
+     * Retrieve the next record to drain, waiting for one to be appended if necessary.
+     *
+     * @return The record, or null if the journal has been closed.
+     *
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    private synchronized Record next ()
+    throws InterruptedException {
+        while (!closed) {
+            Segment segment = segments.peekFirst();
+
+            if (segment != null) {
+                Record record = segment.next();
+
+                if (record != null) {
+                    return record;
+                }
+
+                if (!segment.writable) {
+                    segments.removeFirst();
+
+                    if (!segment.file.delete()) {
+                        LOG.warn("Unable to delete drained journal segment: " + segment.file);
+                    }
+
+                    continue;
+                }
+            }
+
+            wait();
+        }
+
+        return null;
+    }
+
+    /**
+     * Append puts to the quarantine file.
+     *
+     * <p>
+     * <strong>Note:</strong> Quarantined records use the segment record format, but are never drained.
+     * </p>
+     *
+     * @param table The table.
+     * @param puts  The puts.
+     *
+     * @throws IOException If the puts cannot be written.
+     */
+    private synchronized void quarantine (String table, List<Put> puts)
+    throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream      out   = new DataOutputStream(bytes);
+
+        out.writeUTF(table);
+        out.writeInt(puts.size());
+
+        for (Put put : puts) {
+            put.write(out);
+        }
+
+        out.close();
+
+        DataOutputStream file = new DataOutputStream(new FileOutputStream(new File(directory, QUARANTINE), true));
+
+        try {
+            file.writeInt(bytes.size());
+            bytes.writeTo(file);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Set the dead letter handler.
+     *
+     * @param handler The handler, or null to quarantine puts that cannot be drained.
+     */
+    public synchronized SpillJournal setDeadLetterHandler (DeadLetterHandler handler) {
+        deadLetterHandler = handler;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum backoff between failed drain attempts, used when there is no retry policy.
+     *
+     * @param backoff The backoff in milliseconds.
+     */
+    public synchronized SpillJournal setMaxBackoff (long backoff) {
+        assert backoff > 0
+             : "backoff <= 0";
+
+        maxBackoff = backoff;
+
+        return this;
+    }
+
+    /**
+     * Set the retry policy.
+     *
+     * @param policy The policy, or null to retry failed puts until they succeed.
+     */
+    public synchronized SpillJournal setRetryPolicy (RetryPolicy policy) {
+        retryPolicy = policy;
+
+        return this;
+    }
+
+    /**
+     * Set the segment size.
+     *
+     * <p>
+     * <strong>Note:</strong> This applies to segments created after the call.
+     * </p>
+     *
+     * @param size The size.
+     */
+    public synchronized SpillJournal setSegmentSize (int size) {
+        assert size > 0
+             : "size <= 0";
+
+        segmentSize = size;
+
+        return this;
+    }
+
+    /**
+     * Enable or disable flushing every append to disk.
+     *
+     * @param enabled Whether or not sync is enabled.
+     */
+    public synchronized SpillJournal setSync (boolean enabled) {
+        sync = enabled;
+
+        return this;
+    }
+
+    /**
+     * Write a drained batch of puts to its table.
+     *
+     * @param table The table.
+     * @param puts  The puts.
+     *
+     * @throws IOException If the puts cannot be written.
+     */
+    protected void write (String table, List<Put> puts)
+    throws IOException {
+        HTableInterface _table = TablePool.getInstance().acquire(configuration, table);
+
+        try {
+            _table.put(puts);
+        } finally {
+            TablePool.getInstance().release(_table);
+        }
+    }
+
+    /**
+     * {@link Record} is a record read from a segment.
+     */
+    private static class Record {
+        /** The record length. */
+        int length;
+
+        /** The record position. */
+        int position;
+
+        /** The puts. */
+        List<Put> puts;
+
+        /** The segment. */
+        Segment segment;
+
+        /** The table. */
+        String table;
+    }
+
+    /**
+     * {@link Segment} is a single memory-mapped journal file.
+     */
+    private static class Segment {
+        /** The mapped buffer. */
+        MappedByteBuffer buffer;
+
+        /** The file. */
+        File file;
+
+        /** The read position. */
+        int readPosition;
+
+        /** Indicates that records may be appended. */
+        boolean writable;
+
+        /** The write position. */
+        int writePosition;
+
+        /**
+         * Create a new Segment instance.
+         *
+         * @param file The file.
+         * @param size The size of a new segment, or 0 to open an existing segment for reading.
+         *
+         * @throws IOException If the file cannot be mapped.
+         */
+        Segment (File file, int size)
+        throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                this.buffer   = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                                     size > 0 ? size : raf.length());
+                this.file     = file;
+                this.writable = size > 0;
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Append a record.
+         *
+         * @param record The record.
+         */
+        void append (byte[] record) {
+            buffer.position(writePosition + 4);
+            buffer.put(record);
+
+            // the length goes last, so that a reader never sees a partial record
+            buffer.putInt(writePosition, record.length);
+
+            writePosition += 4 + record.length;
+        }
+
+        /**
+         * Count the records that have not been drained.
+         */
+        long count () {
+            long count    = 0;
+            int  position = 0;
+
+            while (position + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+
+                if (length == 0) {
+                    break;
+                }
+
+                if (length > 0) {
+                    count++;
+                }
+
+                position += 4 + Math.abs(length);
+            }
+
+            return count;
+        }
+
+        /**
+         * Indicates that a record fits in this segment.
+         *
+         * @param length The record length.
+         */
+        boolean fits (int length) {
+            return writePosition + 4 + length <= buffer.capacity();
+        }
+
+        /**
+         * Read the next record that has not been drained.
+         *
+         * @return The record, or null if there is none yet.
+         */
+        Record next () {
+            while (readPosition + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(readPosition);
+
+                if (length == 0) {
+                    return null;
+                }
+
+                if (length < 0) {
+                    readPosition += 4 - length;
+
+                    continue;
+                }
+
+                byte[] bytes = new byte[length];
+
+                buffer.position(readPosition + 4);
+                buffer.get(bytes);
+
+                Record record = new Record();
+
+                record.length   = length;
+                record.position = readPosition;
+                record.segment  = this;
+
+                try {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+                    record.table = in.readUTF();
+                    record.puts  = new ArrayList();
+
+                    for (int i = in.readInt(); i > 0; i--) {
+                        Put put = new Put();
+
+                        put.readFields(in);
+                        record.puts.add(put);
+                    }
+                } catch (IOException e) {
+                    // records are only readable once fully written, so this is corruption
+                    throw new IllegalStateException("Corrupt journal record in " + file + " at " + readPosition, e);
+                }
+
+                readPosition += 4 + length;
+
+                return record;
+            }
+
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HConnectionManager.HConnectionKey;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Threads;
+
+/**
+ * {@link TablePool} is a process-wide, reference-counted pool of HBase configurations, connections and table handles.
+ *
+ * <p>
+ * Writers borrow table handles with {@link #acquire} and hand them back with {@link #release}. Handles for the same
+ * configuration share one connection and one thread pool. Released handles are kept for the next borrower, and are
+ * closed once they have been idle for longer than the idle timeout. A connection is closed once nothing references it
+ * and none of its handles remain.
+ * </p>
+ *
+ * <p>
+ * Connections and table handles are opened outside the lock of the pool, so that a slow lookup of one table never
+ * holds up borrowers of another. When two borrowers race to open the same connection, the first one is kept and the
+ * other is closed.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> Connections are keyed by the connection settings of a configuration, the same way HBase keys
+ *                        its managed connections, so separate configurations that point at the same cluster with the
+ *                        same client settings share one connection.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TablePool {
+    /** The default idle timeout in milliseconds. */
+    public static final long IDLE_TIMEOUT = 60000;
+
+    /** The shared instance. */
+    private static TablePool instance;
+
+    /** The log. */
+    private static final Log LOG = LogFactory.getLog(TablePool.class);
+
+    /** The map of borrowed tables to connection entries. */
+    private Map<HTableInterface,Entry> borrowed = new IdentityHashMap();
+
+    /** The shared default configuration. */
+    private Configuration configuration;
+
+    /** The map of connection keys to connection entries. */
+    private Map<HConnectionKey,Entry> entries = new HashMap();
+
+    /** The idle timeout in milliseconds. */
+    private long idleTimeout = IDLE_TIMEOUT;
+
+    /** The idle handle reaper. */
+    private ScheduledExecutorService reaper;
+
+    /**
+     * Create a new TablePool instance.
+     */
+    TablePool () {
+    }
+
+    /**
+     * Borrow a table handle.
+     *
+     * @param configuration The HBase configuration.
+     * @param table         The table.
+     *
+     * @throws IOException If the table cannot be opened.
+     */
+    public HTableInterface acquire (Configuration configuration, String table)
+    throws IOException {
+        assert configuration != null && table != null
+             : "configuration == null || table == null";
+
+        Entry entry = reference(configuration);
+
+        synchronized (this) {
+            Deque<Idle> idle = entry.idle.get(table);
+
+            if (idle != null && !idle.isEmpty()) {
+                HTableInterface _table = idle.pop().table;
+
+                borrowed.put(_table, entry);
+
+                return _table;
+            }
+        }
+
+        HTableInterface _table;
+
+        try {
+            _table = new HTable(Bytes.toBytes(table), entry.connection, entry.pool);
+        } catch (IOException e) {
+            synchronized (this) {
+                entry.references--;
+            }
+
+            throw e;
+        }
+
+        synchronized (this) {
+            borrowed.put(_table, entry);
+        }
+
+        return _table;
+    }
+
+    /**
+     * Borrow a connection.
+     *
+     * <p>
+     * <strong>Note:</strong> The connection must be handed back with {@link #releaseConnection}, and must not be closed
+     *                        by the borrower.
+     * </p>
+     *
+     * @param configuration The HBase configuration.
+     *
+     * @throws IOException If the connection cannot be established.
+     */
+    public HConnection acquireConnection (Configuration configuration)
+    throws IOException {
+        assert configuration != null
+             : "configuration == null";
+
+        return reference(configuration).connection;
+    }
+
+    /**
+     * Close idle handles that have exceeded the idle timeout, and connections that are no longer referenced.
+     */
+    public synchronized void closeIdle () {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<Entry> entryIterator = entries.values().iterator(); entryIterator.hasNext();) {
+            Entry entry = entryIterator.next();
+
+            for (Iterator<Deque<Idle>> idleIterator = entry.idle.values().iterator(); idleIterator.hasNext();) {
+                Deque<Idle> idle = idleIterator.next();
+
+                // the oldest handles sit at the tail
+                while (!idle.isEmpty() && now - idle.peekLast().since >= idleTimeout) {
+                    close(idle.removeLast().table);
+                }
+
+                if (idle.isEmpty()) {
+                    idleIterator.remove();
+                }
+            }
+
+            if (entry.references == 0 && entry.idle.isEmpty()) {
+                entry.pool.shutdown();
+
+                try {
+                    entry.connection.close();
+                } catch (IOException e) {
+                    LOG.warn("Unable to close connection", e);
+                }
+
+                entryIterator.remove();
+            }
+        }
+
+        if (entries.isEmpty() && reaper != null) {
+            reaper.shutdown();
+
+            reaper = null;
+        }
+    }
+
+    /**
+     * Retrieve the number of borrowed table handles.
+     */
+    public synchronized int getBorrowedCount () {
+        return borrowed.size();
+    }
+
+    /**
+     * Retrieve the shared default HBase configuration.
+     *
+     * <p>
+     * <strong>Note:</strong> The configuration is created once per process, on first use.
+     * </p>
+     */
+    public synchronized Configuration getConfiguration () {
+        if (configuration == null) {
+            configuration = HBaseConfiguration.create();
+        }
+
+        return configuration;
+    }
+
+    /**
+     * Retrieve the number of open connections.
+     */
+    public synchronized int getConnectionCount () {
+        return entries.size();
+    }
+
+    /**
+     * Retrieve the number of idle table handles.
+     */
+    public synchronized int getIdleCount () {
+        int count = 0;
+
+        for (Entry entry : entries.values()) {
+            for (Deque<Idle> idle : entry.idle.values()) {
+                count += idle.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Retrieve the idle timeout in milliseconds.
+     */
+    public synchronized long getIdleTimeout () {
+        return idleTimeout;
+    }
+
+    /**
+     * Retrieve the shared instance.
+     */
+    public static synchronized TablePool getInstance () {
+        if (instance == null) {
+            instance = new TablePool();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Reference the connection entry for a configuration, creating it if necessary.
+     *
+     * <p>
+     * <strong>Note:</strong> The connection is created outside the lock of the pool. If another borrower published a
+     *                        connection for the same settings in the meantime, that one is used and this one is closed.
+     * </p>
+     *
+     * @param configuration The HBase configuration.
+     *
+     * @return The entry, with its reference count already raised.
+     *
+     * @throws IOException If the connection cannot be established.
+     */
+    private Entry reference (Configuration configuration)
+    throws IOException {
+        HConnectionKey key = new HConnectionKey(configuration);
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry != null) {
+                entry.references++;
+
+                return entry;
+            }
+        }
+
+        HConnection connection = HConnectionManager.createConnection(configuration);
+        Entry       entry;
+
+        synchronized (this) {
+            entry = entries.get(key);
+
+            if (entry == null) {
+                entry      = new Entry(connection);
+                connection = null;
+
+                entries.put(key, entry);
+            }
+
+            entry.references++;
+
+            if (reaper == null) {
+                reaper = Executors.newSingleThreadScheduledExecutor(Threads.newDaemonThreadFactory("simplebase-pool"));
+
+                reaper.scheduleWithFixedDelay(new Runnable() {
+                    public void run () {
+                        closeIdle();
+                    }
+                }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close duplicate connection", e);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Hand back a borrowed table handle.
+     *
+     * <p>
+     * <strong>Note:</strong> Pending writes are flushed before the handle is made available to other borrowers.
+     * </p>
+     *
+     * @param table The table.
+     *
+     * @throws IOException If pending writes cannot be flushed.
+     */
+    public synchronized void release (HTableInterface table)
+    throws IOException {
+        assert table != null
+             : "table == null";
+
+        Entry entry = borrowed.remove(table);
+
+        if (entry == null) {
+            throw new IllegalArgumentException("Table was not borrowed from this pool");
+        }
+
+        entry.references--;
+
+        try {
+            table.flushCommits();
+        } catch (IOException e) {
+            // a handle that failed to flush still holds the failed writes
+            close(table);
+
+            throw e;
+        }
+
+        table.setAutoFlush(true);
+
+        String      name = Bytes.toString(table.getTableName());
+        Deque<Idle> idle = entry.idle.get(name);
+
+        if (idle == null) {
+            idle = new ArrayDeque();
+
+            entry.idle.put(name, idle);
+        }
+
+        idle.push(new Idle(table));
+    }
+
+    /**
+     * Hand back a borrowed connection.
+     *
+     * @param connection The connection.
+     */
+    public synchronized void releaseConnection (HConnection connection) {
+        assert connection != null
+             : "connection == null";
+
+        for (Entry entry : entries.values()) {
+            if (entry.connection == connection) {
+                entry.references--;
+
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException("Connection was not borrowed from this pool");
+    }
+
+    /**
+     * Set the idle timeout.
+     *
+     * <p>
+     * <strong>Note:</strong> This takes effect the next time the pool becomes active.
+     * </p>
+     *
+     * @param timeout The timeout in milliseconds.
+     */
+    public synchronized TablePool setIdleTimeout (long timeout) {
+        assert timeout > 0
+             : "timeout <= 0";
+
+        idleTimeout = timeout;
+
+        return this;
+    }
+
+    /**
+     * Close a table handle, logging any error.
+     *
+     * @param table The table.
+     */
+    private static void close (HTableInterface table) {
+        try {
+            table.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close table '" + Bytes.toString(table.getTableName()) + "'", e);
+        }
+    }
+
+    /**
+     * {@link Entry} holds the connection, thread pool and idle handles for a single configuration.
+     */
+    private static class Entry {
+        /** The connection. */
+        HConnection connection;
+
+        /** The map of table names to idle handles, most recently released first. */
+        Map<String,Deque<Idle>> idle = new HashMap();
+
+        /** The table thread pool. */
+        ExecutorService pool = Executors.newCachedThreadPool(Threads.newDaemonThreadFactory("simplebase-table"));
+
+        /** The number of borrowed handles and connections. */
+        int references;
+
+        /**
+         * Create a new Entry instance.
+         *
+         * @param connection The connection.
+         */
+        Entry (HConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * {@link Idle} is an idle table handle.
+     */
+    private static class Idle {
+        /** The time the handle became idle. */
+        long since = System.currentTimeMillis();
+
+        /** The table. */
+        HTableInterface table;
+
+        /**
+         * Create a new Idle instance.
+         *
+         * @param table The table.
+         */
+        Idle (HTableInterface table) {
+            this.table = table;
+        }
+    }
+}
\ No newline at end of file
@@ -16,16 +16,32 @@
 
 package org.simplebase.writer;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
 import org.apache.hadoop.hbase.util.Bytes;
 
 /**
@@ -37,32 +53,142 @@ import org.apache.hadoop.hbase.util.Bytes;
  * </p>
  *
  * <p>
+ * When an {@link AdaptiveBatchController} is set, each flush is timed and the table write buffer size follows the size
+ * chosen by the controller.
+ * </p>
+ *
+ * <p>
+ * Table handles are borrowed from the shared {@link TablePool}, and handed back when this writer is closed. When the
+ * maximum number of open tables has been reached, the least recently used table is flushed and handed back before the
+ * next table is opened.
+ * </p>
+ *
+ * <p>
+ * When region warm-up is enabled, the region location cache of each table is warmed as the table is opened. See
+ * {@link RegionLocations}.
+ * </p>
+ *
+ * <p>
+ * Columns with a {@link MergeOperator} are merged when flushing. Summed columns are sent as a single batch of
+ * <em>Increment</em> operations, one per row, and are dropped from the buffer as soon as they have been added, so that
+ * a flush that fails afterwards never adds them twice. Columns that merge with their stored value are read back with a
+ * single batched <em>Get</em>.
+ * </p>
+ *
+ * <p>
+ * Deletes are sent ahead of the puts of the same flush, in a single batch. They are not retried by the retry policy.
+ * </p>
+ *
+ * <p>
+ * When a {@link RetryPolicy} is set, puts that fail are written again on their own, leaving the puts that succeeded
+ * alone. Puts that cannot be written within the policy are handed to the {@link DeadLetterHandler}, or reported by the
+ * flush when there is none.
+ * </p>
+ *
+ * <p>
+ * When a {@link WriteThrottle} is set, each batch waits for the throttle before it is sent, including retries.
+ * </p>
+ *
+ * <p>
+ * When a {@link SpillJournal} is set and a flush takes longer than the spill latency, the following batches are
+ * appended to the journal instead of waiting on the cluster. Batches go straight to the cluster again once the journal
+ * has drained everything this writer spilled.
+ * </p>
+ *
+ * <p>
  * <strong>Note:</strong> {@link Writer#close} calls {@link TableWriter#flush}.
  * </p>
  *
  * @author Sean Kerr [sean@code-box.org]
  */
 public class TableWriter extends Writer {
+    /** The default maximum number of open tables. */
+    public static final int MAX_OPEN_TABLES = Integer.MAX_VALUE;
+
+    /** The default maximum age of a region snapshot in milliseconds. */
+    public static final long REGION_SNAPSHOT_MAX_AGE = 1000 * 60 * 60;
+
     /** The default table write buffer size. */
     public static final int TABLE_WRITE_BUFFER_SIZE = 1024 * 1024 * 16;
 
     /** The configuration. */
     private Configuration configuration;
 
+    /** The spill journal. */
+    private SpillJournal journal;
+
+    /** The sequence number of the last spilled batch. */
+    private long lastSpill;
+
+    /** The adaptive batch controller. */
+    private AdaptiveBatchController controller;
+
+    /** The number of puts handed to the dead letter handler. */
+    private long deadLetterCount;
+
+    /** The dead letter handler. */
+    private DeadLetterHandler deadLetterHandler;
+
+    /** The names of tables that have been evicted. */
+    private Set<String> evicted = new HashSet();
+
+    /** The number of table evictions. */
+    private long evictionCount;
+
+    /** The maximum number of open tables. */
+    private int maxOpenTables = MAX_OPEN_TABLES;
+
+    /** The region snapshot directory. */
+    private File regionSnapshotDirectory;
+
+    /** The maximum age of a region snapshot in milliseconds. */
+    private long regionSnapshotMaxAge = REGION_SNAPSHOT_MAX_AGE;
+
+    /** Indicates that region warm-up is enabled. */
+    private boolean regionWarmup;
+
+    /** The number of table reopens. */
+    private long reopenCount;
+
+    /** The retry policy. */
+    private RetryPolicy retryPolicy;
+
+    /** The number of spilled puts. */
+    private long spillCount;
+
+    /** The spill latency in milliseconds. */
+    private long spillLatency;
+
+    /** Indicates that batches are being spilled. */
+    private boolean spilling;
+
     /** The currenty active table. */
     private HTableInterface table;
 
-    /** The map of tables. */
-    private Map<String,HTableInterface> tables = new HashMap();
+    /** The currently active table name. */
+    private String tableName;
+
+    /** The map of tables, least recently used first. */
+    private Map<String,HTableInterface> tables = new LinkedHashMap(16, 0.75f, true);
 
     /** The table write buffer size. */
     private int tableWriteBufferSize = TABLE_WRITE_BUFFER_SIZE;
 
+    /** The write throttle. */
+    private WriteThrottle throttle;
+
+    /** The write throttle group. */
+    private String throttleGroup;
+
     /**
      * Create a new TableWriter instance.
+     *
+     * <p>
+     * <strong>Note:</strong> This uses the shared configuration from {@link TablePool#getConfiguration}.
+     * </p>
      */
     public TableWriter () {
-        setConfiguration(HBaseConfiguration.create());
+        setConfiguration(TablePool.getInstance().getConfiguration());
     }
 
     /**
@@ -83,18 +209,93 @@ public class TableWriter extends Writer {
     @Override
     public void close ()
     throws InterruptedException, IOException {
-        flush();
+        try {
+            flush();
+
+            if (getContext() != null) {
+                getContext().setStatus("Closing tables");
+            }
+
+            if (getProgressReporter() != null) {
+                getProgressReporter().flush();
+            }
+        } finally {
+            IOException failure = null;
+
+            // every table goes back to the pool, even when one of them fails to flush
+            for (HTableInterface table : tables.values()) {
+                try {
+                    TablePool.getInstance().release(table);
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+
+            tables.clear();
+
+            table     = null;
+            tableName = null;
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Hand puts that could not be written to the dead letter handler.
+     *
+     * @param failures The map of puts to the cause of their last failure.
+     *
+     * @throws RetriesExhaustedWithDetailsException If there is no dead letter handler.
+     * @throws IOException                           If the dead letter handler fails.
+     */
+    protected void deadLetter (Map<Put,Throwable> failures)
+    throws IOException {
+        if (deadLetterHandler == null) {
+            List<Throwable> causes = new ArrayList(failures.values());
+            List<String>    hosts  = new ArrayList(Collections.nCopies(failures.size(), "unknown"));
+            List<Row>       rows   = new ArrayList(failures.keySet());
+
+            throw new RetriesExhaustedWithDetailsException(causes, rows, hosts);
+        }
+
+        count(WriterCounter.DEAD_LETTERS, failures.size());
+
+        for (Map.Entry<Put,Throwable> entry : failures.entrySet()) {
+            deadLetterHandler.handle(getTableName(), entry.getKey(), entry.getValue());
+
+            deadLetterCount++;
+        }
+    }
+
+    /**
+     * Evict the least recently used table.
+     *
+     * @throws IOException If pending writes cannot be flushed.
+     */
+    protected void evictTable ()
+    throws IOException {
+        Iterator<Map.Entry<String,HTableInterface>> iterator = tables.entrySet().iterator();
+        Map.Entry<String,HTableInterface>           eldest   = iterator.next();
 
         if (getContext() != null) {
-            getContext().setStatus("Closing tables");
+            getContext().setStatus("Evicting table '" + eldest.getKey() + "'");
         }
 
-        for (HTableInterface table : tables.values()) {
-            table.flushCommits();
-            table.close();
+        iterator.remove();
+
+        if (eldest.getValue() == table) {
+            table     = null;
+            tableName = null;
         }
 
-        tables.clear();
+        evicted.add(eldest.getKey());
+        evictionCount++;
+
+        TablePool.getInstance().release(eldest.getValue());
     }
 
     /**
@@ -103,15 +304,158 @@ public class TableWriter extends Writer {
     @Override
     public void flush ()
     throws InterruptedException, IOException {
+        boolean flushed = getDelete() != null;
+
+        if (getDelete() != null) {
+            flushDeletes(Collections.singletonList(getDelete()));
+            setDelete(null);
+        }
+
         if (getPut() != null && !getPut().isEmpty()) {
-            if (getContext() != null) {
-                getContext().setStatus("Flushing put");
+            flushBatch(Collections.singletonList(getPut()));
+            setPut(null);
+
+            flushed = true;
+        }
+
+        if (flushed) {
+            count(WriterCounter.FLUSHES, 1);
+        }
+
+        resetOldestWrite();
+    }
+
+    /**
+     * Write a batch of puts to the currently active table, retrying failed puts according to the retry policy.
+     *
+     * <p>
+     * <strong>Note:</strong> Each batch written is recorded with the adaptive batch controller, as a failure if any of
+     *                        its puts could not be written. Spilled batches are not recorded, as they never reach the
+     *                        cluster.
+     * </p>
+     *
+     * @param batch The puts.
+     *
+     * @throws InterruptedException If the flush is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    protected void flushBatch (List<Put> batch)
+    throws InterruptedException, IOException {
+        if (hasMergeOperators()) {
+            batch = merge(batch);
+        }
+
+        if (journal != null && spill(batch)) {
+            return;
+        }
+
+        Map<Put,Throwable> failures = new LinkedHashMap();
+        List<Put>          pending  = batch;
+        long               start    = System.currentTimeMillis();
+
+        try {
+            for (int attempt = 1; !pending.isEmpty(); attempt++) {
+                try {
+                    if (throttle != null) {
+                        throttle(pending);
+                    }
+
+                    sendBatch(pending);
+
+                    if (retryPolicy != null) {
+                        retryPolicy.recordSuccess(pending.size());
+                    }
+
+                    break;
+                } catch (RetriesExhaustedWithDetailsException e) {
+                    if (retryPolicy == null) {
+                        throw e;
+                    }
+
+                    Map<Put,Throwable> retryable = new LinkedHashMap();
+
+                    for (int i = 0; i < e.getNumExceptions(); i++) {
+                        if (e.getCause(i) instanceof DoNotRetryIOException) {
+                            failures.put((Put) e.getRow(i), e.getCause(i));
+                        } else {
+                            retryable.put((Put) e.getRow(i), e.getCause(i));
+                        }
+                    }
+
+                    retryPolicy.recordSuccess(pending.size() - e.getNumExceptions());
+
+                    if (retryable.isEmpty() || !retryPolicy.withdraw(attempt, retryable.size())) {
+                        failures.putAll(retryable);
+
+                        break;
+                    }
+
+                    count(WriterCounter.RETRIES, retryable.size());
+
+                    Thread.sleep(retryPolicy.getBackoff(attempt));
+
+                    pending = new ArrayList(retryable.keySet());
+                }
             }
+        } catch (IOException e) {
+            recordFailedFlush();
+
+            throw e;
+        }
 
-            table.put(getPut());
+        if (journal != null && System.currentTimeMillis() - start > spillLatency) {
+            spilling = true;
+        }
 
-            setPut(null);
+        if (!failures.isEmpty()) {
+            recordFailedFlush();
+            deadLetter(failures);
+        } else if (controller != null) {
+            long bytes = 0;
+
+            for (Put put : batch) {
+                bytes += put.heapSize();
+            }
+
+            recordFlush(start, batch.size(), bytes);
+        }
+    }
+
+    /**
+     * Write a batch of deletes to the currently active table.
+     *
+     * <p>
+     * <strong>Note:</strong> Spilled puts are stamped as they drain, so the deletes wait until the journal has drained
+     *                        everything this writer spilled, and fail if the journal stops draining first.
+     * </p>
+     *
+     * @param deletes The deletes.
+     *
+     * @throws InterruptedException If the flush is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    protected void flushDeletes (List<Delete> deletes)
+    throws InterruptedException, IOException {
+        while (spilling && lastSpill > 0 && !journal.isDrained(lastSpill)) {
+            if (!journal.isDraining()) {
+                throw new IOException("Spill journal stopped draining with " + journal.getPendingCount() +
+                                      " spilled batches left");
+            }
+
+            count(WriterCounter.DRAIN_WAITS, 1);
+
+            journal.awaitDrained(spillLatency + 1);
         }
+
+        // the table removes deletes from the list as they succeed
+        getTable().delete(new ArrayList(deletes));
+    }
+
+    /**
+     * Retrieve the adaptive batch controller.
+     */
+    public AdaptiveBatchController getAdaptiveBatchController () {
+        return controller;
     }
 
     /**
@@ -122,6 +466,83 @@ public class TableWriter extends Writer {
         return configuration;
     }
 
+    /**
+     * Retrieve the number of puts handed to the dead letter handler.
+     */
+    public long getDeadLetterCount () {
+        return deadLetterCount;
+    }
+
+    /**
+     * Retrieve the dead letter handler.
+     */
+    public DeadLetterHandler getDeadLetterHandler () {
+        return deadLetterHandler;
+    }
+
+    /**
+     * Retrieve the number of table evictions.
+     */
+    public long getEvictionCount () {
+        return evictionCount;
+    }
+
+    /**
+     * Retrieve the maximum number of open tables.
+     */
+    public int getMaxOpenTables () {
+        return maxOpenTables;
+    }
+
+    /**
+     * Retrieve the region snapshot directory.
+     */
+    public File getRegionSnapshotDirectory () {
+        return regionSnapshotDirectory;
+    }
+
+    /**
+     * Retrieve the maximum age of a region snapshot in milliseconds.
+     */
+    public long getRegionSnapshotMaxAge () {
+        return regionSnapshotMaxAge;
+    }
+
+    /**
+     * Retrieve the number of times an evicted table has been opened again.
+     */
+    public long getReopenCount () {
+        return reopenCount;
+    }
+
+    /**
+     * Retrieve the retry policy.
+     */
+    public RetryPolicy getRetryPolicy () {
+        return retryPolicy;
+    }
+
+    /**
+     * Retrieve the number of spilled puts.
+     */
+    public long getSpillCount () {
+        return spillCount;
+    }
+
+    /**
+     * Retrieve the spill journal.
+     */
+    public SpillJournal getSpillJournal () {
+        return journal;
+    }
+
+    /**
+     * Retrieve the spill latency in milliseconds.
+     */
+    public long getSpillLatency () {
+        return spillLatency;
+    }
+
     /**
      * Retrieve the currently active table.
      */
@@ -144,14 +565,239 @@ public class TableWriter extends Writer {
         assert table != null
              : "table == null";
 
-        return Bytes.toString(table.getTableName());
+        return tableName;
     }
 
     /**
      * Retrieve the table write buffer size.
+     *
+     * <p>
+     * <strong>Note:</strong> When an {@link AdaptiveBatchController} is set, this is the size chosen by the controller.
+     * </p>
      */
     public int getTableWriteBufferSize () {
-        return tableWriteBufferSize;
+        return controller != null ? controller.getWriteBufferSize() : tableWriteBufferSize;
+    }
+
+    /**
+     * Retrieve the write throttle.
+     */
+    public WriteThrottle getWriteThrottle () {
+        return throttle;
+    }
+
+    /**
+     * Retrieve the write throttle group.
+     */
+    public String getWriteThrottleGroup () {
+        return throttleGroup;
+    }
+
+    /**
+     * Indicates that region warm-up is enabled.
+     */
+    public boolean isRegionWarmup () {
+        return regionWarmup;
+    }
+
+    /**
+     * Apply merge operators to a batch of puts.
+     *
+     * <p>
+     * <strong>Note:</strong> Summed columns are incremented immediately, and are left out of the returned puts. Once
+     *                        their increment succeeds, they are also removed from the puts of the batch.
+     * </p>
+     *
+     * @param batch The puts.
+     *
+     * @return The puts to write.
+     *
+     * @throws InterruptedException If the increments are interrupted.
+     * @throws IOException          If stored values cannot be read, or columns cannot be incremented.
+     */
+    protected List<Put> merge (List<Put> batch)
+    throws InterruptedException, IOException {
+        List<Get>       gets        = new ArrayList();
+        List<Put>       incremented = new ArrayList();
+        List<Increment> increments  = new ArrayList();
+        List<Put>       merged      = new ArrayList(batch.size());
+        List<Put>       reads       = new ArrayList();
+
+        for (Put put : batch) {
+            Put       copy      = new Put(put.getRow());
+            Get       get       = null;
+            Increment increment = null;
+
+            for (List<KeyValue> cells : put.getFamilyMap().values()) {
+                for (KeyValue cell : cells) {
+                    MergeOperator operator = getMergeOperator(cell.getFamily(), cell.getQualifier());
+
+                    if (operator != null && operator.isIncrement()) {
+                        if (increment == null) {
+                            increment = new Increment(put.getRow());
+                        }
+
+                        increment.addColumn(cell.getFamily(), cell.getQualifier(), Bytes.toLong(cell.getValue()));
+
+                        continue;
+                    }
+
+                    copy.add(cell);
+
+                    if (operator != null && operator.isReadMerge()) {
+                        if (get == null) {
+                            get = new Get(put.getRow());
+                        }
+
+                        get.addColumn(cell.getFamily(), cell.getQualifier());
+                    }
+                }
+            }
+
+            if (increment != null) {
+                incremented.add(put);
+                increments.add(increment);
+            }
+
+            if (!copy.isEmpty()) {
+                merged.add(copy);
+            }
+
+            if (get != null) {
+                gets.add(get);
+                reads.add(copy);
+            }
+        }
+
+        if (!gets.isEmpty()) {
+            Result[] stored = getTable().get(gets);
+
+            for (int i = 0; i < stored.length; i++) {
+                if (stored[i] == null || stored[i].isEmpty()) {
+                    continue;
+                }
+
+                for (KeyValue cell : stored[i].raw()) {
+                    MergeOperator  operator = getMergeOperator(cell.getFamily(), cell.getQualifier());
+                    List<KeyValue> cells    = reads.get(i).getFamilyMap().get(cell.getFamily());
+
+                    for (int j = 0; j < cells.size(); j++) {
+                        KeyValue buffered = cells.get(j);
+
+                        if (buffered.matchingQualifier(cell.getQualifier())) {
+                            cells.set(j, new KeyValue(buffered.getRow(), buffered.getFamily(), buffered.getQualifier(),
+                                                      buffered.getTimestamp(),
+                                                      operator.merge(cell.getValue(), buffered.getValue())));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!increments.isEmpty()) {
+            Object[] results = new Object[increments.size()];
+
+            try {
+                getTable().batch(increments, results);
+            } finally {
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] instanceof Result) {
+                        removeIncrements(incremented.get(i));
+                    }
+                }
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Record a failed flush with the adaptive batch controller, and apply the write buffer size it chooses.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void recordFailedFlush ()
+    throws IOException {
+        if (controller == null) {
+            return;
+        }
+
+        controller.recordFailure();
+
+        if (table != null && table.getWriteBufferSize() != controller.getWriteBufferSize()) {
+            table.setWriteBufferSize(controller.getWriteBufferSize());
+        }
+    }
+
+    /**
+     * Record a completed flush with the adaptive batch controller, and apply the write buffer size it chooses.
+     *
+     * @param start The time the flush started, in milliseconds.
+     * @param puts  The number of puts flushed.
+     * @param bytes The number of bytes flushed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void recordFlush (long start, int puts, long bytes)
+    throws IOException {
+        if (controller == null) {
+            return;
+        }
+
+        controller.record(System.currentTimeMillis() - start, puts, bytes);
+
+        if (table != null && table.getWriteBufferSize() != controller.getWriteBufferSize()) {
+            table.setWriteBufferSize(controller.getWriteBufferSize());
+        }
+    }
+
+    /**
+     * Remove the summed cells of a put, once they have been added to the stored values.
+     *
+     * @param put The put.
+     */
+    private void removeIncrements (Put put) {
+        for (Iterator<List<KeyValue>> families = put.getFamilyMap().values().iterator(); families.hasNext();) {
+            List<KeyValue> cells = families.next();
+
+            for (Iterator<KeyValue> iterator = cells.iterator(); iterator.hasNext();) {
+                KeyValue      cell     = iterator.next();
+                MergeOperator operator = getMergeOperator(cell.getFamily(), cell.getQualifier());
+
+                if (operator != null && operator.isIncrement()) {
+                    iterator.remove();
+                }
+            }
+
+            if (cells.isEmpty()) {
+                families.remove();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of puts to the currently active table, in a single attempt.
+     *
+     * @param batch The puts.
+     *
+     * @throws InterruptedException                  If the write is interrupted.
+     * @throws RetriesExhaustedWithDetailsException If any of the puts could not be written.
+     * @throws IOException                           If an I/O error occurs.
+     */
+    protected void sendBatch (List<Put> batch)
+    throws InterruptedException, IOException {
+        table.put(batch);
+    }
+
+    /**
+     * Set the adaptive batch controller.
+     *
+     * @param controller The controller, or null to use fixed sizes.
+     */
+    public TableWriter setAdaptiveBatchController (AdaptiveBatchController controller) {
+        this.controller = controller;
+
+        return this;
     }
 
     /**
@@ -165,6 +811,89 @@ public class TableWriter extends Writer {
         return this;
     }
 
+    /**
+     * Set the dead letter handler.
+     *
+     * @param handler The handler, or null to fail the flush instead.
+     */
+    public TableWriter setDeadLetterHandler (DeadLetterHandler handler) {
+        deadLetterHandler = handler;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum number of open tables.
+     *
+     * <p>
+     * <strong>Note:</strong> If more tables are already open, the least recently used are evicted the next time a table
+     *                        is opened.
+     * </p>
+     *
+     * @param max The maximum.
+     */
+    public TableWriter setMaxOpenTables (int max) {
+        assert max > 0
+             : "max <= 0";
+
+        maxOpenTables = max;
+
+        return this;
+    }
+
+    /**
+     * Set the region snapshot directory.
+     *
+     * <p>
+     * <strong>Note:</strong> When region warm-up is enabled, region locations are loaded from a snapshot in this
+     *                        directory when one exists and is younger than the maximum age, and saved to it after
+     *                        warming from the meta table otherwise.
+     * </p>
+     *
+     * @param directory The directory, or null to always warm from the meta table.
+     */
+    public TableWriter setRegionSnapshotDirectory (File directory) {
+        regionSnapshotDirectory = directory;
+
+        return this;
+    }
+
+    /**
+     * Set the maximum age of a region snapshot, beyond which region locations are read from the meta table again.
+     *
+     * @param maxAge The maximum age in milliseconds.
+     */
+    public TableWriter setRegionSnapshotMaxAge (long maxAge) {
+        assert maxAge >= 0
+             : "maxAge < 0";
+
+        regionSnapshotMaxAge = maxAge;
+
+        return this;
+    }
+
+    /**
+     * Enable or disable region warm-up.
+     *
+     * @param enabled Whether or not region warm-up is enabled.
+     */
+    public TableWriter setRegionWarmup (boolean enabled) {
+        regionWarmup = enabled;
+
+        return this;
+    }
+
+    /**
+     * Set the retry policy.
+     *
+     * @param policy The policy, or null to fail the flush on the first failure.
+     */
+    public TableWriter setRetryPolicy (RetryPolicy policy) {
+        retryPolicy = policy;
+
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,19 +903,34 @@ public class TableWriter extends Writer {
         assert row != null
              : "row == null";
 
+        row = saltRow(row);
+
         if (getPut() == null || !Arrays.equals(getRow(), row)) {
             flush();
 
-            if (getContext() != null) {
-                getContext().setStatus("Switching row '" + Bytes.toString(row) + "'");
-            }
-
             setPut(new Put(row));
         }
 
         return this;
     }
 
+    /**
+     * Set the spill journal.
+     *
+     * @param journal The journal, or null to always wait on the cluster.
+     * @param latency The flush latency in milliseconds above which batches are spilled.
+     */
+    public TableWriter setSpillJournal (SpillJournal journal, long latency) {
+        assert latency >= 0
+             : "latency < 0";
+
+        this.journal = journal;
+        spillLatency = latency;
+        spilling     = false;
+
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -196,9 +940,9 @@ public class TableWriter extends Writer {
         assert table != null
              : "table == null";
 
-        if (this.table == null || !Arrays.equals(this.table.getTableName(), Bytes.toBytes(table))) {
-            if (getContext() != null) {
-                getContext().setStatus("Switching table '" + table + "'");
+        if (this.table == null || !table.equals(tableName)) {
+            if (getProgressReporter() != null) {
+                getProgressReporter().setTable(table);
             }
 
             flush();
@@ -208,13 +952,26 @@ public class TableWriter extends Writer {
                     getContext().setStatus("Opening table '" + table + "'");
                 }
 
-                HTableInterface _table = new HTable(getConfiguration(), table);
+                while (tables.size() >= maxOpenTables) {
+                    evictTable();
+                }
+
+                if (evicted.remove(table)) {
+                    reopenCount++;
+                }
+
+                HTableInterface _table = TablePool.getInstance().acquire(getConfiguration(), table);
+
+                if (regionWarmup && _table instanceof HTable) {
+                    warmRegions((HTable) _table, table);
+                }
 
                 _table.setWriteBufferSize(getTableWriteBufferSize());
                 tables.put(table, _table);
             }
 
             this.table = tables.get(table);
+            tableName  = table;
         }
 
         return this;
@@ -233,4 +990,108 @@ public class TableWriter extends Writer {
 
         return this;
     }
+
+    /**
+     * Set the write throttle.
+     *
+     * @param throttle The throttle, or null to write at full speed.
+     * @param group    The throttle group, or null for the default group.
+     */
+    public TableWriter setWriteThrottle (WriteThrottle throttle, String group) {
+        this.throttle = throttle;
+        throttleGroup = group;
+
+        return this;
+    }
+
+    /**
+     * Append a batch of puts to the spill journal, if spilling.
+     *
+     * <p>
+     * <strong>Note:</strong> Spilling continues until the journal has drained the last spilled batch, so that batches
+     *                        are never written out of order. A journal without a retry policy or dead letter handler
+     *                        of its own takes those of the first writer that spills to it.
+     * </p>
+     *
+     * @param batch The puts.
+     *
+     * @return True if the batch was spilled, otherwise false.
+     *
+     * @throws IOException If the batch cannot be appended.
+     */
+    protected boolean spill (List<Put> batch)
+    throws IOException {
+        if (spilling && lastSpill > 0 && journal.isDrained(lastSpill)) {
+            lastSpill = 0;
+            spilling  = false;
+        }
+
+        if (!spilling) {
+            return false;
+        }
+
+        count(WriterCounter.SPILLS, 1);
+
+        synchronized (journal) {
+            if (journal.getRetryPolicy() == null) {
+                journal.setRetryPolicy(retryPolicy);
+            }
+
+            if (journal.getDeadLetterHandler() == null) {
+                journal.setDeadLetterHandler(deadLetterHandler);
+            }
+        }
+
+        lastSpill   = journal.append(getTableName(), batch);
+        spillCount += batch.size();
+
+        return true;
+    }
+
+    /**
+     * Wait until the write throttle allows a batch of puts.
+     *
+     * @param batch The puts.
+     *
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    protected void throttle (List<Put> batch)
+    throws InterruptedException {
+        long bytes = 0;
+        long cells = 0;
+
+        for (Put put : batch) {
+            bytes += put.heapSize();
+            cells += put.size();
+        }
+
+        throttle.acquire(throttleGroup, getTableName(), cells, bytes);
+    }
+
+    /**
+     * Warm the region location cache of a table.
+     *
+     * @param table The table.
+     * @param name  The table name.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void warmRegions (HTable table, String name)
+    throws IOException {
+        if (getContext() != null) {
+            getContext().setStatus("Warming regions for table '" + name + "'");
+        }
+
+        File file = regionSnapshotDirectory != null ? new File(regionSnapshotDirectory, name + ".regions") : null;
+
+        if (file != null && RegionLocations.load(table, file, regionSnapshotMaxAge) >= 0) {
+            return;
+        }
+
+        Map<HRegionInfo,ServerName> regions = RegionLocations.warm(table);
+
+        if (file != null) {
+            RegionLocations.save(regions, file);
+        }
+    }
 }
\ No newline at end of file
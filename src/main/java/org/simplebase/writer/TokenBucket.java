@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+/**
+ * {@link TokenBucket} is a token bucket rate limiter.
+ *
+ * <p>
+ * Tokens accumulate at a fixed rate up to the capacity of the bucket. A reservation takes its tokens immediately, even
+ * if that leaves the bucket in debt, and returns the time the caller must wait for the debt to be paid off. This lets a
+ * batch larger than the capacity through without splitting it, while still holding the long-run rate.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TokenBucket {
+    /** The capacity. */
+    private double capacity;
+
+    /** The time of the last refill, in nanoseconds. */
+    private long lastRefill = System.nanoTime();
+
+    /** The refill rate in tokens per second. */
+    private double rate;
+
+    /** The available tokens, negative when in debt. */
+    private double tokens;
+
+    /**
+     * Create a new TokenBucket instance, with a capacity of one second of tokens.
+     *
+     * @param rate The rate in tokens per second.
+     */
+    public TokenBucket (double rate) {
+        this(rate, rate);
+    }
+
+    /**
+     * Create a new TokenBucket instance.
+     *
+     * @param rate     The rate in tokens per second.
+     * @param capacity The capacity.
+     */
+    public TokenBucket (double rate, double capacity) {
+        assert rate > 0 && capacity > 0
+             : "rate <= 0 || capacity <= 0";
+
+        this.capacity = capacity;
+        this.rate     = rate;
+        this.tokens   = capacity;
+    }
+
+    /**
+     * Retrieve the available tokens, negative when in debt.
+     */
+    public synchronized double getAvailable () {
+        refill();
+
+        return tokens;
+    }
+
+    /**
+     * Retrieve the capacity.
+     */
+    public synchronized double getCapacity () {
+        return capacity;
+    }
+
+    /**
+     * Retrieve the rate in tokens per second.
+     */
+    public synchronized double getRate () {
+        return rate;
+    }
+
+    /**
+     * Add the tokens accumulated since the last refill.
+     */
+    private void refill () {
+        long now = System.nanoTime();
+
+        tokens     = Math.min(capacity, tokens + (now - lastRefill) / 1e9 * rate);
+        lastRefill = now;
+    }
+
+    /**
+     * Reserve tokens.
+     *
+     * @param tokens The tokens.
+     *
+     * @return The time in milliseconds the caller must wait before using the tokens.
+     */
+    public synchronized long reserve (double tokens) {
+        assert tokens >= 0
+             : "tokens < 0";
+
+        refill();
+
+        this.tokens -= tokens;
+
+        return this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / rate * 1000);
+    }
+
+    /**
+     * Set the rate.
+     *
+     * <p>
+     * <strong>Note:</strong> The capacity is scaled along with the rate.
+     * </p>
+     *
+     * @param rate The rate in tokens per second.
+     */
+    public synchronized TokenBucket setRate (double rate) {
+        assert rate > 0
+             : "rate <= 0";
+
+        refill();
+
+        capacity  = capacity * rate / this.rate;
+        tokens    = Math.min(capacity, tokens);
+        this.rate = rate;
+
+        return this;
+    }
+}
\ No newline at end of file
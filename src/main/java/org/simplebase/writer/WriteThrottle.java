@@ -0,0 +1,390 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link WriteThrottle} limits the rate at which writers send cells and bytes to the cluster.
+ *
+ * <p>
+ * Writers belong to a group, such as a tenant or a job. Three kinds of limit apply, and a write waits for the
+ * strictest:
+ * </p>
+ *
+ * <ul>
+ *     <li>The shared limit is divided between the groups that have written recently, in proportion to their weights.
+ *         A group that stops writing gives its share back to the others.</li>
+ *     <li>A group limit caps a single group, regardless of its share.</li>
+ *     <li>A table limit caps all writes to a single table, regardless of group.</li>
+ * </ul>
+ *
+ * <p>
+ * Each limit is a pair of {@link TokenBucket}s, one counting cells and one counting bytes.
+ * </p>
+ *
+ * <p>
+ * <strong>Note:</strong> A single {@link WriteThrottle} should be shared by every writer it is meant to balance, such
+ *                        as all writers using the connections of the shared {@link TablePool}.
+ * </p>
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class WriteThrottle {
+    /** The default time in milliseconds a group keeps its share after its last write. */
+    public static final long ACTIVE_WINDOW = 5000;
+
+    /** The default group. */
+    public static final String GROUP = "default";
+
+    /** The default group weight. */
+    public static final int WEIGHT = 1;
+
+    /** The time in milliseconds a group keeps its share after its last write. */
+    private long activeWindow = ACTIVE_WINDOW;
+
+    /** The map of group names to groups. */
+    private Map<String,Group> groups = new HashMap();
+
+    /** The time of the last rebalance, in milliseconds. */
+    private long lastRebalance;
+
+    /** The shared limit. */
+    private Limit limit;
+
+    /** The map of table names to table limits. */
+    private Map<String,Limit> tables = new HashMap();
+
+    /** The number of writes that waited. */
+    private long waitCount;
+
+    /** The total wait time in milliseconds. */
+    private long waitTime;
+
+    /**
+     * Create a new WriteThrottle instance.
+     */
+    public WriteThrottle () {
+    }
+
+    /**
+     * Wait until a write is allowed.
+     *
+     * @param group The group, or null for the default group.
+     * @param table The table.
+     * @param cells The number of cells.
+     * @param bytes The number of bytes.
+     *
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    public void acquire (String group, String table, long cells, long bytes)
+    throws InterruptedException {
+        assert table != null && cells >= 0 && bytes >= 0
+             : "table == null || cells < 0 || bytes < 0";
+
+        long wait = 0;
+
+        synchronized (this) {
+            Group _group = getGroup(group != null ? group : GROUP);
+            Limit _table = tables.get(table);
+            long  now    = System.currentTimeMillis();
+
+            boolean joined = now - _group.lastActive > activeWindow;
+
+            _group.lastActive = now;
+
+            if (joined || now - lastRebalance > activeWindow) {
+                rebalance(now);
+            }
+
+            if (_group.share != null) {
+                wait = Math.max(wait, _group.share.reserve(cells, bytes));
+            }
+
+            if (_group.limit != null) {
+                wait = Math.max(wait, _group.limit.reserve(cells, bytes));
+            }
+
+            if (_table != null) {
+                wait = Math.max(wait, _table.reserve(cells, bytes));
+            }
+
+            if (wait > 0) {
+                waitCount++;
+                waitTime += wait;
+            }
+        }
+
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Retrieve the current cell share of a group, in cells per second.
+     *
+     * @param group The group.
+     *
+     * @return The share, or 0 if the group has no share of the shared limit.
+     */
+    public synchronized double getCellShare (String group) {
+        Group _group = groups.get(group);
+
+        return _group != null && _group.share != null && _group.share.cells != null ? _group.share.cells.getRate() : 0;
+    }
+
+    /**
+     * Retrieve a group, creating it if necessary.
+     *
+     * @param name The group name.
+     */
+    private Group getGroup (String name) {
+        Group group = groups.get(name);
+
+        if (group == null) {
+            group = new Group();
+
+            groups.put(name, group);
+        }
+
+        return group;
+    }
+
+    /**
+     * Retrieve the number of writes that waited.
+     */
+    public synchronized long getWaitCount () {
+        return waitCount;
+    }
+
+    /**
+     * Retrieve the total wait time in milliseconds.
+     */
+    public synchronized long getWaitTime () {
+        return waitTime;
+    }
+
+    /**
+     * Divide the shared limit between the active groups by weight.
+     *
+     * @param now The current time in milliseconds.
+     */
+    private void rebalance (long now) {
+        lastRebalance = now;
+
+        if (limit == null) {
+            return;
+        }
+
+        int weights = 0;
+
+        for (Group group : groups.values()) {
+            if (now - group.lastActive <= activeWindow) {
+                weights += group.weight;
+            }
+        }
+
+        for (Group group : groups.values()) {
+            if (now - group.lastActive <= activeWindow) {
+                double fraction = (double) group.weight / weights;
+
+                if (group.share == null) {
+                    group.share = new Limit(limit.cellRate * fraction, limit.byteRate * fraction);
+                } else {
+                    group.share.setRates(limit.cellRate * fraction, limit.byteRate * fraction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the time a group keeps its share after its last write.
+     *
+     * @param window The window in milliseconds.
+     */
+    public synchronized WriteThrottle setActiveWindow (long window) {
+        assert window > 0
+             : "window <= 0";
+
+        activeWindow = window;
+
+        return this;
+    }
+
+    /**
+     * Set the limit of a group.
+     *
+     * @param group The group.
+     * @param cells The limit in cells per second, or 0 for no limit.
+     * @param bytes The limit in bytes per second, or 0 for no limit.
+     */
+    public synchronized WriteThrottle setGroupLimit (String group, double cells, double bytes) {
+        assert group != null && cells >= 0 && bytes >= 0
+             : "group == null || cells < 0 || bytes < 0";
+
+        getGroup(group).limit = cells > 0 || bytes > 0 ? new Limit(cells, bytes) : null;
+
+        return this;
+    }
+
+    /**
+     * Set the weight of a group.
+     *
+     * @param group  The group.
+     * @param weight The weight.
+     */
+    public synchronized WriteThrottle setGroupWeight (String group, int weight) {
+        assert group != null && weight > 0
+             : "group == null || weight <= 0";
+
+        getGroup(group).weight = weight;
+
+        rebalance(System.currentTimeMillis());
+
+        return this;
+    }
+
+    /**
+     * Set the shared limit.
+     *
+     * @param cells The limit in cells per second, or 0 for no limit.
+     * @param bytes The limit in bytes per second, or 0 for no limit.
+     */
+    public synchronized WriteThrottle setLimit (double cells, double bytes) {
+        assert cells >= 0 && bytes >= 0
+             : "cells < 0 || bytes < 0";
+
+        limit = cells > 0 || bytes > 0 ? new Limit(cells, bytes) : null;
+
+        for (Group group : groups.values()) {
+            group.share = null;
+        }
+
+        rebalance(System.currentTimeMillis());
+
+        return this;
+    }
+
+    /**
+     * Set the limit of a table.
+     *
+     * @param table The table.
+     * @param cells The limit in cells per second, or 0 for no limit.
+     * @param bytes The limit in bytes per second, or 0 for no limit.
+     */
+    public synchronized WriteThrottle setTableLimit (String table, double cells, double bytes) {
+        assert table != null && cells >= 0 && bytes >= 0
+             : "table == null || cells < 0 || bytes < 0";
+
+        if (cells > 0 || bytes > 0) {
+            tables.put(table, new Limit(cells, bytes));
+        } else {
+            tables.remove(table);
+        }
+
+        return this;
+    }
+
+    /**
+     * {@link Group} holds the weight, share and limit of a single group.
+     */
+    private static class Group {
+        /** The time of the last write, in milliseconds. */
+        long lastActive = Long.MIN_VALUE / 2;
+
+        /** The group limit. */
+        Limit limit;
+
+        /** The share of the shared limit. */
+        Limit share;
+
+        /** The weight. */
+        int weight = WEIGHT;
+    }
+
+    /**
+     * {@link Limit} is a pair of cell and byte rate limits.
+     */
+    private static class Limit {
+        /** The byte rate in bytes per second, or 0 for no limit. */
+        double byteRate;
+
+        /** The byte bucket. */
+        TokenBucket bytes;
+
+        /** The cell rate in cells per second, or 0 for no limit. */
+        double cellRate;
+
+        /** The cell bucket. */
+        TokenBucket cells;
+
+        /**
+         * Create a new Limit instance.
+         *
+         * @param cellRate The cell rate in cells per second, or 0 for no limit.
+         * @param byteRate The byte rate in bytes per second, or 0 for no limit.
+         */
+        Limit (double cellRate, double byteRate) {
+            this.byteRate = byteRate;
+            this.bytes    = byteRate > 0 ? new TokenBucket(byteRate) : null;
+            this.cellRate = cellRate;
+            this.cells    = cellRate > 0 ? new TokenBucket(cellRate) : null;
+        }
+
+        /**
+         * Reserve cells and bytes.
+         *
+         * @param cells The number of cells.
+         * @param bytes The number of bytes.
+         *
+         * @return The time in milliseconds the caller must wait.
+         */
+        long reserve (long cells, long bytes) {
+            long wait = 0;
+
+            if (this.cells != null) {
+                wait = Math.max(wait, this.cells.reserve(cells));
+            }
+
+            if (this.bytes != null) {
+                wait = Math.max(wait, this.bytes.reserve(bytes));
+            }
+
+            return wait;
+        }
+
+        /**
+         * Set the rates, keeping any debt.
+         *
+         * @param cellRate The cell rate in cells per second.
+         * @param byteRate The byte rate in bytes per second.
+         */
+        void setRates (double cellRate, double byteRate) {
+            if (cells != null) {
+                cells.setRate(cellRate);
+            }
+
+            if (bytes != null) {
+                bytes.setRate(byteRate);
+            }
+
+            this.byteRate = byteRate;
+            this.cellRate = cellRate;
+        }
+    }
+}
\ No newline at end of file
@@ -16,9 +16,22 @@
 
 package org.simplebase.writer;
 
+import org.simplebase.codec.PackedRecord;
+import org.simplebase.codec.QualifierAliases;
+import org.simplebase.codec.ValueCodec;
+import org.simplebase.codec.ValueCodecs;
+import org.simplebase.key.KeyEncoder;
+import org.simplebase.key.KeySalt;
+
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
@@ -37,24 +50,136 @@ import org.apache.hadoop.mapreduce.TaskInputOutputContext;
  * underlying <em>Put</em> operation is written is implementation specific.
  * </p>
  *
+ * <p>
+ * Columns, column families and rows can be deleted with {@link #deleteColumn}, {@link #deleteFamily} and
+ * {@link #deleteRow}. Deleted cells that have not been written yet are cancelled, and are never sent. Each delete is
+ * stamped with a timestamp that never goes backwards, and from the first delete on every cell is stamped by the same
+ * clock, after the last delete, so that writes and deletes take effect in the order they were made, even when they are
+ * sent together, and even when the clock of the writer is ahead of the clock of the cluster.
+ * </p>
+ *
+ * <p>
+ * Rows can be spread across regions with a {@link KeySalt}, set with {@link #setKeySalt}. Every row handed to
+ * {@link #setRow} is salted, and the currently active operations hold the salted row.
+ * </p>
+ *
  * @author Sean Kerr [sean@code-box.org]
  */
 public abstract class Writer {
+    /** The qualifier aliases. */
+    private QualifierAliases aliases;
+
+    /** The value codecs. */
+    private ValueCodecs codecs;
+
     /** The context. */
     private TaskInputOutputContext context;
 
+    /** The currently active delete operation. */
+    private Delete delete;
+
     /** The default column family. */
     private byte[] family;
 
+    /** The key salt. */
+    private KeySalt keySalt;
+
+    /** The map of column families to qualifiers to merge operators. */
+    private Map<byte[],Map<byte[],MergeOperator>> operators = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+    /** The time of the oldest write since the last flush, in milliseconds, or 0 if there is none. */
+    private long oldestWrite;
+
     /** The currently active put operation. */
     private Put put;
 
+    /** The progress reporter. */
+    private ProgressReporter reporter;
+
+    /** The key salt of the currently active row. */
+    private KeySalt rowSalt;
+
+    /** The last timestamp handed out. */
+    private long timestamp;
+
     /**
      * Create a new Writer instance.
      */
     public Writer () {
     }
 
+    /**
+     * Add a value to the currently active <em>Put</em> operation.
+     *
+     * <p>
+     * <strong>Note:</strong> Every write method ends here, which makes this the place to intercept values.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param value     The value.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected synchronized Writer add (byte[] family, byte[] qualifier, byte[] value)
+    throws IOException {
+        assert put != null
+             : "put == null";
+
+        recordWrite();
+
+        if (aliases != null && qualifier.length > 0) {
+            // every written qualifier is defined, so that no process stores it under its full name
+            qualifier = aliases.define(qualifier);
+        }
+
+        MergeOperator operator = getMergeOperator(family, qualifier);
+
+        if (operator != null) {
+            value = operator.encode(value);
+
+            List<KeyValue> cells = put.getFamilyMap().get(family);
+
+            if (cells != null) {
+                for (Iterator<KeyValue> iterator = cells.iterator(); iterator.hasNext();) {
+                    KeyValue cell = iterator.next();
+
+                    if (cell.matchingQualifier(qualifier)) {
+                        value = operator.merge(cell.getValue(), value);
+
+                        iterator.remove();
+
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (timestamp > 0) {
+            // once deletes are in use, cells are stamped by the same clock, so that they outlive every delete so far
+            put.add(family, qualifier, Math.max(System.currentTimeMillis(), timestamp + 1), value);
+        } else {
+            put.add(family, qualifier, value);
+        }
+
+        if (reporter != null) {
+            reporter.countCell(qualifier.length + value.length);
+        }
+
+        return this;
+    }
+
+    /**
+     * Retrieve the qualifier that is stored for a qualifier.
+     *
+     * @param qualifier The qualifier.
+     *
+     * @return The alias of the qualifier, or the qualifier itself if it has none.
+     */
+    protected byte[] aliasQualifier (byte[] qualifier) {
+        return aliases != null ? aliases.alias(qualifier) : qualifier;
+    }
+
     /**
      * Close this writer.
      *
@@ -66,6 +191,105 @@ public abstract class Writer {
     public abstract void close ()
     throws InterruptedException, IOException;
 
+    /**
+     * Add to a counter of the progress reporter, if there is one.
+     *
+     * @param counter The counter.
+     * @param amount  The amount.
+     */
+    protected void count (WriterCounter counter, long amount) {
+        if (reporter != null) {
+            reporter.count(counter, amount);
+        }
+    }
+
+    /**
+     * Delete all versions of a column in the default column family of the currently active row.
+     *
+     * @param qualifier The qualifier.
+     */
+    public Writer deleteColumn (byte[] qualifier) {
+        return deleteColumn(family, qualifier);
+    }
+
+    /**
+     * Delete all versions of a column of the currently active row.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     */
+    public synchronized Writer deleteColumn (byte[] family, byte[] qualifier) {
+        assert put != null && family != null && qualifier != null
+             : "put == null || family == null || qualifier == null";
+
+        recordWrite();
+
+        qualifier = aliasQualifier(qualifier);
+
+        List<KeyValue> cells = put.getFamilyMap().get(family);
+
+        if (cells != null) {
+            for (Iterator<KeyValue> iterator = cells.iterator(); iterator.hasNext();) {
+                if (iterator.next().matchingQualifier(qualifier)) {
+                    iterator.remove();
+                }
+            }
+
+            if (cells.isEmpty()) {
+                put.getFamilyMap().remove(family);
+            }
+        }
+
+        if (!isDeleted(family, qualifier)) {
+            openDelete().deleteColumns(family, qualifier, nextTimestamp());
+            count(WriterCounter.DELETES, 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * Delete a column family of the currently active row.
+     *
+     * @param family The column family.
+     */
+    public synchronized Writer deleteFamily (byte[] family) {
+        assert put != null && family != null
+             : "put == null || family == null";
+
+        recordWrite();
+
+        put.getFamilyMap().remove(family);
+
+        if (!isDeleted(family, null)) {
+            openDelete().deleteFamily(family, nextTimestamp());
+            count(WriterCounter.DELETES, 1);
+        }
+
+        return this;
+    }
+
+    /**
+     * Delete the currently active row.
+     */
+    public synchronized Writer deleteRow () {
+        assert put != null
+             : "put == null";
+
+        recordWrite();
+
+        put.getFamilyMap().clear();
+
+        Delete delete = new Delete(put.getRow());
+
+        delete.setTimestamp(nextTimestamp());
+
+        setDelete(delete);
+        count(WriterCounter.DELETES, 1);
+
+        return this;
+    }
+
     /**
      * Flush this writer.
      *
@@ -79,6 +303,44 @@ public abstract class Writer {
     public abstract void flush ()
     throws InterruptedException, IOException;
 
+    /**
+     * Flush this writer if the oldest write since the last flush is at least a given age.
+     *
+     * <p>
+     * <strong>Note:</strong> The currently active row is opened again after flushing, with the key salt it was opened
+     *                        with, so that the thread writing to this writer can carry on with the row.
+     * </p>
+     *
+     * @param age The age in milliseconds.
+     *
+     * @throws InterruptedException If an operation is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    synchronized void flushExpired (long age)
+    throws InterruptedException, IOException {
+        if (oldestWrite == 0 || System.currentTimeMillis() - oldestWrite < age) {
+            return;
+        }
+
+        byte[] row = put != null ? put.getRow() : null;
+
+        flush();
+
+        oldestWrite = 0;
+
+        if (row != null && getPut() == null) {
+            KeySalt salt = keySalt;
+
+            keySalt = rowSalt;
+
+            try {
+                setRow(rowSalt != null ? rowSalt.unsalt(row) : row);
+            } finally {
+                keySalt = salt;
+            }
+        }
+    }
+
     /**
      * Retrieve the default column family.
      */
@@ -98,6 +360,64 @@ public abstract class Writer {
         return context;
     }
 
+    /**
+     * Retrieve the currently active <em>Delete</em> operation.
+     *
+     * @return The delete, or null if nothing has been deleted from the currently active row.
+     */
+    public Delete getDelete () {
+        return delete;
+    }
+
+    /**
+     * Retrieve the key salt.
+     *
+     * @return The key salt, or null if rows are not salted.
+     */
+    public KeySalt getKeySalt () {
+        return keySalt;
+    }
+
+    /**
+     * Retrieve the merge operator of a column.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier, or its alias.
+     *
+     * @return The merge operator, or null if the column has none.
+     */
+    public MergeOperator getMergeOperator (byte[] family, byte[] qualifier) {
+        assert family != null && qualifier != null
+             : "family == null || qualifier == null";
+
+        Map<byte[],MergeOperator> qualifiers = operators.get(family);
+
+        if (qualifiers == null) {
+            return null;
+        }
+
+        // buffered cells carry aliases, and operators are declared by qualifier
+        return qualifiers.get(aliases != null ? aliases.resolve(qualifier) : qualifier);
+    }
+
+    /**
+     * Retrieve the time of the oldest write since the last flush.
+     *
+     * @return The time in milliseconds, or 0 if nothing has been written since the last flush.
+     */
+    public synchronized long getOldestWrite () {
+        return oldestWrite;
+    }
+
+    /**
+     * Retrieve the progress reporter.
+     *
+     * @return The progress reporter, or null if no context has been set.
+     */
+    public ProgressReporter getProgressReporter () {
+        return reporter;
+    }
+
     /**
      * Retrieve the currently active <em>Put</em> operation.
      */
@@ -106,7 +426,16 @@ public abstract class Writer {
     }
 
     /**
-     * Retrieve the currently active row.
+     * Retrieve the qualifier aliases.
+     *
+     * @return The qualifier aliases, or null if qualifiers are stored as they are.
+     */
+    public QualifierAliases getQualifierAliases () {
+        return aliases;
+    }
+
+    /**
+     * Retrieve the currently active row, which is salted if there is a key salt.
      */
     public byte[] getRow () {
         assert put != null
@@ -120,6 +449,125 @@ public abstract class Writer {
      */
     public abstract String getTableName ();
 
+    /**
+     * Retrieve the value codec of a column.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     *
+     * @return The value codec, or null if the column has none.
+     */
+    private ValueCodec getValueCodec (byte[] family, byte[] qualifier) {
+        return codecs != null ? codecs.get(family, qualifier) : null;
+    }
+
+    /**
+     * Retrieve the value codecs.
+     *
+     * @return The value codecs, or null if values are written in their fixed width form.
+     */
+    public ValueCodecs getValueCodecs () {
+        return codecs;
+    }
+
+    /**
+     * Indicates that any column has a merge operator.
+     */
+    public boolean hasMergeOperators () {
+        return !operators.isEmpty();
+    }
+
+    /**
+     * Indicates that a column, or a column family, is already deleted by the currently active <em>Delete</em>
+     * operation.
+     *
+     * <p>
+     * <strong>Note:</strong> Anything written to the row since that delete is still buffered, and has been cancelled,
+     *                        so a second delete would have nothing left to delete.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier, or null for the column family.
+     */
+    private boolean isDeleted (byte[] family, byte[] qualifier) {
+        if (delete == null) {
+            return false;
+        }
+
+        if (delete.getFamilyMap().isEmpty()) {
+            return true;
+        }
+
+        List<KeyValue> markers = delete.getFamilyMap().get(family);
+
+        for (int i = 0; markers != null && i < markers.size(); i++) {
+            if (markers.get(i).isDeleteFamily() ||
+                (qualifier != null && markers.get(i).matchingQualifier(qualifier))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Retrieve the next delete timestamp.
+     *
+     * <p>
+     * <strong>Note:</strong> Delete timestamps follow the clock, but never repeat or go backwards. Cells written after
+     *                        the first delete are stamped by the same clock, after the last delete.
+     * </p>
+     */
+    private long nextTimestamp () {
+        timestamp = Math.max(System.currentTimeMillis(), timestamp + 1);
+
+        return timestamp;
+    }
+
+    /**
+     * Retrieve the currently active <em>Delete</em> operation, creating it if there is none.
+     */
+    private Delete openDelete () {
+        if (delete == null) {
+            setDelete(new Delete(put.getRow()));
+        }
+
+        return delete;
+    }
+
+    /**
+     * Record the time of a write, if it is the oldest write since the last flush.
+     */
+    private void recordWrite () {
+        if (oldestWrite == 0) {
+            oldestWrite = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Forget the oldest write, once everything written has been flushed.
+     */
+    protected synchronized void resetOldestWrite () {
+        oldestWrite = 0;
+    }
+
+    /**
+     * Salt a row with the key salt.
+     *
+     * <p>
+     * <strong>Note:</strong> Implementations of {@link #setRow} call this before anything else.
+     * </p>
+     *
+     * @param row The row.
+     *
+     * @return The salted row, or the row if there is no key salt.
+     */
+    protected byte[] saltRow (byte[] row) {
+        rowSalt = keySalt;
+
+        return rowSalt != null ? rowSalt.salt(row) : row;
+    }
+
     /**
      * Set the default column family.
      *
@@ -134,6 +582,13 @@ public abstract class Writer {
     /**
      * Set the context.
      *
+     * <p>
+     * <strong>Note:</strong> The progress of this writer is reported to the context by a {@link ProgressReporter},
+     *                        which counts cells, deletes, flushes, rows, retries and spills through the
+     *                        {@link WriterCounter} counters, and sets the status of the task at most once per
+     *                        {@link ProgressReporter#INTERVAL}.
+     * </p>
+     *
      * @param context The context.
      */
     public Writer setContext (TaskInputOutputContext context) {
@@ -141,6 +596,87 @@ public abstract class Writer {
              : "context == null";
 
         this.context = context;
+        reporter     = new ProgressReporter(context);
+
+        return this;
+    }
+
+    /**
+     * Set the currently active <em>Delete</em> operation.
+     *
+     * @param delete The delete, or null if nothing has been deleted from the currently active row.
+     */
+    protected Writer setDelete (Delete delete) {
+        this.delete = delete;
+
+        return this;
+    }
+
+    /**
+     * Set the key salt.
+     *
+     * <p>
+     * <strong>Note:</strong> The key salt applies to rows set from this point on.
+     * </p>
+     *
+     * @param salt The key salt, or null to stop salting rows.
+     */
+    public Writer setKeySalt (KeySalt salt) {
+        keySalt = salt;
+
+        return this;
+    }
+
+    /**
+     * Set the merge operator of a column in the default column family.
+     *
+     * @param qualifier The qualifier.
+     * @param operator  The merge operator, or null to remove it.
+     */
+    public Writer setMergeOperator (byte[] qualifier, MergeOperator operator) {
+        return setMergeOperator(family, qualifier, operator);
+    }
+
+    /**
+     * Set the merge operator of a column.
+     *
+     * <p>
+     * <strong>Note:</strong> Writes to the column are merged from this point on. See {@link MergeOperator}.
+     * </p>
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param operator  The merge operator, or null to remove it.
+     *
+     * @throws IllegalArgumentException If the operator merges fixed width values, and the column has a value codec.
+     */
+    public synchronized Writer setMergeOperator (byte[] family, byte[] qualifier, MergeOperator operator) {
+        assert family != null && qualifier != null
+             : "family == null || qualifier == null";
+
+        if (operator != null && (operator.isIncrement() || operator.isReadMerge()) &&
+            getValueCodec(family, qualifier) != null) {
+            throw new IllegalArgumentException("Merge operator cannot be combined with a value codec: " +
+                                               Bytes.toString(qualifier));
+        }
+
+        Map<byte[],MergeOperator> qualifiers = operators.get(family);
+
+        if (qualifiers == null) {
+            qualifiers = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+            operators.put(family, qualifiers);
+        }
+
+        if (operator != null) {
+            qualifiers.put(qualifier, operator);
+        } else {
+            qualifiers.remove(qualifier);
+
+            if (qualifiers.isEmpty()) {
+                operators.remove(family);
+            }
+        }
 
         return this;
     }
@@ -151,6 +687,26 @@ public abstract class Writer {
     protected Writer setPut (Put put) {
         this.put = put;
 
+        if (put != null && reporter != null) {
+            reporter.countRow(put.getRow());
+        }
+
+        return this;
+    }
+
+    /**
+     * Set the qualifier aliases, which shorten the qualifiers that are stored.
+     *
+     * <p>
+     * <strong>Note:</strong> An alias is defined for every qualifier written, and the models that read the columns
+     *                        must be handed the same qualifier aliases.
+     * </p>
+     *
+     * @param aliases The qualifier aliases, or null to store qualifiers as they are.
+     */
+    public Writer setQualifierAliases (QualifierAliases aliases) {
+        this.aliases = aliases;
+
         return this;
     }
 
@@ -165,6 +721,35 @@ public abstract class Writer {
     public abstract Writer setRow (byte[] row)
     throws InterruptedException, IOException;
 
+    /**
+     * Set the currently active row to an encoded key.
+     *
+     * <p>
+     * <strong>Note:</strong> The key is only copied when it differs from the currently active row, so the encoder can
+     *                        be reset and reused for every write.
+     * </p>
+     *
+     * @param key The key encoder.
+     *
+     * @throws InterruptedException If an operation is interrupted.
+     * @throws IOException          If an I/O error occurs.
+     */
+    public Writer setRow (KeyEncoder key)
+    throws InterruptedException, IOException {
+        assert key != null
+             : "key == null";
+
+        byte[] row    = put != null ? put.getRow() : null;
+        int    offset = rowSalt != null ? rowSalt.getPrefixLength() : 0;
+
+        if (row != null && rowSalt == keySalt &&
+            Bytes.equals(row, offset, row.length - offset, key.getBuffer(), 0, key.getLength())) {
+            return this;
+        }
+
+        return setRow(key.toBytes());
+    }
+
     /**
      * Set the currently active row.
      *
@@ -197,6 +782,37 @@ public abstract class Writer {
     public abstract Writer setTableName (String table)
     throws InterruptedException, IOException;
 
+    /**
+     * Set the value codecs, which encode the binary booleans and numbers written to their columns.
+     *
+     * <p>
+     * <strong>Note:</strong> The models that read the columns must be handed the same value codecs.
+     * </p>
+     *
+     * @param codecs The value codecs, or null to write values in their fixed width form.
+     *
+     * @throws IllegalArgumentException If a column with a value codec has a merge operator that merges fixed width
+     *                                  values.
+     */
+    public synchronized Writer setValueCodecs (ValueCodecs codecs) {
+        for (Map.Entry<byte[],Map<byte[],MergeOperator>> family : operators.entrySet()) {
+            for (Map.Entry<byte[],MergeOperator> column : family.getValue().entrySet()) {
+                MergeOperator operator = column.getValue();
+
+                // the operators add and compare values in their fixed width form, which a codec replaces
+                if (codecs != null && (operator.isIncrement() || operator.isReadMerge()) &&
+                    codecs.get(family.getKey(), column.getKey()) != null) {
+                    throw new IllegalArgumentException("Value codec cannot be combined with a merge operator: " +
+                                                       Bytes.toString(column.getKey()));
+                }
+            }
+        }
+
+        this.codecs = codecs;
+
+        return this;
+    }
+
     /**
      * Write a binary boolean.
      *
@@ -225,7 +841,9 @@ public abstract class Writer {
      */
     public Writer writeBoolean (byte[] family, byte[] qualifier, boolean value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeBoolean(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -258,7 +876,7 @@ public abstract class Writer {
      */
     public Writer writeBooleanS (byte[] family, byte[] qualifier, boolean value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value ? "true" : "false"));
+        add(family, qualifier, Bytes.toBytes(value ? "true" : "false"));
 
         return this;
     }
@@ -294,7 +912,7 @@ public abstract class Writer {
         assert family != null && qualifier != null && value != null
              : "family == null || qualifer == null || value == null";
 
-        put.add(family, qualifier, value);
+        add(family, qualifier, value);
 
         return this;
     }
@@ -327,7 +945,9 @@ public abstract class Writer {
      */
     public Writer writeDouble (byte[] family, byte[] qualifier, double value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeDouble(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -360,7 +980,7 @@ public abstract class Writer {
      */
     public Writer writeDoubleS (byte[] family, byte[] qualifier, double value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+        add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
 
         return this;
     }
@@ -393,7 +1013,9 @@ public abstract class Writer {
      */
     public Writer writeFloat (byte[] family, byte[] qualifier, float value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeDouble(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -426,7 +1048,7 @@ public abstract class Writer {
      */
     public Writer writeFloatS (byte[] family, byte[] qualifier, float value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+        add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
 
         return this;
     }
@@ -459,7 +1081,9 @@ public abstract class Writer {
      */
     public Writer writeInt (byte[] family, byte[] qualifier, int value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeLong(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -492,7 +1116,7 @@ public abstract class Writer {
      */
     public Writer writeIntS (byte[] family, byte[] qualifier, int value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+        add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
 
         return this;
     }
@@ -525,7 +1149,9 @@ public abstract class Writer {
      */
     public Writer writeLong (byte[] family, byte[] qualifier, long value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeLong(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -558,7 +1184,43 @@ public abstract class Writer {
      */
     public Writer writeLongS (byte[] family, byte[] qualifier, long value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+        add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+
+        return this;
+    }
+
+    /**
+     * Write a packed record.
+     *
+     * <p>
+     * <strong>Note:</strong> This assumes {@link #setColumnFamily} has been called.
+     * </p>
+     *
+     * @param qualifier The qualifier.
+     * @param record    The record.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public Writer writeRecord (byte[] qualifier, PackedRecord record)
+    throws IOException {
+        return writeRecord(family, qualifier, record);
+    }
+
+    /**
+     * Write a packed record, which stores all of its fields in a single cell.
+     *
+     * @param family    The column family.
+     * @param qualifier The qualifier.
+     * @param record    The record.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public Writer writeRecord (byte[] family, byte[] qualifier, PackedRecord record)
+    throws IOException {
+        assert family != null && qualifier != null && record != null
+             : "family == null || qualifier == null || record == null";
+
+        add(family, qualifier, record.toBytes());
 
         return this;
     }
@@ -591,7 +1253,9 @@ public abstract class Writer {
      */
     public Writer writeShort (byte[] family, byte[] qualifier, short value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(value));
+        ValueCodec codec = getValueCodec(family, qualifier);
+
+        add(family, qualifier, codec != null ? codec.encodeLong(value) : Bytes.toBytes(value));
 
         return this;
     }
@@ -624,7 +1288,7 @@ public abstract class Writer {
      */
     public Writer writeShortS (byte[] family, byte[] qualifier, short value)
     throws IOException {
-        put.add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
+        add(family, qualifier, Bytes.toBytes(String.valueOf(value)));
 
         return this;
     }
@@ -660,7 +1324,7 @@ public abstract class Writer {
         assert family != null && qualifier != null && value != null
              : "family == null || qualifer == null || value == null";
 
-        put.add(family, qualifier, Bytes.toBytes(value));
+        add(family, qualifier, Bytes.toBytes(value));
 
         return this;
     }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.writer;
+
+/**
+ * {@link WriterCounter} represents a Hadoop counter reported by the {@link ProgressReporter} of a {@link Writer}.
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public enum WriterCounter {
+    /** The number of qualifier and value bytes written. */
+    BYTES,
+
+    /** The number of cells written. */
+    CELLS,
+
+    /** The number of puts handed to the dead letter handler. */
+    DEAD_LETTERS,
+
+    /** The number of columns, column families and rows deleted. */
+    DELETES,
+
+    /** The number of waits for the spill journal to drain before deletes are written. */
+    DRAIN_WAITS,
+
+    /** The number of flushes that wrote anything. */
+    FLUSHES,
+
+    /** The number of failed puts that were retried. */
+    RETRIES,
+
+    /** The number of times a row was opened for writing. */
+    ROWS,
+
+    /** The number of batches spilled, to the spill journal or to local disk. */
+    SPILLS
+}
\ No newline at end of file
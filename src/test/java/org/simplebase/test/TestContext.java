@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * {@link TestContext} is a mapreduce context that records what is written to it, for tests that run without a job.
+ *
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TestContext extends TaskInputOutputContext<Object,Object,Object,Object> {
+    /** The counters. */
+    public final Counters counters;
+
+    /** The written keys. */
+    public final List<Object> keys;
+
+    /** The number of status updates. */
+    public int statusCount;
+
+    /** The written values. */
+    public final List<Object> values;
+
+    /**
+     * Create a new TestContext instance.
+     */
+    public TestContext () {
+        this(new Counters(), new ArrayList(), new ArrayList());
+    }
+
+    /**
+     * Create a new TestContext instance.
+     *
+     * @param counters The counters.
+     * @param keys     The written keys.
+     * @param values   The written values.
+     */
+    private TestContext (final Counters counters, final List<Object> keys, final List<Object> values) {
+        super(new Configuration(false), new TaskAttemptID(), new RecordWriter<Object,Object>() {
+            public void close (TaskAttemptContext context) {
+            }
+
+            public void write (Object key, Object value) {
+                keys.add(key);
+                values.add(value);
+            }
+        }, null, null);
+
+        this.counters = counters;
+        this.keys     = keys;
+        this.values   = values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Counter getCounter (Enum<?> name) {
+        return counters.findCounter(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Counter getCounter (String group, String name) {
+        return counters.findCounter(group, name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getCurrentKey () {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getCurrentValue () {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nextKeyValue () {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void progress () {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setStatus (String status) {
+        statusCount++;
+    }
+}
\ No newline at end of file
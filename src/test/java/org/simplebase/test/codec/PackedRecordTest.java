@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.codec;
+
+import org.simplebase.codec.PackedReader;
+import org.simplebase.codec.PackedRecord;
+import org.simplebase.codec.PackedSchema;
+import org.simplebase.codec.PackedSchema.FieldType;
+import org.simplebase.model.Model;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PackedRecordTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void packTest () {
+        PackedSchema schema = schema();
+        PackedRecord record = new PackedRecord(schema);
+        PackedReader reader = new PackedReader(schema);
+
+        record.setString("type", "click").setLong("time", 1400000000000L).setInt("x", -5).setBoolean("mobile", true);
+
+        byte[] packed = record.toBytes();
+
+        // the count, four end offsets and the values
+        assertEquals(2 + 4 * 2 + 5 + 8 + 4 + 1, packed.length);
+
+        // cells are read in place, from anywhere in a buffer
+        byte[] buffer = Bytes.add(new byte[] { 9, 9, 9 }, packed);
+
+        reader.reset(buffer, 3, packed.length);
+
+        assertEquals("click", reader.getString("type"));
+        assertEquals(1400000000000L, reader.getLong("time", 0));
+        assertEquals(-5, reader.getInt("x", 0));
+        assertTrue(reader.getBoolean("mobile", false));
+        assertFalse(reader.has("score"));
+        assertTrue(1.5 == reader.getDouble("score", 1.5));
+        assertNull(reader.getBytes("payload"));
+
+        // trailing unset fields take no space
+        assertEquals(2 + 2 + 5, record.reset().setString("type", "click").toBytes().length);
+        assertEquals(-1, reader.reset(record.toBytes(), 0, 9).getInt("x", -1));
+    }
+
+    @Test
+    public void emptyTest () {
+        PackedSchema schema = schema();
+        byte[]       packed = new PackedRecord(schema).setString("type", "").setBytes("payload", new byte[0]).toBytes();
+        PackedReader reader = new PackedReader(schema).reset(packed, 0, packed.length);
+
+        // empty values are set, and unset fields in between are not
+        assertTrue(reader.has("type"));
+        assertEquals("", reader.getString("type"));
+        assertEquals(0, reader.getBytes("payload").length);
+        assertFalse(reader.has("time"));
+        assertNull(reader.getString("tags"));
+    }
+
+    @Test
+    public void schemaTest () {
+        PackedSchema schema = schema();
+        byte[]       packed = new PackedRecord(schema).setString("type", "view").toBytes();
+
+        // records written before a field was appended read it as unset
+        schema.add("referrer", FieldType.STRING);
+
+        PackedReader reader = new PackedReader(schema).reset(packed, 0, packed.length);
+
+        assertEquals("view", reader.getString("type"));
+        assertNull(reader.getString("referrer"));
+        assertEquals(7, schema.getIndex("referrer"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typeTest () {
+        new PackedRecord(schema()).setInt("time", 5);
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+        PackedSchema  schema  = schema();
+        PackedRecord  record  = new PackedRecord(schema);
+        byte[]        family  = Bytes.toBytes("family");
+        byte[]        event   = Bytes.toBytes("event");
+
+        writer.setColumnFamily(family);
+        writer.setTableName("table");
+        writer.setRow("row");
+        writer.writeRecord(event, record.setString("type", "click").setDouble("score", 0.25));
+        writer.close();
+
+        Put   put   = (Put) context.values.get(0);
+        Model model = new Model(new Result(put.getFamilyMap().get(family))).setColumnFamily(family);
+
+        assertEquals(1, put.size());
+        assertEquals("click", model.getRecord(event, schema).getString("type"));
+        assertTrue(0.25 == model.getRecord(event, schema).getDouble("score", 0));
+        assertNull(model.getRecord(Bytes.toBytes("other"), schema));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create an event schema.
+     */
+    public static PackedSchema schema () {
+        return new PackedSchema().add("type", FieldType.STRING)
+                                 .add("time", FieldType.LONG)
+                                 .add("x", FieldType.INT)
+                                 .add("mobile", FieldType.BOOLEAN)
+                                 .add("score", FieldType.DOUBLE)
+                                 .add("payload", FieldType.BYTES)
+                                 .add("tags", FieldType.STRING);
+    }
+}
\ No newline at end of file
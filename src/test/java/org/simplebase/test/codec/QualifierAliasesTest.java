@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.codec;
+
+import org.simplebase.codec.QualifierAliases;
+import org.simplebase.model.Model;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+import org.simplebase.writer.MergeOperator;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class QualifierAliasesTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void aliasTest ()
+    throws Exception {
+        QualifierAliases aliases   = new QualifierAliases();
+        byte[]           qualifier = Bytes.toBytes("customer_lifetime_value");
+
+        assertTrue(aliases.isEmpty());
+        assertTrue(qualifier == aliases.alias(qualifier));
+
+        byte[] alias = aliases.define(qualifier);
+
+        assertEquals(2, alias.length);
+        assertEquals(QualifierAliases.MARKER, alias[0]);
+        assertTrue(alias == aliases.define(Bytes.toBytes("customer_lifetime_value")));
+        assertTrue(Bytes.equals(alias, aliases.alias(qualifier)));
+        assertTrue(Bytes.equals(qualifier, aliases.resolve(alias)));
+
+        // qualifiers without an alias resolve to themselves, and no string can pass for an alias
+        assertTrue(Bytes.equals(Bytes.toBytes("other"), aliases.resolve(Bytes.toBytes("other"))));
+        assertTrue(Bytes.equals(Bytes.toBytes((short) 0), aliases.resolve(Bytes.toBytes((short) 0))));
+
+        for (int i = 1; i < 300; i++) {
+            alias = aliases.define(Bytes.toBytes("qualifier" + i));
+        }
+
+        assertEquals(3, alias.length);
+        assertTrue(Bytes.equals(Bytes.toBytes("qualifier299"), aliases.resolve(alias)));
+    }
+
+    @Test
+    public void reloadTest ()
+    throws Exception {
+        HTableInterface  table     = table();
+        QualifierAliases reader    = new QualifierAliases(table, "dictionary").setReloadInterval(0);
+        QualifierAliases writer    = new QualifierAliases(table, "dictionary");
+        byte[]           qualifier = Bytes.toBytes("defined_elsewhere");
+
+        // the reader loaded the dictionary before the writer defined the qualifier
+        byte[] alias = writer.define(qualifier);
+
+        assertTrue(Bytes.equals(alias, reader.alias(qualifier)));
+        assertTrue(Bytes.equals(qualifier, reader.resolve(alias)));
+        assertTrue(Bytes.equals(alias, new QualifierAliases(table, "dictionary").define(qualifier)));
+
+        // a miss within the reload interval is not reloaded
+        reader.setReloadInterval(60000);
+        reader.load();
+
+        alias = writer.define(Bytes.toBytes("defined_later"));
+
+        assertTrue(Bytes.equals(alias, reader.resolve(alias)));
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        TestContext      context  = new TestContext();
+        ContextWriter    writer   = new ContextWriter(context);
+        QualifierAliases aliases  = new QualifierAliases();
+        byte[]           visits   = Bytes.toBytes("page_visits_total");
+        byte[]           referrer = Bytes.toBytes("page_referrer_url");
+
+        aliases.define(visits);
+        aliases.define(referrer);
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setQualifierAliases(aliases);
+        writer.setMergeOperator(visits, MergeOperator.LAST);
+        writer.setRow("row");
+        writer.writeLong(visits, 2);
+        writer.writeLong(visits, 3);
+        writer.writeString(referrer, "simplebase");
+        writer.writeString(Bytes.toBytes("plain"), "rocks");
+        writer.close();
+
+        Put put = (Put) context.values.get(0);
+
+        // the descriptive qualifiers are never stored, and qualifiers are defined as they are written
+        assertFalse(put.has(FAMILY, visits));
+        assertTrue(put.has(FAMILY, aliases.alias(visits)));
+        assertFalse(put.has(FAMILY, Bytes.toBytes("plain")));
+        assertTrue(put.has(FAMILY, aliases.alias(Bytes.toBytes("plain"))));
+
+        // results are sorted by column
+        List<KeyValue> cells = put.getFamilyMap().get(FAMILY);
+
+        Collections.sort(cells, KeyValue.COMPARATOR);
+
+        Model model = new Model(new Result(cells)).setColumnFamily(FAMILY).setQualifierAliases(aliases);
+
+        assertTrue(3 == model.getLong(visits));
+        assertEquals("simplebase", model.getString(referrer));
+        assertEquals("rocks", model.getString(Bytes.toBytes("plain")));
+        assertTrue(model.hasColumn(referrer));
+        assertEquals(3, model.getQualifiers().size());
+        assertTrue(containsQualifier(model.getQualifiers(), visits));
+        assertEquals(2, model.findQualifiers("page_").size());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates that a list of qualifiers contains a qualifier.
+     *
+     * @param qualifiers The qualifiers.
+     * @param qualifier  The qualifier.
+     */
+    public static boolean containsQualifier (List<byte[]> qualifiers, byte[] qualifier) {
+        for (byte[] _qualifier : qualifiers) {
+            if (Bytes.equals(_qualifier, qualifier)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Create a metadata table that holds a single dictionary row in memory.
+     */
+    public static HTableInterface table () {
+        final Map<byte[],byte[]> columns = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+        return (HTableInterface) Proxy.newProxyInstance(HTableInterface.class.getClassLoader(),
+                                                        new Class[] { HTableInterface.class }, new InvocationHandler() {
+            public Object invoke (Object proxy, Method method, Object[] args) {
+                synchronized (columns) {
+                    if (method.getName().equals("checkAndPut")) {
+                        if (columns.containsKey((byte[]) args[2])) {
+                            return false;
+                        }
+
+                        for (KeyValue cell : ((Put) args[4]).getFamilyMap().get(QualifierAliases.FAMILY)) {
+                            columns.put(cell.getQualifier(), cell.getValue());
+                        }
+
+                        return true;
+                    }
+
+                    if (method.getName().equals("incrementColumnValue")) {
+                        byte[] counter = columns.get((byte[]) args[2]);
+                        long   value   = (counter != null ? Bytes.toLong(counter) : 0) + (Long) args[3];
+
+                        columns.put((byte[]) args[2], Bytes.toBytes(value));
+
+                        return value;
+                    }
+
+                    // get
+                    Get                  get       = (Get) args[0];
+                    NavigableSet<byte[]> requested = get.getFamilyMap().get(QualifierAliases.FAMILY);
+                    List<KeyValue>       cells     = new ArrayList();
+
+                    for (Map.Entry<byte[],byte[]> entry : columns.entrySet()) {
+                        if (requested == null || requested.contains(entry.getKey())) {
+                            cells.add(new KeyValue(get.getRow(), QualifierAliases.FAMILY, entry.getKey(),
+                                                   entry.getValue()));
+                        }
+                    }
+
+                    return new Result(cells);
+                }
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.codec;
+
+import org.simplebase.codec.ValueCodec;
+import org.simplebase.codec.ValueCodecs;
+import org.simplebase.model.Model;
+import org.simplebase.test.TestContext;
+import org.simplebase.test.writer.RetryPolicyTest.TestWriter;
+import org.simplebase.writer.ContextWriter;
+import org.simplebase.writer.MergeOperator;
+import org.simplebase.writer.Writer;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ValueCodecTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void booleanTest () {
+        assertEquals(0, ValueCodec.BOOLEAN.encodeBoolean(false).length);
+        assertEquals(1, ValueCodec.BOOLEAN.encodeBoolean(true).length);
+        assertTrue(decodeBoolean(ValueCodec.BOOLEAN, ValueCodec.BOOLEAN.encodeBoolean(true)));
+        assertFalse(decodeBoolean(ValueCodec.BOOLEAN, ValueCodec.BOOLEAN.encodeBoolean(false)));
+    }
+
+    @Test
+    public void decimalTest () {
+        ValueCodec codec = ValueCodec.decimal(2);
+
+        assertTrue(19.99 == decodeDouble(codec, codec.encodeDouble(19.99)));
+        assertTrue(-0.5 == decodeDouble(codec, codec.encodeDouble(-0.5)));
+        assertTrue(0.01 == decodeDouble(codec, codec.encodeDouble(0.005)));
+        assertEquals(2, codec.encodeDouble(19.99).length);
+        assertEquals(7, decodeLong(codec, codec.encodeLong(7)));
+    }
+
+    @Test
+    public void mergeOperatorTest () {
+        ValueCodecs codecs = new ValueCodecs().set(FAMILY, Bytes.toBytes("total"), ValueCodec.VARINT);
+        Writer      writer = new TestWriter();
+
+        writer.setColumnFamily(FAMILY);
+        writer.setMergeOperator(Bytes.toBytes("total"), MergeOperator.LAST);
+        writer.setMergeOperator(Bytes.toBytes("hits"), MergeOperator.SUM);
+        writer.setValueCodecs(codecs);
+
+        // operators that add or compare fixed width values cannot share a column with a codec, in either order
+        try {
+            writer.setMergeOperator(Bytes.toBytes("total"), MergeOperator.MAX);
+
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        codecs.set(FAMILY, Bytes.toBytes("hits"), ValueCodec.VARINT);
+
+        try {
+            writer.setValueCodecs(codecs);
+
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void timestampTest () {
+        long now = 1400000000000L;
+
+        assertEquals(now, decodeLong(ValueCodec.TIMESTAMP, ValueCodec.TIMESTAMP.encodeLong(now)));
+        assertTrue(ValueCodec.TIMESTAMP.encodeLong(now).length < Bytes.SIZEOF_LONG);
+        assertEquals(0, decodeLong(ValueCodec.TIMESTAMP, ValueCodec.TIMESTAMP.encodeLong(0)));
+        assertEquals(1, ValueCodec.timestamp(now).encodeLong(now).length);
+    }
+
+    @Test
+    public void varintTest () {
+        long[] values = new long[] { Long.MIN_VALUE, Integer.MIN_VALUE, -65, -64, -1, 0, 1, 63, 64, Long.MAX_VALUE };
+
+        for (long value : values) {
+            assertEquals(value, decodeLong(ValueCodec.VARINT, ValueCodec.VARINT.encodeLong(value)));
+        }
+
+        // small values of either sign take a single byte
+        assertEquals(1, ValueCodec.VARINT.encodeLong(-64).length);
+        assertEquals(1, ValueCodec.VARINT.encodeLong(63).length);
+        assertEquals(2, ValueCodec.VARINT.encodeLong(64).length);
+        assertEquals(10, ValueCodec.VARINT.encodeLong(Long.MIN_VALUE).length);
+
+        // values are decoded in place
+        byte[] buffer = Bytes.add(new byte[] { 9, 9 }, ValueCodec.VARINT.encodeLong(-300), new byte[] { 9 });
+
+        assertEquals(-300, ValueCodec.VARINT.decodeLong(buffer, 2, buffer.length - 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void varintFractionTest () {
+        ValueCodec.VARINT.encodeDouble(0.5);
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+        ValueCodecs   codecs  = new ValueCodecs();
+
+        codecs.set(FAMILY, Bytes.toBytes("hits"), ValueCodec.VARINT)
+              .set(FAMILY, Bytes.toBytes("price"), ValueCodec.decimal(2))
+              .set(FAMILY, Bytes.toBytes("seen"), ValueCodec.TIMESTAMP)
+              .set(FAMILY, Bytes.toBytes("active"), ValueCodec.BOOLEAN);
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setValueCodecs(codecs);
+        writer.setRow("row");
+        writer.writeInt(Bytes.toBytes("hits"), 3);
+        writer.writeDouble(Bytes.toBytes("price"), 4.25);
+        writer.writeLong(Bytes.toBytes("seen"), 1400000000000L);
+        writer.writeBoolean(Bytes.toBytes("active"), false);
+        writer.writeLong(Bytes.toBytes("fixed"), 3);
+        writer.close();
+
+        Put put = (Put) context.values.get(0);
+
+        assertEquals(1, put.get(FAMILY, Bytes.toBytes("hits")).get(0).getValueLength());
+        assertEquals(0, put.get(FAMILY, Bytes.toBytes("active")).get(0).getValueLength());
+        assertEquals(8, put.get(FAMILY, Bytes.toBytes("fixed")).get(0).getValueLength());
+
+        // results are sorted by column
+        List<KeyValue> cells = put.getFamilyMap().get(FAMILY);
+
+        Collections.sort(cells, KeyValue.COMPARATOR);
+
+        Model model = new Model(new Result(cells)).setColumnFamily(FAMILY).setValueCodecs(codecs);
+
+        assertTrue(3 == model.getInt(Bytes.toBytes("hits")));
+        assertTrue(3 == model.getLong(Bytes.toBytes("hits")));
+        assertTrue(4.25 == model.getDouble(Bytes.toBytes("price")));
+        assertTrue(1400000000000L == model.getLong(Bytes.toBytes("seen")));
+        assertFalse(model.getBoolean(Bytes.toBytes("active")));
+        assertTrue(3 == model.getLong(Bytes.toBytes("fixed")));
+        assertTrue(5 == model.getLongD(Bytes.toBytes("other"), 5L));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Decode a boolean value.
+     *
+     * @param codec The codec.
+     * @param value The value.
+     */
+    public static boolean decodeBoolean (ValueCodec codec, byte[] value) {
+        return codec.decodeBoolean(value, 0, value.length);
+    }
+
+    /**
+     * Decode a double value.
+     *
+     * @param codec The codec.
+     * @param value The value.
+     */
+    public static double decodeDouble (ValueCodec codec, byte[] value) {
+        return codec.decodeDouble(value, 0, value.length);
+    }
+
+    /**
+     * Decode a long value.
+     *
+     * @param codec The codec.
+     * @param value The value.
+     */
+    public static long decodeLong (ValueCodec codec, byte[] value) {
+        return codec.decodeLong(value, 0, value.length);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.key;
+
+import org.simplebase.key.KeyDecoder;
+import org.simplebase.key.KeyEncoder;
+import org.simplebase.model.Model;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class KeyEncoderTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void decodeTest () {
+        KeyEncoder encoder = new KeyEncoder(4);
+        KeyDecoder decoder = new KeyDecoder();
+
+        encoder.writeString("tenant\u0000\u00e9\ud83d\ude00").writeInt(-5).writeReverseLong(1400000000000L)
+               .writeDouble(-0.5).writeBytes(new byte[] { 0, 1, 0 }).writeLong(Long.MIN_VALUE);
+
+        decoder.reset(encoder.toBytes());
+
+        assertEquals("tenant\u0000\u00e9\ud83d\ude00", decoder.readString());
+        assertEquals(-5, decoder.readInt());
+        assertEquals(1400000000000L, decoder.readReverseLong());
+        assertTrue(-0.5 == decoder.readDouble());
+        assertTrue(Bytes.equals(new byte[] { 0, 1, 0 }, decoder.readBytes()));
+        assertEquals(Long.MIN_VALUE, decoder.readLong());
+        assertFalse(decoder.hasRemaining());
+
+        // components are skipped in place
+        decoder.reset(encoder.toBytes()).skipString().skip(4);
+
+        assertEquals(1400000000000L, decoder.readReverseLong());
+    }
+
+    @Test
+    public void orderTest () {
+        int[]    ints    = new int[] { Integer.MIN_VALUE, -100, -1, 0, 1, 100, Integer.MAX_VALUE };
+        long[]   longs   = new long[] { Long.MIN_VALUE, -100, -1, 0, 1, 100, Long.MAX_VALUE };
+        double[] doubles = new double[] { Double.NEGATIVE_INFINITY, -10.5, -0.5, 0, 0.5, 10.5, Double.MAX_VALUE };
+        String[] strings = new String[] { "", "\u0000", "a", "a\u0000", "a\u0000b", "ab", "b", "\u00e9" };
+
+        for (int i = 1; i < longs.length; i++) {
+            assertTrue(compare(encoder().writeLong(longs[i - 1]), encoder().writeLong(longs[i])) < 0);
+            assertTrue(compare(encoder().writeInt(ints[i - 1]), encoder().writeInt(ints[i])) < 0);
+            assertTrue(compare(encoder().writeReverseLong(longs[i - 1]), encoder().writeReverseLong(longs[i])) > 0);
+            assertTrue(compare(encoder().writeDouble(doubles[i - 1]), encoder().writeDouble(doubles[i])) < 0);
+        }
+
+        // a string sorts ahead of the strings it is a prefix of, whatever follows it
+        for (int i = 1; i < strings.length; i++) {
+            assertTrue(compare(encoder().writeString(strings[i - 1]).writeInt(Integer.MAX_VALUE),
+                               encoder().writeString(strings[i]).writeInt(Integer.MIN_VALUE)) < 0);
+        }
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+        KeyEncoder    key     = new KeyEncoder();
+
+        writer.setColumnFamily(Bytes.toBytes("family"));
+        writer.setTableName("table");
+
+        // the same key twice is the same row
+        for (int i = 0; i < 2; i++) {
+            writer.setRow(key.reset().writeString("tenant").writeLong(42));
+            writer.writeInt(Bytes.toBytes("i" + i), i);
+        }
+
+        writer.close();
+
+        assertEquals(1, context.values.size());
+
+        Put   put   = (Put) context.values.get(0);
+        Model model = new Model(new Result(put.getFamilyMap().get(Bytes.toBytes("family"))));
+
+        assertEquals("tenant", model.getKey().readString());
+        assertEquals(42, model.getKey().skipString().readLong());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Compare two encoded keys.
+     *
+     * @param a The first key.
+     * @param b The second key.
+     */
+    public static int compare (KeyEncoder a, KeyEncoder b) {
+        return Bytes.compareTo(a.getBuffer(), 0, a.getLength(), b.getBuffer(), 0, b.getLength());
+    }
+
+    /**
+     * Create an encoder.
+     */
+    public static KeyEncoder encoder () {
+        return new KeyEncoder();
+    }
+}
\ No newline at end of file
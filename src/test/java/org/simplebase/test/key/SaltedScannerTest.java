@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.key;
+
+import org.simplebase.key.HashKeySalt;
+import org.simplebase.key.SaltedScanner;
+import org.simplebase.model.Model;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class SaltedScannerTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void closeTest ()
+    throws Exception {
+        final HashKeySalt   salt   = new HashKeySalt(8);
+        final AtomicInteger closed = new AtomicInteger();
+        final AtomicInteger opened = new AtomicInteger();
+
+        // the first bucket fails at once, while the others are still opening their scanners
+        HTableInterface table = (HTableInterface) Proxy.newProxyInstance(HTableInterface.class.getClassLoader(),
+                                                                         new Class[] { HTableInterface.class },
+                                                                         new InvocationHandler() {
+            public Object invoke (Object proxy, Method method, Object[] args)
+            throws IOException {
+                if (Bytes.startsWith(((Scan) args[0]).getStartRow(), salt.prefix(0))) {
+                    throw new IOException("failed");
+                }
+
+                long end = System.currentTimeMillis() + 100;
+
+                while (System.currentTimeMillis() < end) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        // keep opening, as a scanner blocked on the cluster would
+                    }
+                }
+
+                opened.incrementAndGet();
+
+                return scanner(closed);
+            }
+        });
+
+        try {
+            new SaltedScanner(table, scan("row000", "row100", 10), salt);
+
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        Thread.sleep(300);
+
+        // every scanner opened is closed, including those opened while the scanner was being closed
+        assertTrue(opened.get() > 0);
+        assertEquals(opened.get(), closed.get());
+    }
+
+    @Test
+    public void saltTest () {
+        HashKeySalt salt    = new HashKeySalt(4);
+        int[]       buckets = new int[4];
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] row    = Bytes.toBytes(1000000L + i);
+            byte[] salted = salt.salt(row);
+
+            assertTrue(Bytes.equals(row, salt.unsalt(salted)));
+            assertTrue(Bytes.equals(salt.prefix(salt.bucket(row)), Bytes.head(salted, 1)));
+
+            buckets[salted[0]]++;
+        }
+
+        // sequential rows are spread across every bucket
+        for (int count : buckets) {
+            assertTrue(count > 150);
+        }
+
+        assertEquals(3, salt.splitKeys().length);
+    }
+
+    @Test
+    public void scanTest ()
+    throws Exception {
+        HashKeySalt   salt    = new HashKeySalt(8);
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+
+        writer.setKeySalt(salt);
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+
+        for (int i = 0; i < 100; i++) {
+            writer.setRow(Bytes.toBytes(String.format("row%03d", i)));
+            writer.writeInt(Bytes.toBytes("i"), i);
+        }
+
+        writer.close();
+
+        // the writer salts rows
+        NavigableMap<byte[],Result> rows = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+        for (Object value : context.values) {
+            Put put = (Put) value;
+
+            assertTrue(Bytes.equals(salt.salt(salt.unsalt(put.getRow())), put.getRow()));
+
+            rows.put(put.getRow(), new Result(put.getFamilyMap().get(FAMILY)));
+        }
+
+        // and the scanner reads them back in order
+        SaltedScanner scanner = new SaltedScanner(table(rows), scan("row010", "row090", 7), salt);
+        Model         model   = new Model().setKeySalt(salt).setColumnFamily(FAMILY);
+        int           next    = 10;
+
+        for (Result result : scanner) {
+            model.setResult(result);
+
+            assertEquals(String.format("row%03d", next), Bytes.toString(model.getRow()));
+            assertTrue(next++ == model.getInt(Bytes.toBytes("i")));
+        }
+
+        scanner.close();
+
+        assertEquals(90, next);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a scan.
+     *
+     * @param start   The start row.
+     * @param stop    The stop row.
+     * @param caching The caching.
+     */
+    public static Scan scan (String start, String stop, int caching) {
+        Scan scan = new Scan(Bytes.toBytes(start), Bytes.toBytes(stop));
+
+        scan.setCaching(caching);
+
+        return scan;
+    }
+
+    /**
+     * Create an empty scanner.
+     *
+     * @param closed The number of closed scanners.
+     */
+    public static ResultScanner scanner (final AtomicInteger closed) {
+        return new ResultScanner() {
+            public void close () {
+                closed.incrementAndGet();
+            }
+
+            public Iterator<Result> iterator () {
+                return new ArrayList<Result>().iterator();
+            }
+
+            public Result next () {
+                return null;
+            }
+
+            public Result[] next (int count) {
+                return new Result[0];
+            }
+        };
+    }
+
+    /**
+     * Create a table that can only be scanned.
+     *
+     * @param rows The rows of the table.
+     */
+    public static HTableInterface table (final NavigableMap<byte[],Result> rows) {
+        return (HTableInterface) Proxy.newProxyInstance(HTableInterface.class.getClassLoader(),
+                                                        new Class[] { HTableInterface.class }, new InvocationHandler() {
+            public Object invoke (Object proxy, Method method, Object[] args) {
+                Scan scan = (Scan) args[0];
+
+                final Iterator<Result> iterator = rows.subMap(scan.getStartRow(), true, scan.getStopRow(), false)
+                                                      .values().iterator();
+
+                return new ResultScanner() {
+                    public void close () {
+                    }
+
+                    public Iterator<Result> iterator () {
+                        return iterator;
+                    }
+
+                    public Result next () {
+                        return iterator.hasNext() ? iterator.next() : null;
+                    }
+
+                    public Result[] next (int count) {
+                        List<Result> results = new ArrayList();
+
+                        while (results.size() < count && iterator.hasNext()) {
+                            results.add(iterator.next());
+                        }
+
+                        return results.toArray(new Result[results.size()]);
+                    }
+                };
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.mapreduce;
+
+import org.simplebase.mapreduce.BalancedTableInputFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class BalancedTableInputFormatTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void splitTest () {
+        List<InputSplit>          splits = new ArrayList();
+        NavigableMap<byte[],Long> sizes  = new TreeMap(Bytes.BYTES_COMPARATOR);
+
+        splits.add(split("", "b", "host1"));
+        splits.add(split("b", "c", "host2"));
+        splits.add(split("c", "d", "host3"));
+        splits.add(split("d", "", "host4"));
+
+        sizes.put(Bytes.toBytes(""), 100L);
+        sizes.put(Bytes.toBytes("b"), 400L);
+        sizes.put(Bytes.toBytes("c"), 100L);
+        sizes.put(Bytes.toBytes("d"), 400L);
+
+        // the large middle region is cut in four, and the large last region has no end row to cut towards
+        List<InputSplit> result = BalancedTableInputFormat.split(splits, sizes, 100, 16);
+
+        assertEquals(7, result.size());
+        assertEquals("b", Bytes.toString(((TableSplit) result.get(1)).getStartRow()));
+        assertEquals("c", Bytes.toString(((TableSplit) result.get(4)).getEndRow()));
+
+        for (int i = 1; i < 5; i++) {
+            TableSplit split = (TableSplit) result.get(i);
+
+            assertEquals("host2", split.getRegionLocation());
+            assertTrue(Bytes.compareTo(split.getStartRow(), split.getEndRow()) < 0);
+
+            if (i > 1) {
+                assertTrue(Bytes.equals(((TableSplit) result.get(i - 1)).getEndRow(), split.getStartRow()));
+            }
+        }
+
+        // the average region size of 250 is the default, so the middle region is cut in two
+        assertEquals(5, BalancedTableInputFormat.split(splits, sizes, 0, 16).size());
+
+        // the limit applies
+        assertEquals(5, BalancedTableInputFormat.split(splits, sizes, 100, 2).size());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a split.
+     *
+     * @param start    The start row.
+     * @param end      The end row.
+     * @param location The region location.
+     */
+    public static TableSplit split (String start, String end, String location) {
+        return new TableSplit(Bytes.toBytes("table"), Bytes.toBytes(start), Bytes.toBytes(end), location);
+    }
+}
\ No newline at end of file
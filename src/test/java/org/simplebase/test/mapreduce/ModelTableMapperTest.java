@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.mapreduce;
+
+import org.simplebase.mapreduce.ModelTableMapper;
+import org.simplebase.model.Model;
+import org.simplebase.model.ModelException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ModelTableMapperTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void configureScanTest () {
+        Scan scan = ModelTableMapper.configureScan(new Scan(), ModelTableMapper.SCAN_CACHING);
+
+        assertFalse(scan.getCacheBlocks());
+        assertEquals(ModelTableMapper.SCAN_CACHING, scan.getCaching());
+
+        // caching set by the scan is kept
+        scan = new Scan();
+
+        scan.setCaching(10);
+
+        assertEquals(10, ModelTableMapper.configureScan(scan, ModelTableMapper.SCAN_CACHING).getCaching());
+    }
+
+    @Test
+    public void mapTest ()
+    throws Exception {
+        TestMapper mapper = new TestMapper();
+
+        mapper.getModel().setColumnFamily(FAMILY);
+        mapper.feed(result("row1", "simplebase"));
+        mapper.feed(result("row2", "rocks"));
+
+        // one model for every row
+        assertEquals(2, mapper.models.size());
+        assertTrue(mapper.models.get(0) == mapper.models.get(1));
+        assertEquals("row1:simplebase", mapper.values.get(0));
+        assertEquals("row2:rocks", mapper.values.get(1));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a result with a single column.
+     *
+     * @param row   The row.
+     * @param value The value.
+     */
+    public static Result result (String row, String value) {
+        return new Result(new KeyValue[] {
+            new KeyValue(Bytes.toBytes(row), FAMILY, Bytes.toBytes("qualifier"), Bytes.toBytes(value))
+        });
+    }
+
+    /**
+     * {@link TestMapper} records the models it is handed.
+     */
+    private static class TestMapper extends ModelTableMapper<ImmutableBytesWritable,Writable> {
+        /** The models. */
+        public List<Model> models = new ArrayList();
+
+        /** The mapped values. */
+        public List<String> values = new ArrayList();
+
+        /**
+         * Map a result.
+         *
+         * @param result The result.
+         */
+        public void feed (Result result)
+        throws Exception {
+            map(new ImmutableBytesWritable(result.getRow()), result, null);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void map (ImmutableBytesWritable row, Model model, Context context)
+        throws ModelException {
+            models.add(model);
+            values.add(Bytes.toString(model.getRow()) + ":" + model.getString(Bytes.toBytes("qualifier")));
+        }
+    }
+}
\ No newline at end of file
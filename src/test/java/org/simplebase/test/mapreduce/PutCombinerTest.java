@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.mapreduce;
+
+import org.simplebase.mapreduce.PutCombiner;
+import org.simplebase.mapreduce.TableRowKey;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class PutCombinerTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void maskTest ()
+    throws Exception {
+        byte[] row = Bytes.toBytes("row");
+        Put    put = new Put(row);
+
+        put.add(FAMILY, Bytes.toBytes("a"), 200, Bytes.toBytes("later"));
+        put.add(FAMILY, Bytes.toBytes("b"), Bytes.toBytes("unstamped"));
+        put.add(FAMILY, Bytes.toBytes("c"), 100, Bytes.toBytes("same"));
+        put.setAttribute(PutCombiner.SEQUENCE_ATTRIBUTE, Bytes.toBytes(1L));
+
+        Put delete = new Put(row);
+
+        delete.add(new KeyValue(row, FAMILY, null, 100, KeyValue.Type.DeleteFamily));
+        delete.setAttribute(PutCombiner.SEQUENCE_ATTRIBUTE, Bytes.toBytes(2L));
+
+        // the marker only cancels cells stamped at or before it, or not stamped at all
+        List<KeyValue> cells = PutCombiner.merge(row, Arrays.asList(delete, put)).getFamilyMap().get(FAMILY);
+
+        assertEquals(2, cells.size());
+        assertEquals("later", Bytes.toString(cells.get(0).getValue()));
+        assertTrue(cells.get(1).isDeleteFamily());
+    }
+
+    @Test
+    public void mergeTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context).setOutputMode(ContextWriter.OutputMode.TABLE_ROW);
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.writeString(Bytes.toBytes("b"), "simplebase");
+        writer.setRow(Bytes.toBytes("row2"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.deleteColumn(Bytes.toBytes("b"));
+        writer.writeString(Bytes.toBytes("a"), "rocks");
+        writer.close();
+
+        // the second visit to row1 writes a delete and a put
+        assertEquals(4, context.values.size());
+
+        List<Put> row1 = new ArrayList();
+
+        for (int i = context.values.size() - 1; i >= 0; i--) {
+            TableRowKey key = (TableRowKey) context.keys.get(i);
+
+            assertEquals("table", Bytes.toString(key.getTable()));
+
+            if (Bytes.toString(key.getRow()).equals("row1")) {
+                row1.add((Put) context.values.get(i));
+            }
+        }
+
+        // merged in the order written, whatever order they arrive in
+        Put merged = PutCombiner.merge(Bytes.toBytes("row1"), row1);
+
+        List<KeyValue> cells = merged.getFamilyMap().get(FAMILY);
+
+        assertEquals(2, cells.size());
+        assertTrue(PutCombiner.sequence(merged) == 4);
+
+        for (KeyValue cell : cells) {
+            if (cell.isDelete()) {
+                assertEquals("b", Bytes.toString(cell.getQualifier()));
+            } else {
+                assertEquals("a", Bytes.toString(cell.getQualifier()));
+                assertEquals("rocks", Bytes.toString(cell.getValue()));
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.mapreduce;
+
+import org.simplebase.mapreduce.RegionRecordWriter;
+import org.simplebase.mapreduce.RegionRecordWriter.OutputCounter;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RegionRecordWriterTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void writeTest ()
+    throws Exception {
+        final List<String> batches = new ArrayList();
+        final TestContext  task    = new TestContext();
+
+        RegionRecordWriter output = new RegionRecordWriter(new Configuration(false), task, 3, 1) {
+            protected void send (byte[] table, List<? extends Row> actions) {
+                StringBuilder batch = new StringBuilder(Bytes.toString(table) + ":");
+
+                for (Row action : actions) {
+                    batch.append(action instanceof Delete ? " delete" : " put");
+                }
+
+                batches.add(batch.toString());
+            }
+        };
+
+        // a context writer writing to two tables, through the record writer
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+
+        writer.setColumnFamily(Bytes.toBytes("family"));
+        writer.setTableName("table1");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.setRow(Bytes.toBytes("row2"));
+        writer.deleteRow();
+        writer.setTableName("table2");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.setRow(Bytes.toBytes("row2"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.close();
+
+        for (int i = 0; i < context.keys.size(); i++) {
+            output.write((ImmutableBytesWritable) context.keys.get(i), (Writable) context.values.get(i));
+        }
+
+        // the buffer holds three operations, which keep their emitted order within a table
+        assertEquals(2, batches.size());
+        assertEquals("table1: put delete", batches.get(0));
+        assertEquals("table2: put", batches.get(1));
+
+        output.close(task);
+
+        assertEquals(3, batches.size());
+        assertEquals("table2: put", batches.get(2));
+        assertEquals(3, output.getTotal(OutputCounter.PUTS));
+        assertEquals(1, output.getTotal(OutputCounter.DELETES));
+        assertEquals(2, output.getTotal(OutputCounter.FLUSHES));
+        assertTrue(output.getTotal(OutputCounter.BYTES) > 0);
+        assertEquals(3, task.getCounter(OutputCounter.PUTS).getValue());
+        assertEquals(2, task.statusCount);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.mapreduce;
+
+import org.simplebase.mapreduce.TableRowKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableComparator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TableRowKeyTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void compareTest ()
+    throws Exception {
+        TableRowKey[] keys = new TableRowKey[] { key("a", "b"), key("a", "ba"), key("ab", ""), key("b", "a") };
+
+        WritableComparator comparator = WritableComparator.get(TableRowKey.class);
+
+        assertTrue(comparator instanceof TableRowKey.Comparator);
+
+        // raw comparisons agree with deserialized comparisons
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = 0; j < keys.length; j++) {
+                byte[] a = serialize(keys[i]);
+                byte[] b = serialize(keys[j]);
+
+                assertEquals(Integer.signum(keys[i].compareTo(keys[j])), Integer.signum(i - j));
+                assertEquals(Integer.signum(comparator.compare(a, 0, a.length, b, 0, b.length)),
+                             Integer.signum(i - j));
+            }
+        }
+
+        assertEquals(key("a", "b"), key("a", "b"));
+        assertEquals(key("a", "b").hashCode(), key("a", "b").hashCode());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a key.
+     *
+     * @param table The table name.
+     * @param row   The row.
+     */
+    public static TableRowKey key (String table, String row) {
+        return new TableRowKey(Bytes.toBytes(table), Bytes.toBytes(row));
+    }
+
+    /**
+     * Serialize a key.
+     *
+     * @param key The key.
+     */
+    public static byte[] serialize (TableRowKey key)
+    throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        key.write(new DataOutputStream(bytes));
+
+        return bytes.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.writer.AdaptiveBatchController;
+import org.simplebase.writer.BufferedTableWriter;
+import org.simplebase.writer.SpillJournal;
+import org.simplebase.writer.TableWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Put;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class AdaptiveBatchControllerTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void boundsTest ()
+    throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController().setBatchSizeBounds(100, 200)
+                                                                           .setWriteBufferSizeBounds(1000, 2000);
+
+        assertEquals(200, controller.getBatchSize());
+        assertEquals(2000, controller.getWriteBufferSize());
+
+        controller.record(10, 100, 100);
+
+        assertEquals(200, controller.getBatchSize());
+        assertEquals(2000, controller.getWriteBufferSize());
+
+        for (int i = 0; i < 10; i++) {
+            controller.record(AdaptiveBatchController.TARGET_LATENCY * 2, 100, 100);
+        }
+
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(1000, controller.getWriteBufferSize());
+    }
+
+    @Test
+    public void decreaseTest ()
+    throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+
+        controller.record(AdaptiveBatchController.TARGET_LATENCY + 1, 1000, 1000);
+
+        assertEquals(BufferedTableWriter.PUT_BUFFER_SIZE / 2, controller.getBatchSize());
+        assertEquals(TableWriter.TABLE_WRITE_BUFFER_SIZE / 2, controller.getWriteBufferSize());
+        assertEquals(1, controller.getDecreaseCount());
+        assertEquals(1, controller.getFlushCount());
+        assertEquals(AdaptiveBatchController.TARGET_LATENCY + 1, controller.getLastLatency());
+    }
+
+    @Test
+    public void failureTest ()
+    throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+
+        controller.recordFailure();
+
+        assertEquals(BufferedTableWriter.PUT_BUFFER_SIZE / 2, controller.getBatchSize());
+        assertEquals(TableWriter.TABLE_WRITE_BUFFER_SIZE / 2, controller.getWriteBufferSize());
+        assertEquals(1, controller.getDecreaseCount());
+        assertEquals(1, controller.getFailureCount());
+        assertEquals(0, controller.getFlushCount());
+    }
+
+    @Test
+    public void increaseTest ()
+    throws Exception {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+
+        controller.record(100, 1000, 1000);
+
+        assertEquals(BufferedTableWriter.PUT_BUFFER_SIZE + AdaptiveBatchController.BATCH_SIZE_STEP,
+                     controller.getBatchSize());
+        assertEquals(TableWriter.TABLE_WRITE_BUFFER_SIZE + AdaptiveBatchController.WRITE_BUFFER_SIZE_STEP,
+                     controller.getWriteBufferSize());
+        assertEquals(1, controller.getIncreaseCount());
+        assertEquals(10000.0, controller.getThroughput(), 0.1);
+        assertEquals(10000.0, controller.getByteThroughput(), 0.1);
+
+        // throughput collapse holds the sizes
+        controller.record(100, 10, 10);
+
+        assertEquals(1, controller.getIncreaseCount());
+        assertEquals(0, controller.getDecreaseCount());
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        final boolean[]         failing    = { true };
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        File                    directory  = File.createTempFile("simplebase", "journal");
+
+        directory.delete();
+        directory.mkdirs();
+
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts) {
+            }
+        };
+
+        RetryPolicyTest.TestWriter writer = new RetryPolicyTest.TestWriter() {
+            protected void sendBatch (List<Put> batch)
+            throws InterruptedException, IOException {
+                Thread.sleep(10);
+
+                if (failing[0]) {
+                    throw new IOException("timed out");
+                }
+            }
+        };
+
+        writer.setAdaptiveBatchController(controller);
+        writer.setSpillJournal(journal, 0);
+
+        // a failed flush cuts the sizes
+        try {
+            writer.flushBatch(Arrays.asList(SpillJournalTest.put("row1")));
+
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, controller.getFailureCount());
+        assertEquals(BufferedTableWriter.PUT_BUFFER_SIZE / 2, controller.getBatchSize());
+
+        // a slow flush is recorded, and starts spilling
+        failing[0] = false;
+
+        writer.flushBatch(Arrays.asList(SpillJournalTest.put("row2")));
+
+        assertEquals(1, controller.getFlushCount());
+
+        // a spilled batch never reaches the cluster, so it is not recorded
+        writer.flushBatch(Arrays.asList(SpillJournalTest.put("row3")));
+
+        assertEquals(1, writer.getSpillCount());
+        assertEquals(1, controller.getFlushCount());
+
+        journal.close();
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+}
\ No newline at end of file
@@ -16,8 +16,11 @@
 
 package org.simplebase.test.writer;
 
+import org.simplebase.model.Model;
 import org.simplebase.test.BaseTest;
 import org.simplebase.writer.BufferedTableWriter;
+import org.simplebase.writer.MergeOperator;
+import org.simplebase.writer.RegionServerFlusher;
 
 import java.util.Arrays;
 
@@ -120,6 +123,21 @@ public class BufferedTableWriterTest extends TableWriterTest {
         assertEquals("simplebase", model.getString(FAMILY1, QUALIFIER));
     }
 
+    @Test
+    public void getParallelFlushThreadsTest ()
+    throws Exception {
+        init();
+
+        BufferedTableWriter writer = (BufferedTableWriter) this.writer;
+
+        assertFalse(writer.isParallelFlush());
+        assertEquals(writer, writer.setParallelFlush(true));
+        assertTrue(writer.isParallelFlush());
+        assertTrue(RegionServerFlusher.FLUSH_THREADS == writer.getParallelFlushThreads());
+        assertEquals(writer, writer.setParallelFlushThreads(2));
+        assertTrue(2 == writer.getParallelFlushThreads());
+    }
+
     @Test
     public void getPutBufferSize ()
     throws Exception {
@@ -132,6 +150,143 @@ public class BufferedTableWriterTest extends TableWriterTest {
         assertTrue(500 == writer.getPutBufferSize());
     }
 
+    @Test
+    public void lookupTest ()
+    throws Exception {
+        init();
+
+        BufferedTableWriter writer = (BufferedTableWriter) this.writer;
+        byte[]              other  = Bytes.toBytes("other");
+
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+        writer.flush();
+        writer.setRow(ROW1);
+        writer.writeString(other, "rocks");
+
+        // buffered and stored cells are merged
+        Model lookup = writer.lookup(ROW1);
+
+        assertEquals("simplebase", lookup.getString(QUALIFIER));
+        assertEquals("rocks", lookup.getString(other));
+
+        // buffered cells take precedence
+        writer.writeString(QUALIFIER, "again");
+
+        assertEquals("again", writer.lookup(ROW1, FAMILY1, QUALIFIER).getString(QUALIFIER));
+        assertTrue(writer.lookup(ROW2).getResult().isEmpty());
+        assertFalse(hasRow(ROW2));
+    }
+
+    @Test
+    public void lookupOverwriteTest ()
+    throws Exception {
+        init();
+
+        BufferedTableWriter writer = (BufferedTableWriter) this.writer;
+
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "1");
+        writer.writeString(QUALIFIER, "2");
+
+        // the latest buffered write wins, whether or not the table is read
+        assertEquals("2", writer.lookup(ROW1, FAMILY1, QUALIFIER).getString(QUALIFIER));
+        assertEquals("2", writer.lookup(ROW1).getString(QUALIFIER));
+
+        writer.flush();
+
+        assertEquals("2", writer.lookup(ROW1, FAMILY1, QUALIFIER).getString(QUALIFIER));
+    }
+
+    @Test
+    public void maxBufferAgeTest ()
+    throws Exception {
+        init();
+
+        BufferedTableWriter writer = (BufferedTableWriter) this.writer;
+
+        assertEquals(0, writer.getMaxBufferAge());
+        assertEquals(writer, writer.setMaxBufferAge(100));
+        assertEquals(100, writer.getMaxBufferAge());
+
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+
+        assertFalse(hasRow(ROW1));
+        assertTrue(writer.getOldestWrite() > 0);
+
+        Thread.sleep(500);
+
+        assertTrue(hasRow(ROW1));
+        assertEquals(0, writer.getOldestWrite());
+
+        // the row is still open for writing
+        writer.writeString(QUALIFIER, "rocks");
+        writer.close();
+
+        switchModel(ROW1);
+
+        assertEquals("rocks", model.getString(FAMILY1, QUALIFIER));
+    }
+
+    @Test
+    public void mergeOperatorTest ()
+    throws Exception {
+        init();
+
+        byte[] hits = Bytes.toBytes("hits");
+
+        writer.setMergeOperator(hits, MergeOperator.SUM);
+        writer.setMergeOperator(QUALIFIER, MergeOperator.MAX);
+
+        for (int i = 0; i < 2; i++) {
+            writer.setRow(ROW1);
+            writer.writeLong(hits, 2);
+            writer.writeLong(hits, 3);
+            writer.writeLong(QUALIFIER, 5 - i * 4);
+            writer.flush();
+        }
+
+        // sums are incremented, and the largest value is kept across flushes
+        switchModel(ROW1);
+
+        assertTrue(10 == model.getLong(hits));
+        assertTrue(5 == model.getLong(QUALIFIER));
+    }
+
+    @Test
+    public void parallelFlushTest ()
+    throws Exception {
+        init();
+
+        ((BufferedTableWriter) writer).setParallelFlush(true);
+
+        assertFalse(hasRow(ROW1));
+        assertFalse(hasRow(ROW2));
+        assertFalse(hasRow(ROW3));
+
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+        writer.setRow(ROW2);
+        writer.writeString(QUALIFIER, "simplebase");
+        writer.setRow(ROW3);
+        writer.writeString(QUALIFIER, "simplebase");
+
+        assertFalse(hasRow(ROW1));
+        assertFalse(hasRow(ROW2));
+        assertFalse(hasRow(ROW3));
+
+        writer.flush();
+
+        assertTrue(hasRow(ROW1));
+        assertTrue(hasRow(ROW2));
+        assertTrue(hasRow(ROW3));
+
+        switchModel(ROW2);
+
+        assertEquals("simplebase", model.getString(FAMILY1, QUALIFIER));
+    }
+
     @Test
     public void setRowTest ()
     throws Exception {
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.writer.BulkLoadWriter;
+import org.simplebase.writer.MergeOperator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class BulkLoadWriterTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    /** The qualifier. */
+    private static final byte[] QUALIFIER = Bytes.toBytes("qualifier");
+
+    /** The staging and spill directory. */
+    private File directory;
+
+    /** The loaded HFiles, each a list of cells. */
+    private List<List<KeyValue>> files = new ArrayList();
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeOperatorTest ()
+    throws Exception {
+        BulkLoadWriter writer = new TestWriter();
+
+        // bulk loaded cells would replace the stored sum
+        writer.setMergeOperator(FAMILY, QUALIFIER, MergeOperator.LAST);
+        writer.setMergeOperator(FAMILY, QUALIFIER, MergeOperator.SUM);
+    }
+
+    @Test
+    public void writeTest ()
+    throws Exception {
+        BulkLoadWriter writer = new TestWriter();
+        File           spill  = new File(directory, "spill");
+
+        spill.mkdirs();
+        writer.setSpillDirectory(spill).setSpillBufferSize(1).setColumnFamily(FAMILY).setTableName("test");
+
+        // rows arrive out of order, and the buffer spills after every cell
+        for (String row : new String[] { "q", "c", "x", "a", "m" }) {
+            writer.setRow(Bytes.toBytes(row));
+            writer.writeString(QUALIFIER, row);
+        }
+
+        writer.setRow(Bytes.toBytes("a"));
+        writer.writeString(QUALIFIER, "again");
+        writer.setRow(Bytes.toBytes("z"));
+        writer.deleteRow();
+        writer.close();
+
+        assertEquals(1, writer.getLoadCount());
+        assertEquals(7, writer.getSpillCount());
+        assertEquals(2, writer.getFileCount());
+        assertEquals(0, spill.list().length);
+
+        // one HFile per region, split at "m"
+        assertEquals(2, files.size());
+        assertEquals("a", Bytes.toString(files.get(0).get(0).getRow()));
+        assertEquals("again", Bytes.toString(files.get(0).get(0).getValue()));
+        assertEquals("m", Bytes.toString(files.get(1).get(0).getRow()));
+
+        for (List<KeyValue> cells : files) {
+            for (int i = 1; i < cells.size(); i++) {
+                assertTrue(KeyValue.COMPARATOR.compare(cells.get(i - 1), cells.get(i)) < 0);
+            }
+        }
+
+        KeyValue last = files.get(1).get(files.get(1).size() - 1);
+
+        assertEquals("z", Bytes.toString(last.getRow()));
+        assertTrue(last.isDeleteFamily());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Remove the staging and spill directory.
+     */
+    @After
+    public void cleanup ()
+    throws Exception {
+        FileSystem.getLocal(new Configuration()).delete(new Path(directory.getPath()), true);
+    }
+
+    /**
+     * Create the staging and spill directory.
+     */
+    @Before
+    public void setup ()
+    throws Exception {
+        directory = File.createTempFile("simplebase", "bulk");
+
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    /**
+     * {@link TestWriter} writes to a local directory, for a table with two regions, and reads back what it loads.
+     */
+    public class TestWriter extends BulkLoadWriter {
+        /**
+         * Create a new TestWriter instance.
+         */
+        public TestWriter () {
+            super(new Configuration(), new Path(new File(directory, "staging").toURI()));
+
+            getConfiguration().setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected byte[][] getStartKeys () {
+            return new byte[][] { HConstants.EMPTY_START_ROW, Bytes.toBytes("m") };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected HTableDescriptor getTableDescriptor () {
+            HTableDescriptor descriptor = new HTableDescriptor("test");
+
+            descriptor.addFamily(new HColumnDescriptor(FAMILY));
+
+            return descriptor;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void load (Path output)
+        throws IOException {
+            FileSystem fileSystem = output.getFileSystem(getConfiguration());
+
+            for (FileStatus family : fileSystem.listStatus(output)) {
+                for (FileStatus file : fileSystem.listStatus(family.getPath())) {
+                    HFile.Reader   reader  = HFile.createReader(fileSystem, file.getPath(),
+                                                                new CacheConfig(getConfiguration()));
+                    HFileScanner   scanner = reader.getScanner(false, false);
+                    List<KeyValue> cells   = new ArrayList();
+
+                    reader.loadFileInfo();
+
+                    for (boolean more = scanner.seekTo(); more; more = scanner.next()) {
+                        cells.add(scanner.getKeyValue());
+                    }
+
+                    reader.close();
+
+                    files.add(cells);
+                }
+            }
+
+            // order the HFiles by region
+            if (files.size() == 2 && Bytes.compareTo(files.get(0).get(0).getRow(), files.get(1).get(0).getRow()) > 0) {
+                files.add(files.remove(0));
+            }
+        }
+    }
+}
\ No newline at end of file
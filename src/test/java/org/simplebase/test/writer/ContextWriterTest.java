@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.key.HashKeySalt;
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.BufferedContextWriter;
+import org.simplebase.writer.ContextWriter;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ContextWriterTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void keyValuesTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new BufferedContextWriter(context).setOutputMode(ContextWriter.OutputMode.KEY_VALUES);
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.writeString(Bytes.toBytes("b"), "rocks");
+        writer.setRow(Bytes.toBytes("row2"));
+        writer.deleteColumn(Bytes.toBytes("a"));
+        writer.close();
+
+        // one cell per write, keyed by row, deletes first
+        assertEquals(3, context.values.size());
+        assertEquals("row2", Bytes.toString(((ImmutableBytesWritable) context.keys.get(0)).get()));
+        assertTrue(((KeyValue) context.values.get(0)).isDelete());
+        assertEquals("row1", Bytes.toString(((ImmutableBytesWritable) context.keys.get(1)).get()));
+        assertEquals("simplebase", Bytes.toString(((KeyValue) context.values.get(1)).getValue()));
+        assertEquals("rocks", Bytes.toString(((KeyValue) context.values.get(2)).getValue()));
+    }
+
+    @Test
+    public void putTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+
+        assertEquals(ContextWriter.OutputMode.PUT, writer.getOutputMode());
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setRow(Bytes.toBytes("row1"));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+        writer.writeString(Bytes.toBytes("a"), "rocks");
+        writer.close();
+
+        // one put, keyed by table
+        assertEquals(1, context.values.size());
+        assertEquals("table", Bytes.toString(((ImmutableBytesWritable) context.keys.get(0)).get()));
+        assertEquals(2, ((Put) context.values.get(0)).size());
+    }
+
+    @Test
+    public void saltChangeTest ()
+    throws Exception {
+        TestContext           context = new TestContext();
+        BufferedContextWriter writer  = new BufferedContextWriter(context);
+
+        writer.setColumnFamily(FAMILY);
+        writer.setTableName("table");
+        writer.setMaxBufferAge(20);
+        writer.setRow(Bytes.toBytes("row1"));
+
+        // the salt applies to rows set from now on
+        writer.setKeySalt(new HashKeySalt(4));
+        writer.writeString(Bytes.toBytes("a"), "simplebase");
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (writer.getOldestWrite() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, context.values.size());
+
+        // the row opened again after the expired flush is not salted
+        writer.writeString(Bytes.toBytes("b"), "rocks");
+        writer.close();
+
+        assertEquals(2, context.values.size());
+        assertEquals("row1", Bytes.toString(((Put) context.values.get(0)).getRow()));
+        assertEquals("row1", Bytes.toString(((Put) context.values.get(1)).getRow()));
+    }
+
+    @Test
+    public void tableSwitchTest ()
+    throws Exception {
+        Object threads = ManagementFactory.getThreadMXBean();
+
+        // allocation is only measured by HotSpot
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+        long          thread  = Thread.currentThread().getId();
+
+        writer.setColumnFamily(FAMILY);
+
+        // warm up, so that the measured switches run compiled
+        switchTables(writer, 100000);
+
+        int  status    = context.statusCount;
+        long allocated = allocations.getThreadAllocatedBytes(thread);
+        long start     = System.currentTimeMillis();
+
+        switchTables(writer, 100000);
+
+        allocated = allocations.getThreadAllocatedBytes(thread) - allocated;
+
+        // switching between known tables neither encodes their names nor builds status strings
+        assertTrue("allocated " + allocated + " bytes", allocated < 100000);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(status, context.statusCount);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Switch back and forth between two tables.
+     *
+     * @param writer   The writer.
+     * @param switches The number of switches.
+     */
+    public static void switchTables (ContextWriter writer, int switches)
+    throws Exception {
+        for (int i = 0; i < switches; i++) {
+            writer.setTableName(i % 2 == 0 ? "table1" : "table2");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+import org.simplebase.writer.MergeOperator;
+import org.simplebase.writer.Writer;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class MergeOperatorTest {
+    /** The column family. */
+    private static final byte[] FAMILY = Bytes.toBytes("family");
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void coalesceTest ()
+    throws Exception {
+        Writer writer = new RetryPolicyTest.TestWriter().setColumnFamily(FAMILY);
+        byte[] hits   = Bytes.toBytes("hits");
+        byte[] name   = Bytes.toBytes("name");
+
+        assertEquals(writer, writer.setMergeOperator(hits, MergeOperator.SUM));
+        assertSame(MergeOperator.SUM, writer.getMergeOperator(FAMILY, hits));
+        assertNull(writer.getMergeOperator(FAMILY, name));
+
+        writer.setRow(Bytes.toBytes("row"));
+        writer.writeLong(hits, 1);
+        writer.writeLong(hits, 2);
+        writer.writeLong(hits, 3);
+        writer.writeString(name, "simplebase");
+        writer.writeString(name, "rocks");
+
+        // merged columns hold a single cell, other columns keep every write
+        assertEquals(1, writer.getPut().get(FAMILY, hits).size());
+        assertEquals(6, Bytes.toLong(writer.getPut().get(FAMILY, hits).get(0).getValue()));
+        assertEquals(2, writer.getPut().get(FAMILY, name).size());
+
+        writer.setMergeOperator(hits, null);
+
+        assertNull(writer.getMergeOperator(FAMILY, hits));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void contextTest ()
+    throws Exception {
+        ContextWriter writer = new ContextWriter(new TestContext());
+
+        // operations written to a context would replace the stored sum
+        writer.setMergeOperator(FAMILY, Bytes.toBytes("hits"), MergeOperator.LAST);
+        writer.setMergeOperator(FAMILY, Bytes.toBytes("hits"), MergeOperator.SUM);
+    }
+
+    @Test
+    public void incrementTest ()
+    throws Exception {
+        final List<Increment> sent  = new ArrayList();
+        final HTableInterface table = table(sent);
+        byte[]                hits  = Bytes.toBytes("hits");
+        byte[]                name  = Bytes.toBytes("name");
+
+        // the puts fail after the increments were added
+        RetryPolicyTest.TestWriter writer = new RetryPolicyTest.TestWriter() {
+            protected HTableInterface getTable () {
+                return table;
+            }
+
+            protected void sendBatch (List<Put> batch)
+            throws IOException {
+                throw new IOException("region moved");
+            }
+        };
+
+        writer.setColumnFamily(FAMILY);
+        writer.setMergeOperator(hits, MergeOperator.SUM);
+        writer.setRow(Bytes.toBytes("row"));
+        writer.writeLong(hits, 2);
+        writer.writeString(name, "simplebase");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                writer.flushBatch(Collections.singletonList(writer.getPut()));
+
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        // the sum is added once, and the other columns are kept for the next flush
+        assertEquals(1, sent.size());
+        assertFalse(writer.getPut().has(FAMILY, hits));
+        assertEquals(1, writer.getPut().get(FAMILY, name).size());
+    }
+
+    @Test
+    public void longTest () {
+        byte[] one = Bytes.toBytes(1L);
+        byte[] two = Bytes.toBytes(2L);
+
+        assertEquals(3, Bytes.toLong(MergeOperator.SUM.merge(one, two)));
+        assertSame(one, MergeOperator.MIN.merge(one, two));
+        assertSame(two, MergeOperator.MAX.merge(one, two));
+        assertSame(one, MergeOperator.LAST.merge(two, one));
+    }
+
+    @Test
+    public void unionTest () {
+        MergeOperator operator = MergeOperator.union(2);
+
+        byte[] set = operator.encode(Bytes.toBytes("c"));
+
+        set = operator.merge(set, operator.encode(Bytes.toBytes("a")));
+        set = operator.merge(set, operator.encode(Bytes.toBytes("a")));
+
+        List<byte[]> members = MergeOperator.members(set);
+
+        assertEquals(2, members.size());
+        assertEquals("a", Bytes.toString(members.get(0)));
+        assertEquals("c", Bytes.toString(members.get(1)));
+
+        // only the smallest members are kept once the set is full
+        members = MergeOperator.members(operator.merge(set, operator.encode(Bytes.toBytes("b"))));
+
+        assertEquals(2, members.size());
+        assertEquals("a", Bytes.toString(members.get(0)));
+        assertEquals("b", Bytes.toString(members.get(1)));
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a table that records the increments sent to it.
+     *
+     * @param sent The increments sent.
+     */
+    public static HTableInterface table (final List<Increment> sent) {
+        return (HTableInterface) Proxy.newProxyInstance(HTableInterface.class.getClassLoader(),
+                                                        new Class[] { HTableInterface.class }, new InvocationHandler() {
+            public Object invoke (Object proxy, Method method, Object[] args) {
+                List<Increment> increments = (List<Increment>) args[0];
+                Object[]        results    = (Object[]) args[1];
+
+                for (int i = 0; i < increments.size(); i++) {
+                    sent.add(increments.get(i));
+
+                    results[i] = new Result();
+                }
+
+                return null;
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.ContextWriter;
+import org.simplebase.writer.ProgressReporter;
+import org.simplebase.writer.WriterCounter;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class ProgressReporterTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void intervalTest () {
+        TestContext      context  = new TestContext();
+        ProgressReporter reporter = new ProgressReporter(context, 0);
+
+        reporter.countRow(Bytes.toBytes("row1"));
+        reporter.countCell(10);
+
+        // every count is reported when there is no interval
+        assertEquals(2, context.statusCount);
+        assertEquals(1, context.getCounter(WriterCounter.ROWS).getValue());
+        assertEquals(10, context.getCounter(WriterCounter.BYTES).getValue());
+    }
+
+    @Test
+    public void writerTest ()
+    throws Exception {
+        TestContext   context = new TestContext();
+        ContextWriter writer  = new ContextWriter(context);
+
+        writer.setColumnFamily(Bytes.toBytes("family"));
+        writer.setTableName("table");
+
+        int status = context.statusCount;
+
+        for (int i = 0; i < 1000; i++) {
+            writer.setRow(Bytes.toBytes("row" + i));
+            writer.writeString(Bytes.toBytes("a"), "simplebase");
+        }
+
+        writer.deleteRow();
+
+        // nothing is reported per row, and the counts are kept until the interval has passed
+        assertTrue(context.statusCount == status);
+        assertEquals(0, context.getCounter(WriterCounter.ROWS).getValue());
+        assertTrue(1000 == writer.getProgressReporter().getTotal(WriterCounter.ROWS));
+
+        writer.close();
+
+        assertEquals(status + 1, context.statusCount);
+        assertEquals(1000, context.getCounter(WriterCounter.CELLS).getValue());
+        assertEquals(11000, context.getCounter(WriterCounter.BYTES).getValue());
+        assertEquals(1, context.getCounter(WriterCounter.DELETES).getValue());
+        assertEquals(1000, context.getCounter(WriterCounter.FLUSHES).getValue());
+        assertEquals(1000, context.getCounter(WriterCounter.ROWS).getValue());
+    }
+}
\ No newline at end of file
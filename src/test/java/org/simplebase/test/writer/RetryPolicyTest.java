@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.DeadLetterHandler;
+import org.simplebase.writer.RetryPolicy;
+import org.simplebase.writer.TableWriter;
+import org.simplebase.writer.WriterCounter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class RetryPolicyTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void budgetTest ()
+    throws Exception {
+        RetryPolicy policy = new RetryPolicy().setBudget(10, 0.5);
+
+        assertTrue(policy.withdraw(1, 10));
+        assertEquals(0, policy.getRemainingBudget());
+        assertFalse(policy.withdraw(1, 1));
+        assertEquals(1, policy.getRejectedCount());
+
+        policy.recordSuccess(4);
+
+        assertEquals(2, policy.getRemainingBudget());
+        assertTrue(policy.withdraw(1, 2));
+        assertEquals(12, policy.getRetryCount());
+
+        // the budget never grows past its capacity
+        policy.recordSuccess(1000);
+
+        assertEquals(10, policy.getRemainingBudget());
+
+        // nor do attempts
+        assertFalse(policy.withdraw(RetryPolicy.MAX_ATTEMPTS, 1));
+    }
+
+    @Test
+    public void getBackoffTest ()
+    throws Exception {
+        RetryPolicy policy = new RetryPolicy().setBackoff(10, 50);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoff(1) <= 10);
+            assertTrue(policy.getBackoff(2) <= 20);
+            assertTrue(policy.getBackoff(10) <= 50);
+            assertTrue(policy.getBackoff(100) >= 0);
+        }
+    }
+
+    @Test
+    public void retryTest ()
+    throws Exception {
+        final List<Put> dead = new ArrayList();
+        final Put       put1 = new Put(Bytes.toBytes("row1"));
+        final Put       put2 = new Put(Bytes.toBytes("row2"));
+        final Put       put3 = new Put(Bytes.toBytes("row3"));
+        final List<Put> sent = new ArrayList();
+
+        // put2 fails once, put3 always fails
+        TestWriter writer = new TestWriter() {
+            protected void sendBatch (List<Put> batch)
+            throws IOException {
+                List<Row> rows = new ArrayList();
+
+                for (Put put : batch) {
+                    if ((put == put2 && !sent.contains(put2)) || put == put3) {
+                        rows.add(put);
+                    }
+                }
+
+                sent.addAll(batch);
+
+                if (!rows.isEmpty()) {
+                    throw failure(rows, new IOException("region moved"));
+                }
+            }
+        };
+
+        TestContext context = new TestContext();
+
+        writer.setContext(context);
+        writer.setRetryPolicy(new RetryPolicy().setBackoff(1, 1).setMaxAttempts(3));
+        writer.setDeadLetterHandler(new DeadLetterHandler() {
+            public void handle (String table, Put put, Throwable cause) {
+                dead.add(put);
+            }
+        });
+
+        writer.flushBatch(Arrays.asList(put1, put2, put3));
+
+        assertEquals(Arrays.asList(put1, put2, put3, put2, put3, put3), sent);
+        assertEquals(Collections.singletonList(put3), dead);
+        assertEquals(1, writer.getDeadLetterCount());
+
+        // retries and dead letters are counted, and left to the rate limited status
+        assertEquals(0, context.statusCount);
+        assertEquals(3, writer.getProgressReporter().getTotal(WriterCounter.RETRIES));
+        assertEquals(1, writer.getProgressReporter().getTotal(WriterCounter.DEAD_LETTERS));
+    }
+
+    @Test
+    public void retryDoNotRetryTest ()
+    throws Exception {
+        final Put put = new Put(Bytes.toBytes("row1"));
+
+        TestWriter writer = new TestWriter() {
+            protected void sendBatch (List<Put> batch)
+            throws IOException {
+                throw failure(new ArrayList<Row>(batch), new DoNotRetryIOException("no such family"));
+            }
+        };
+
+        writer.setRetryPolicy(new RetryPolicy());
+
+        // without a dead letter handler the failed puts are reported
+        try {
+            writer.flushBatch(Collections.singletonList(put));
+
+            fail();
+        } catch (RetriesExhaustedWithDetailsException e) {
+            assertEquals(1, e.getNumExceptions());
+            assertSame(put, e.getRow(0));
+        }
+
+        assertEquals(0, writer.getRetryPolicy().getRetryCount());
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Create a failure for a list of rows.
+     *
+     * @param rows  The failed rows.
+     * @param cause The cause.
+     */
+    public static RetriesExhaustedWithDetailsException failure (List<Row> rows, Throwable cause) {
+        return new RetriesExhaustedWithDetailsException(new ArrayList(Collections.nCopies(rows.size(), cause)), rows,
+                                                        new ArrayList(Collections.nCopies(rows.size(), "localhost")));
+    }
+
+    /**
+     * {@link TestWriter} exposes batch flushing without a table.
+     */
+    public static class TestWriter extends TableWriter {
+        /**
+         * Create a new TestWriter instance.
+         */
+        public TestWriter () {
+            super(new Configuration(false));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flushBatch (List<Put> batch)
+        throws InterruptedException, IOException {
+            super.flushBatch(batch);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flushDeletes (List<Delete> deletes)
+        throws InterruptedException, IOException {
+            super.flushDeletes(deletes);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getTableName () {
+            return "test";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.test.TestContext;
+import org.simplebase.writer.DeadLetterHandler;
+import org.simplebase.writer.RetryPolicy;
+import org.simplebase.writer.SpillJournal;
+import org.simplebase.writer.WriterCounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class SpillJournalTest {
+    /** The journal directory. */
+    private File directory;
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void drainTest ()
+    throws Exception {
+        final List<String> drained = Collections.synchronizedList(new ArrayList<String>());
+
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts) {
+                for (Put put : puts) {
+                    drained.add(table + ":" + Bytes.toString(put.getRow()));
+                }
+            }
+        };
+
+        // small segments, so that the journal rolls over
+        journal.setSegmentSize(256);
+
+        long sequence = 0;
+
+        for (int i = 0; i < 10; i++) {
+            sequence = journal.append("table", Arrays.asList(put("row" + i + "a"), put("row" + i + "b")));
+        }
+
+        assertTrue(journal.awaitDrained(5000));
+        assertTrue(journal.isDrained(sequence));
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(20, drained.size());
+        assertEquals("table:row0a", drained.get(0));
+        assertEquals("table:row9b", drained.get(19));
+
+        journal.close();
+    }
+
+    @Test
+    public void deadLetterTest ()
+    throws Exception {
+        final List<String> dead    = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> drained = Collections.synchronizedList(new ArrayList<String>());
+
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts)
+            throws IOException {
+                List<Row>       failed = new ArrayList();
+                List<Throwable> causes = new ArrayList();
+
+                for (Put put : puts) {
+                    String row = Bytes.toString(put.getRow());
+
+                    if (row.startsWith("bad")) {
+                        failed.add(put);
+                        causes.add(new DoNotRetryIOException("bad row"));
+                    } else if (row.startsWith("slow")) {
+                        failed.add(put);
+                        causes.add(new IOException("region moved"));
+                    } else {
+                        drained.add(row);
+                    }
+                }
+
+                if (!failed.isEmpty()) {
+                    throw new RetriesExhaustedWithDetailsException(causes, failed,
+                                                                   Collections.nCopies(failed.size(), "localhost"));
+                }
+            }
+        };
+
+        journal.setDeadLetterHandler(new DeadLetterHandler() {
+            public void handle (String table, Put put, Throwable cause) {
+                dead.add(table + ":" + Bytes.toString(put.getRow()));
+            }
+        });
+
+        journal.setRetryPolicy(new RetryPolicy().setBackoff(1, 1).setMaxAttempts(3));
+        journal.append("table", Arrays.asList(put("row1"), put("bad1"), put("slow1")));
+        journal.append("table", Arrays.asList(put("row2")));
+
+        // permanent failures and exhausted retries do not hold up the records behind them
+        assertTrue(journal.awaitDrained(5000));
+        assertEquals(Arrays.asList("row1", "row2"), drained);
+        assertEquals(Arrays.asList("table:bad1", "table:slow1"), dead);
+        assertEquals(2, journal.getDeadLetterCount());
+        assertEquals(0, journal.getPendingCount());
+
+        journal.close();
+    }
+
+    @Test
+    public void quarantineTest ()
+    throws Exception {
+        final List<String> drained = Collections.synchronizedList(new ArrayList<String>());
+
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts) {
+                if (table.equals("broken")) {
+                    throw new IllegalStateException("unexpected");
+                }
+
+                for (Put put : puts) {
+                    drained.add(table + ":" + Bytes.toString(put.getRow()));
+                }
+            }
+        };
+
+        journal.append("broken", Arrays.asList(put("row1")));
+        journal.append("table", Arrays.asList(put("row2")));
+
+        // an unexpected failure quarantines the record, and the drainer carries on
+        assertTrue(journal.awaitDrained(5000));
+        assertEquals(Arrays.asList("table:row2"), drained);
+        assertEquals(1, journal.getDeadLetterCount());
+        assertTrue(new File(directory, SpillJournal.QUARANTINE).length() > 0);
+
+        journal.close();
+    }
+
+    @Test
+    public void replayTest ()
+    throws Exception {
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts)
+            throws IOException {
+                throw new IOException("cluster unavailable");
+            }
+        };
+
+        journal.setMaxBackoff(10);
+        journal.append("table1", Arrays.asList(put("row1")));
+        journal.append("table2", Arrays.asList(put("row2"), put("row3")));
+
+        assertFalse(journal.awaitDrained(100));
+        assertEquals(2, journal.getPendingCount());
+
+        journal.close();
+
+        // a restarted process drains what was left behind, in order
+        final List<String> drained = Collections.synchronizedList(new ArrayList<String>());
+
+        journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts) {
+                for (Put put : puts) {
+                    drained.add(table + ":" + Bytes.toString(put.getRow()));
+                }
+            }
+        };
+
+        assertEquals(2, journal.getReplayCount());
+        assertTrue(journal.awaitDrained(5000));
+        assertEquals(Arrays.asList("table1:row1", "table2:row2", "table2:row3"), drained);
+
+        journal.close();
+
+        // nothing is replayed twice
+        journal = new SpillJournal(new Configuration(false), directory);
+
+        assertEquals(0, journal.getReplayCount());
+
+        journal.close();
+    }
+
+    @Test(timeout = 5000)
+    public void stoppedTest ()
+    throws Exception {
+        SpillJournal journal = new SpillJournal(new Configuration(false), directory) {
+            protected void write (String table, List<Put> puts)
+            throws IOException {
+                throw new IOException("cluster unavailable");
+            }
+        };
+
+        RetryPolicyTest.TestWriter writer = new RetryPolicyTest.TestWriter() {
+            protected void sendBatch (List<Put> batch)
+            throws InterruptedException {
+                Thread.sleep(10);
+            }
+        };
+
+        TestContext context = new TestContext();
+
+        journal.setMaxBackoff(10);
+        writer.setContext(context);
+        writer.setSpillJournal(journal, 0);
+
+        // the slow flush starts spilling, and the next batch is spilled
+        writer.flushBatch(Arrays.asList(put("row1")));
+        writer.flushBatch(Arrays.asList(put("row2")));
+
+        assertEquals(1, writer.getSpillCount());
+        assertEquals(1, writer.getProgressReporter().getTotal(WriterCounter.SPILLS));
+        assertEquals(0, context.statusCount);
+        assertTrue(journal.isDraining());
+
+        journal.close();
+
+        // the deletes fail rather than wait for a journal that no longer drains
+        assertFalse(journal.isDraining());
+        assertFalse(journal.awaitDrained(60000));
+
+        try {
+            writer.flushDeletes(Arrays.asList(new Delete(Bytes.toBytes("row2"))));
+
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Remove the journal directory.
+     */
+    @After
+    public void cleanup () {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * Create a put.
+     *
+     * @param row The row.
+     */
+    public static Put put (String row) {
+        Put put = new Put(Bytes.toBytes(row));
+
+        put.add(Bytes.toBytes("family"), Bytes.toBytes("qualifier"), Bytes.toBytes("simplebase"));
+
+        return put;
+    }
+
+    /**
+     * Create the journal directory.
+     */
+    @Before
+    public void setup ()
+    throws Exception {
+        directory = File.createTempFile("simplebase", "journal");
+
+        directory.delete();
+        directory.mkdirs();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.test.BaseTest;
+import org.simplebase.writer.TablePool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class TablePoolTest extends BaseTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void acquireTest ()
+    throws Exception {
+        TablePool pool = TablePool.getInstance();
+
+        int borrowed = pool.getBorrowedCount();
+
+        HTableInterface table1 = pool.acquire(config, Bytes.toString(TABLE1));
+        HTableInterface table2 = pool.acquire(config, Bytes.toString(TABLE1));
+
+        assertNotSame(table1, table2);
+        assertEquals(borrowed + 2, pool.getBorrowedCount());
+
+        pool.release(table1);
+
+        assertEquals(borrowed + 1, pool.getBorrowedCount());
+        assertSame(table1, pool.acquire(config, Bytes.toString(TABLE1)));
+
+        pool.release(table1);
+        pool.release(table2);
+
+        assertEquals(borrowed, pool.getBorrowedCount());
+    }
+
+    @Test
+    public void closeIdleTest ()
+    throws Exception {
+        TablePool pool = TablePool.getInstance();
+
+        long timeout = pool.getIdleTimeout();
+
+        pool.release(pool.acquire(config, Bytes.toString(TABLE2)));
+        pool.setIdleTimeout(1);
+
+        Thread.sleep(10);
+
+        pool.closeIdle();
+
+        assertEquals(0, pool.getIdleCount());
+
+        pool.setIdleTimeout(timeout);
+    }
+
+    @Test
+    public void concurrentAcquireTest ()
+    throws Exception {
+        final TablePool     pool    = TablePool.getInstance();
+        final Configuration copy    = new Configuration(config);
+        List<Future>        futures = new ArrayList();
+        ExecutorService     threads = Executors.newFixedThreadPool(8);
+
+        copy.set("hbase.client.instance.id", "concurrentAcquireTest");
+
+        int connections = pool.getConnectionCount();
+
+        // borrowers racing to open the same connection end up sharing one
+        for (int i = 0; i < 8; i++) {
+            futures.add(threads.submit(new Callable<HTableInterface>() {
+                public HTableInterface call ()
+                throws Exception {
+                    return pool.acquire(copy, Bytes.toString(TABLE1));
+                }
+            }));
+        }
+
+        for (Future future : futures) {
+            pool.release((HTableInterface) future.get());
+        }
+
+        threads.shutdown();
+
+        assertEquals(connections + 1, pool.getConnectionCount());
+    }
+
+    @Test
+    public void getConfigurationTest ()
+    throws Exception {
+        assertSame(TablePool.getInstance().getConfiguration(), TablePool.getInstance().getConfiguration());
+    }
+
+    @Test
+    public void sharedConnectionTest ()
+    throws Exception {
+        TablePool pool = TablePool.getInstance();
+
+        HTableInterface table1 = pool.acquire(config, Bytes.toString(TABLE1));
+
+        int connections = pool.getConnectionCount();
+
+        // a copy of a configuration shares its connection
+        HTableInterface table2 = pool.acquire(new Configuration(config), Bytes.toString(TABLE1));
+
+        assertEquals(connections, pool.getConnectionCount());
+
+        pool.release(table1);
+        pool.release(table2);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    // HELPERS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Setup the test environment.
+     */
+    @BeforeClass
+    public static void setup ()
+    throws Exception {
+        BaseTest.setup();
+    }
+}
\ No newline at end of file
@@ -19,6 +19,8 @@ package org.simplebase.test.writer;
 import org.simplebase.test.BaseTest;
 import org.simplebase.writer.TableWriter;
 
+import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 
 import org.apache.hadoop.hbase.util.Bytes;
@@ -84,6 +86,103 @@ public class TableWriterTest extends WriterTest {
         assertTrue(500 == ((TableWriter) writer).getTableWriteBufferSize());
     }
 
+    @Test
+    public void maxOpenTablesTest ()
+    throws Exception {
+        init();
+
+        TableWriter writer = (TableWriter) this.writer;
+
+        assertEquals(TableWriter.MAX_OPEN_TABLES, writer.getMaxOpenTables());
+        assertEquals(writer, writer.setMaxOpenTables(1));
+        assertEquals(1, writer.getMaxOpenTables());
+
+        deleteRow(ROW1);
+
+        assertFalse(hasRow(ROW1));
+
+        writer.setTableName(Bytes.toString(TABLE1));
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+
+        // evicting the first table flushes its pending writes
+        writer.setTableName(Bytes.toString(TABLE2));
+
+        assertEquals(1, writer.getEvictionCount());
+        assertEquals(0, writer.getReopenCount());
+        assertTrue(hasRow(ROW1));
+
+        writer.setTableName(Bytes.toString(TABLE1));
+
+        assertEquals(2, writer.getEvictionCount());
+        assertEquals(1, writer.getReopenCount());
+
+        writer.close();
+    }
+
+    @Test
+    public void regionWarmupTest ()
+    throws Exception {
+        init();
+
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        File snapshot  = new File(directory, Bytes.toString(TABLE2) + ".regions");
+
+        snapshot.delete();
+
+        TableWriter writer = (TableWriter) this.writer;
+
+        assertFalse(writer.isRegionWarmup());
+        assertEquals(writer, writer.setRegionWarmup(true));
+        assertTrue(writer.isRegionWarmup());
+        assertEquals(writer, writer.setRegionSnapshotDirectory(directory));
+        assertEquals(directory, writer.getRegionSnapshotDirectory());
+
+        writer.setTableName(Bytes.toString(TABLE2));
+
+        assertTrue(snapshot.exists());
+
+        // reload from the snapshot
+        writer.close();
+        writer.setTableName(Bytes.toString(TABLE2));
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+        writer.flush();
+
+        switchTable(TABLE2);
+
+        assertTrue(hasRow(ROW1));
+
+        // a snapshot past its maximum age is replaced from the meta table
+        assertEquals(TableWriter.REGION_SNAPSHOT_MAX_AGE, writer.getRegionSnapshotMaxAge());
+        assertEquals(writer, writer.setRegionSnapshotMaxAge(0));
+
+        long saved = snapshot.lastModified();
+
+        Thread.sleep(1000);
+
+        writer.close();
+        writer.setTableName(Bytes.toString(TABLE2));
+
+        assertTrue(snapshot.lastModified() > saved);
+
+        // a truncated snapshot is replaced from the meta table
+        assertEquals(writer, writer.setRegionSnapshotMaxAge(TableWriter.REGION_SNAPSHOT_MAX_AGE));
+
+        long             length    = snapshot.length();
+        RandomAccessFile truncated = new RandomAccessFile(snapshot, "rw");
+
+        truncated.setLength(length / 2);
+        truncated.close();
+
+        writer.close();
+        writer.setTableName(Bytes.toString(TABLE2));
+
+        assertEquals(length, snapshot.length());
+
+        snapshot.delete();
+    }
+
     @Test
     public void setRowTest ()
     throws Exception {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Sean Kerr
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.simplebase.test.writer;
+
+import org.simplebase.writer.TokenBucket;
+import org.simplebase.writer.WriteThrottle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sean Kerr [sean@code-box.org]
+ */
+public class WriteThrottleTest {
+    // -----------------------------------------------------------------------------------------------------------------
+    // TESTS
+    // -----------------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void acquireTest ()
+    throws Exception {
+        WriteThrottle throttle = new WriteThrottle().setTableLimit("table", 1000, 0);
+
+        throttle.acquire(null, "table", 1000, 0);
+
+        assertEquals(0, throttle.getWaitCount());
+
+        // the bucket is empty, so the next 50 cells wait for roughly 50 milliseconds
+        long start = System.currentTimeMillis();
+
+        throttle.acquire(null, "table", 50, 0);
+
+        assertEquals(1, throttle.getWaitCount());
+        assertTrue(System.currentTimeMillis() - start >= 40);
+
+        // other tables are not limited
+        throttle.acquire(null, "other", 1000000, 0);
+
+        assertEquals(1, throttle.getWaitCount());
+    }
+
+    @Test
+    public void fairShareTest ()
+    throws Exception {
+        WriteThrottle throttle = new WriteThrottle().setLimit(1000, 0)
+                                                    .setGroupWeight("bulk", 1)
+                                                    .setGroupWeight("online", 3);
+
+        throttle.acquire("bulk", "table", 1, 0);
+
+        assertEquals(1000, throttle.getCellShare("bulk"), 0.1);
+
+        throttle.acquire("online", "table", 1, 0);
+
+        assertEquals(250, throttle.getCellShare("bulk"), 0.1);
+        assertEquals(750, throttle.getCellShare("online"), 0.1);
+
+        // bulk goes quiet and online takes the whole limit
+        throttle.setActiveWindow(50);
+
+        Thread.sleep(100);
+
+        throttle.acquire("online", "table", 1, 0);
+
+        assertEquals(1000, throttle.getCellShare("online"), 0.1);
+    }
+
+    @Test
+    public void groupLimitTest ()
+    throws Exception {
+        WriteThrottle throttle = new WriteThrottle().setGroupLimit("bulk", 0, 1000);
+
+        throttle.acquire("bulk", "table", 0, 2000);
+
+        assertEquals(1, throttle.getWaitCount());
+        assertTrue(throttle.getWaitTime() >= 900);
+
+        throttle.acquire("online", "table", 0, 1000000);
+
+        assertEquals(1, throttle.getWaitCount());
+    }
+
+    @Test
+    public void tokenBucketTest ()
+    throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 10);
+
+        assertEquals(0, bucket.reserve(10));
+        assertEquals(100, bucket.reserve(10), 5);
+        assertTrue(bucket.getAvailable() < 0);
+
+        bucket.setRate(200);
+
+        assertEquals(20, bucket.getCapacity(), 0.1);
+        assertEquals(200, bucket.getRate(), 0.1);
+    }
+}
\ No newline at end of file
@@ -22,6 +22,7 @@ import org.simplebase.writer.Writer;
 
 import java.util.Arrays;
 
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 
@@ -55,6 +56,65 @@ public abstract class WriterTest extends BaseTest {
     // TESTS
     // -----------------------------------------------------------------------------------------------------------------
 
+    @Test
+    public void deleteTest ()
+    throws Exception {
+        init();
+
+        byte[] other = Bytes.toBytes("other");
+
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "simplebase");
+        writer.writeString(other, "rocks");
+
+        flushWriter();
+
+        assertTrue(hasRow(ROW1));
+
+        // buffered cells are cancelled by the delete, and cells written after it survive it
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "cancelled");
+
+        assertEquals(writer, writer.deleteColumn(QUALIFIER));
+        assertTrue(writer.getPut().isEmpty());
+        assertNotNull(writer.getDelete());
+
+        writer.writeString(QUALIFIER, "again");
+
+        flushWriter();
+
+        assertNull(writer.getDelete());
+
+        switchModel(ROW1);
+
+        assertEquals("again", model.getString(QUALIFIER));
+        assertEquals("rocks", model.getString(other));
+
+        // the row delete covers everything written before it
+        writer.setRow(ROW1);
+        writer.writeString(other, "cancelled");
+
+        assertEquals(writer, writer.deleteFamily(FAMILY1));
+        assertEquals(writer, writer.deleteRow());
+        assertTrue(writer.getPut().isEmpty());
+
+        flushWriter();
+
+        assertFalse(hasRow(ROW1));
+
+        // cells written after the deletes are flushed are still stamped by the clock of the deletes
+        writer.setRow(ROW1);
+        writer.writeString(QUALIFIER, "restored");
+
+        assertTrue(writer.getPut().getFamilyMap().get(FAMILY1).get(0).getTimestamp() != HConstants.LATEST_TIMESTAMP);
+
+        flushWriter();
+
+        switchModel(ROW1);
+
+        assertEquals("restored", model.getString(QUALIFIER));
+    }
+
     @Test
     public void getColumnFamilyTest ()
     throws Exception {